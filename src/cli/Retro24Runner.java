@@ -0,0 +1,232 @@
+package cli;
+
+import static common.util.StringUtil.hexStringToInt;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import common.config.MemoryDumpConfig;
+import common.util.debug.log.MemoryDumper;
+import common.util.validate.MemoryDumpValidator;
+import core.Retro24;
+import core.RunResult;
+import core.RunResult.StopReason;
+import core.CPU.CPU;
+import core.CPU.EngineType;
+
+/**
+ * Führt ein Retro24 Programm ohne GUI (und ohne JavaFX) aus: das Programm läuft
+ * ungebremst bis HLT bzw. bis zum Instruktions- oder Zeitlimit, danach werden
+ * Register, Anzahl der Instruktionen und Zyklen und die gewünschten Speicherbereiche ausgegeben.
+ *
+ * Aufruf: Retro24Runner [Optionen] &lt;programm.bin&gt;
+ * <ul>
+ * <li>--engine &lt;name&gt;: reference, switch oder block (Standard: block)</li>
+ * <li>--max-instructions &lt;n&gt;: höchstens n Instruktionen ausführen</li>
+ * <li>--max-millis &lt;n&gt;: höchstens n Millisekunden laufen</li>
+ * <li>--dump &lt;0xVON-0xBIS&gt;: Speicherbereich ausgeben (mehrfach möglich)</li>
+ * <li>--hang-detection &lt;on|off&gt;: hängende Programme vorzeitig beenden (Standard: on)</li>
+ * </ul>
+ * Exit Code: 0 bei HLT, 1 bei CPU Fehler, 3 bei erreichtem Limit, 4 bei hängendem
+ * Programm, 2 bei falschem Aufruf.
+ * @author Eric Schneider
+ */
+public final class Retro24Runner {
+
+	public static final int EXIT_HALTED = 0;
+	public static final int EXIT_FAULTED = 1;
+	public static final int EXIT_USAGE = 2;
+	public static final int EXIT_LIMIT = 3;
+	public static final int EXIT_HUNG = 4;
+
+	// Anzahl Instruktionen zwischen zwei Prüfungen des Zeitlimits
+	private static final int SLICE_INSTRUCTIONS = 1 << 20;
+
+	private static final String USAGE = "Aufruf: Retro24Runner [--engine reference|switch|block] "
+			+ "[--max-instructions <n>] [--max-millis <n>] [--dump <0xVON-0xBIS>]... [--hang-detection on|off] <programm.bin>";
+
+	private EngineType engineType = EngineType.BLOCK;
+	private long maxInstructions = Long.MAX_VALUE;
+	private long maxMillis = Long.MAX_VALUE;
+	private final List<MemoryDumpConfig> dumps = new ArrayList<>();
+	private boolean hangDetection = true;
+	private String programPath;
+
+	private Retro24Runner() {
+	}
+
+	public static void main(String[] args) {
+		Retro24Runner runner = new Retro24Runner();
+		try {
+			runner.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(EXIT_USAGE);
+		}
+		System.exit(runner.run());
+	}
+
+	/**
+	 * Liest die Kommandozeilenargumente ein.
+	 * @throws IllegalArgumentException bei unbekannten oder fehlerhaften Argumenten
+	 */
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				if (programPath != null) {
+					throw new IllegalArgumentException("Mehr als ein Programm angegeben: " + arg);
+				}
+				programPath = arg;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Fehlender Wert für " + arg);
+			}
+			String value = args[++i];
+			switch (arg) {
+				case "--engine":
+					engineType = EngineType.fromName(value);
+					break;
+				case "--max-instructions":
+					maxInstructions = parsePositive(arg, value);
+					break;
+				case "--max-millis":
+					maxMillis = parsePositive(arg, value);
+					break;
+				case "--dump":
+					dumps.add(parseRange(value));
+					break;
+				case "--hang-detection":
+					hangDetection = parseSwitch(arg, value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unbekannte Option: " + arg);
+			}
+		}
+		if (programPath == null) {
+			throw new IllegalArgumentException("Kein Programm angegeben");
+		}
+		if (!new File(programPath).isFile()) {
+			throw new IllegalArgumentException("Datei kann nicht geoeffnet werden: " + programPath);
+		}
+	}
+
+	private static long parsePositive(String option, String value) {
+		try {
+			long parsed = Long.parseLong(value);
+			if (parsed > 0) {
+				return parsed;
+			}
+		} catch (NumberFormatException e) {
+			// Fehlermeldung unten
+		}
+		throw new IllegalArgumentException("Ungültiger Wert für " + option + ": " + value);
+	}
+
+	private static boolean parseSwitch(String option, String value) {
+		switch (value) {
+			case "on":
+				return true;
+			case "off":
+				return false;
+			default:
+				throw new IllegalArgumentException("Ungültiger Wert für " + option + ": " + value);
+		}
+	}
+
+	/**
+	 * @param range Bereich in der Form 0xVON-0xBIS
+	 * @return die Konfiguration für den MemoryDumper
+	 */
+	private static MemoryDumpConfig parseRange(String range) {
+		String[] bounds = range.split("-");
+		if (bounds.length != 2) {
+			throw new IllegalArgumentException("Falsches Format für einen Speicherbereich: " + range);
+		}
+		int from = hexStringToInt(bounds[0].trim());
+		int to = hexStringToInt(bounds[1].trim());
+		MemoryDumpValidator validator = new MemoryDumpValidator(Retro24.MEMORY_START, Retro24.MEMORY_END, Retro24.MEMORY_END + 1);
+		if (!validator.validateAddressRange(from, to)) {
+			throw new IllegalArgumentException("Ungültiger Speicherbereich: " + range);
+		}
+		return new MemoryDumpConfig(true, from, to);
+	}
+
+	/**
+	 * Lädt und startet das Programm und gibt das Ergebnis aus.
+	 * @return der Exit Code
+	 */
+	private int run() {
+		Retro24 retro24 = new Retro24(engineType);
+		retro24.initialize();
+		// Ohne Eingaben endet eine Warteschleife nie, sie läuft dann ohne Last bis zum Limit
+		retro24.setIdleLoopSkipping(true);
+		retro24.setHangDetection(hangDetection);
+		retro24.loadProgramm(programPath);
+
+		long executed = 0;
+		StopReason stopReason = StopReason.BUDGET_EXHAUSTED;
+		long startTime = System.nanoTime();
+		long deadline = maxMillis == Long.MAX_VALUE ? Long.MAX_VALUE : startTime + maxMillis * 1_000_000;
+		while (executed < maxInstructions && System.nanoTime() < deadline) {
+			RunResult result = retro24.run((int) Math.min(SLICE_INSTRUCTIONS, maxInstructions - executed));
+			executed += result.getExecuted();
+			stopReason = result.getStopReason();
+			if (result.isHalted() || stopReason == StopReason.HUNG) {
+				break;
+			}
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+
+		printResult(retro24, executed, elapsedNanos, stopReason);
+		for (MemoryDumpConfig dump : dumps) {
+			System.out.print(new MemoryDumper(retro24, dump).dump());
+		}
+
+		switch (stopReason) {
+			case HALTED:
+				return EXIT_HALTED;
+			case FAULTED:
+				return EXIT_FAULTED;
+			case HUNG:
+				return EXIT_HUNG;
+			default:
+				return EXIT_LIMIT;
+		}
+	}
+
+	private void printResult(Retro24 retro24, long executed, long elapsedNanos, StopReason stopReason) {
+		CPU cpu = retro24.getCPU();
+		System.out.println("Programm: " + programPath);
+		System.out.println("Engine: " + engineType.getEngineName());
+		System.out.println("Ende: " + describe(cpu, stopReason));
+		System.out.println("Instruktionen: " + executed);
+		System.out.println("Zyklen: " + cpu.getCycles());
+		System.out.println(String.format(Locale.ROOT, "Laufzeit: %.3f ms (%.1f M Instruktionen/s)",
+				elapsedNanos / 1e6, elapsedNanos == 0 ? 0.0 : executed * 1e3 / elapsedNanos));
+		System.out.println(String.format("R0: 0x%02X  R1: 0x%02X  R2: 0x%02X  R3: 0x%02X",
+				cpu.getR0(), cpu.getR1(), cpu.getR2(), cpu.getR3()));
+		System.out.println(String.format("IC: 0x%04X  AR: 0x%04X  tick: 0x%02X  tock: 0x%02X",
+				cpu.getIC(), cpu.getAR(), cpu.getTick(), cpu.getTock()));
+		System.out.println();
+	}
+
+	private static String describe(CPU cpu, StopReason stopReason) {
+		switch (stopReason) {
+			case HALTED:
+				return "HLT";
+			case FAULTED:
+				return cpu.getFaultMessage();
+			case IDLE:
+				return "Limit erreicht (Warteschleife auf Eingabe)";
+			case HUNG:
+				return "Programm hängt (Zustand wiederholt sich ohne Eingabe)";
+			default:
+				return "Limit erreicht";
+		}
+	}
+}
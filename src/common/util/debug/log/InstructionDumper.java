@@ -29,7 +29,7 @@ public class InstructionDumper extends Dumper {
     	
     	dump.append("##  " + retro24.getCPU().getLastInstruction())
     	.append(" ")
-    	.append(byteArrayToString(retro24.getCPU().getLastInstruction().getArgs()))
+    	.append(byteArrayToString(retro24.getCPU().getDecodedInstruction().getArgs()))
     	.append(System.lineSeparator())
     	.append("Registerinhalt:")
 		.append(System.lineSeparator())
@@ -1,16 +1,26 @@
 package common.util.debug.log;
 
+import java.util.BitSet;
+
 import common.config.MemoryDumpConfig;
+import core.MemoryBus;
 import core.Retro24;
 import static common.util.StringUtil.*;
 
 /**
  * Erstellt formatierte Memory Dumps aus dem Retro24 Speicher.
+ * Die formatierten Zeilen werden gemerkt, bei weiteren Dumps werden nur Zeilen aus
+ * seitdem beschriebenen Seiten neu formatiert.
  */
 public class MemoryDumper extends Dumper {
     
     private static final int BYTES_PER_LINE = 16;
 
+    // Formatierte Zeilen und Stand des Speichers beim letzten Dump
+    private String[] lines;
+    private MemoryBus dumpedBus;
+    private long dumpedGeneration;
+
     public MemoryDumper(Retro24 retro24, MemoryDumpConfig config) {
     	super(retro24, config);
     }
@@ -46,15 +56,34 @@ public class MemoryDumper extends Dumper {
     }
 
     private void appendMemoryContent(StringBuilder dump, int startAddress, int endAddress) {
-    	for (int address = startAddress; address <= endAddress; address += BYTES_PER_LINE) {
-	        dump.append(String.format("0x%04X: ", address));
-
-	        for (int offset = 0; offset < BYTES_PER_LINE && (address + offset) <= endAddress; offset++) {
-	            byte value = retro24.readMemory((short) (address + offset));
-	            dump.append(String.format("%02X ", value));
-	        }
-	        dump.append(System.lineSeparator());
+    	MemoryBus bus = retro24.getMemoryBus();
+    	if (bus != dumpedBus) {
+    		// Neu initialisiertes System: alles neu formatieren
+    		dumpedBus = bus;
+    		dumpedGeneration = 0;
+    		lines = new String[(endAddress - startAddress) / BYTES_PER_LINE + 1];
+    	}
+    	BitSet dirtyPages = bus.dirtyPagesSince(dumpedGeneration);
+    	dumpedGeneration = bus.nextGeneration();
+
+    	for (int line = 0; line < lines.length; line++) {
+    		int address = startAddress + line * BYTES_PER_LINE;
+    		int last = Math.min(endAddress, address + BYTES_PER_LINE - 1);
+    		// Eine Zeile liegt in höchstens zwei Seiten
+    		if (lines[line] == null || dirtyPages.get(address >>> 8) || dirtyPages.get(last >>> 8)) {
+    			lines[line] = formatLine(address, last);
+    		}
+    		dump.append(lines[line]);
         }
     	dump.append(System.lineSeparator());
     }
+
+    private String formatLine(int address, int last) {
+    	StringBuilder line = new StringBuilder(String.format("0x%04X: ", address));
+    	for (int current = address; current <= last; current++) {
+    		byte value = retro24.readMemory((short) current);
+    		line.append(String.format("%02X ", value));
+    	}
+    	return line.append(System.lineSeparator()).toString();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package core.CPU;
+
+/**
+ * Arithmetik der Instruktionen mit Sättigung. IR0 / DR0 sind vorberechnete Tabellen
+ * (ein Arrayzugriff ohne Verzweigung), die Wortarithmetik auf R2 / R1 wird direkt
+ * berechnet: Tabellen dafür bräuchten 768 KB und verdrängen den Emulator aus dem Cache.
+ * Alle Werte sind unsigned (0 - 255).
+ * @author Eric Schneider
+ */
+final class AluTables {
+
+	// IR0 / DR0: R0 -> R0 + 1 (max. $FF) bzw. R0 - 1 (min. $00)
+	static final int[] INC = new int[0x100];
+	static final int[] DEC = new int[0x100];
+
+	static {
+		for (int r0 = 0; r0 < 0x100; r0++) {
+			INC[r0] = Math.min(r0 + 1, 0xFF);
+			DEC[r0] = Math.max(r0 - 1, 0);
+		}
+	}
+
+	private AluTables() {
+	}
+
+	/**
+	 * A01: addiert R0 auf das Wort R2 / R1.
+	 * @return R1 | R2 &lt;&lt; 8
+	 */
+	static int addWord(int r0, int r1, int r2) {
+		int sum = r1 + r0;
+		if (sum <= 0xFF) {
+			return sum | r2 << 8;
+		}
+		// Läuft R2 über, werden R1 und R2 zu $FF
+		return r2 == 0xFF ? 0xFFFF : (sum & 0xFF) | (r2 + 1) << 8;
+	}
+
+	/**
+	 * S01: subtrahiert R0 vom Wort R2 / R1.
+	 * @return R1 | R2 &lt;&lt; 8
+	 */
+	static int subWord(int r0, int r1, int r2) {
+		int diff = r1 - r0;
+		if (diff >= 0) {
+			return diff | r2 << 8;
+		}
+		// Bei negativem Ergebnis enthält R1 den Betrag, läuft R2 unter, werden R1 und R2 zu $00
+		return r2 == 0x00 ? 0x0000 : -diff | (r2 - 1) << 8;
+	}
+}
@@ -0,0 +1,363 @@
+package core.CPU;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Kompiliert heiße übersetzte Blöcke (TranslatedBlock) in JVM Bytecode:
+ * für jeden Block wird eine Java Klasse erzeugt, in der jede Instruktion als
+ * eigene Anweisung mit konstanten Argumenten steht (keine Dekodierung, kein switch).
+ * Die Klasse wird im Prozess mit javac übersetzt und als Hidden Class im Paket
+ * core.CPU geladen, sodass sie vom GC wieder entladen werden kann, sobald der Block
+ * verworfen wird. Ohne Compiler (reine JRE) bleibt es beim Interpretieren der Blöcke.
+ * @author Eric Schneider
+ */
+final class BlockCompiler {
+
+	private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+	private static ExecutorService executor;
+
+	private BlockCompiler() {
+	}
+
+	/**
+	 * @return true, wenn zur Laufzeit ein Java Compiler verfügbar ist
+	 */
+	static boolean isAvailable() {
+		return COMPILER != null;
+	}
+
+	/**
+	 * Kompiliert den Block in einem Hintergrund Thread.
+	 * @param block der Block
+	 */
+	static void compileAsync(TranslatedBlock block) {
+		submit(() -> compile(block));
+	}
+
+	/**
+	 * Führt eine Aufgabe (z.B. das Schreiben des ProgramCache) im Hintergrund Thread
+	 * des Compilers aus.
+	 * @param task die Aufgabe
+	 * @return Future zum Warten auf das Ende der Aufgabe
+	 */
+	static synchronized Future<?> submit(Runnable task) {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Retro24 BlockCompiler");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor.submit(task);
+	}
+
+	/**
+	 * Kompiliert den Block und setzt bei Erfolg TranslatedBlock.compiled.
+	 * Fehler beim Kompilieren werden ignoriert, der Block wird dann weiter interpretiert.
+	 * @param block der Block
+	 */
+	static void compile(TranslatedBlock block) {
+		if (!isAvailable() || !block.valid) {
+			return;
+		}
+		String className = String.format("Block_%04X", block.start);
+		try {
+			byte[] bytes = compileSource(className, generateSource(className, block));
+			if (bytes == null) {
+				return;
+			}
+			block.compiled = define(bytes);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Block bleibt interpretiert
+		}
+	}
+
+	/**
+	 * Erzeugt den Java Quelltext für den Block (siehe CompiledBlock).
+	 * @param className der (einfache) Klassenname
+	 * @param block der Block
+	 * @return der Quelltext
+	 */
+	static String generateSource(String className, TranslatedBlock block) {
+		StringBuilder source = new StringBuilder();
+		source.append("package core.CPU;\n\n");
+		source.append("final class ").append(className).append(" implements CompiledBlock {\n");
+		source.append("\tpublic int execute(BlockState state, TranslatedBlock self) {\n");
+		source.append("\t\treturn block(state, self);\n");
+		source.append("\t}\n\n");
+		appendBlockMethod(source, "block", block);
+		source.append("}\n");
+		return source.toString();
+	}
+
+	/**
+	 * Hängt eine statische Methode mit der Signatur von CompiledBlock.execute an, die
+	 * den Block ausführt. Register liegen in lokalen Variablen, tick und tock werden nur
+	 * vor Lesezugriffen und beim Verlassen des Blocks in den Speicher geschrieben.
+	 * @param source der Quelltext der Klasse
+	 * @param methodName der Name der Methode
+	 * @param block der Block
+	 */
+	static void appendBlockMethod(StringBuilder source, String methodName, TranslatedBlock block) {
+		source.append("\tstatic int ").append(methodName).append("(BlockState state, TranslatedBlock self) {\n");
+		source.append("\t\tcore.Retro24 retro24 = state.retro24;\n");
+		source.append("\t\tint r0 = state.r0, r1 = state.r1, r2 = state.r2, r3 = state.r3;\n");
+		source.append("\t\tint ar = state.ar, tick = state.tick, tock = state.tock, ic, tmp;\n");
+
+		int count = block.size();
+		for (int i = 0; i < count; i++) {
+			int packed = block.code[i];
+			int opcode = packed & 0xFF;
+			int arg0 = (packed >>> 8) & 0xFF;
+			int arg1 = (packed >>> 16) & 0xFF;
+			int address = block.addressOf(i);
+			int next = (address + Instruction.getLength((byte) opcode)) & 0xFFFF;
+			String exit = "return state.exit(r0, r1, r2, r3, ic, ar, tick, tock, " + (i + 1) + ");\n";
+
+			source.append(String.format("\t\t// 0x%04X %s%n", address, Instruction.getInstruction((byte) opcode)));
+			switch (opcode) {
+				case 0x00: // NUL
+					break;
+				case 0x01: // MAR
+					source.append("\t\tar = ").append((arg1 << 8) | arg0).append(";\n");
+					break;
+				case 0x02: // SIC
+					source.append("\t\tretro24.writeMemory(ar, (byte) ").append(address).append(");\n");
+					source.append("\t\tretro24.writeMemory((ar + 1) & 0xFFFF, (byte) ").append(address >>> 8).append(");\n");
+					break;
+				case 0x03: // RAR
+					source.append("\t\tar = (r2 << 8) | r1;\n");
+					break;
+				case 0x04: // AAR
+					source.append("\t\tar = (ar + r0) & 0xFFFF;\n");
+					break;
+				case 0x05: // IR0
+					source.append("\t\tif (r0 < 0xFF) r0++;\n");
+					break;
+				case 0x06: // A01
+					source.append("\t\tr1 += r0;\n");
+					source.append("\t\tif (r1 > 0xFF) { r1 &= 0xFF; if (++r2 > 0xFF) { r1 = 0xFF; r2 = 0xFF; } }\n");
+					break;
+				case 0x07: // DR0
+					source.append("\t\tif (r0 > 0) r0--;\n");
+					break;
+				case 0x08: // S01
+					source.append("\t\tr1 -= r0;\n");
+					source.append("\t\tif (r1 < 0) { r1 = -r1; if (--r2 < 0) { r1 = 0; r2 = 0; } }\n");
+					break;
+				case 0x09: // X12
+					source.append("\t\ttmp = r1; r1 = r2; r2 = tmp;\n");
+					break;
+				case 0x10: // X01
+					source.append("\t\ttmp = r0; r0 = r1; r1 = tmp;\n");
+					break;
+				case 0x11: // JMP
+					source.append("\t\tic = ar;\n");
+					break;
+				case 0x12: // SR0
+					source.append("\t\tretro24.writeMemory(ar, (byte) r0);\n");
+					break;
+				case 0x13: // SRW
+					source.append("\t\tretro24.writeMemory(ar, (byte) r1);\n");
+					source.append("\t\tretro24.writeMemory((ar + 1) & 0xFFFF, (byte) r2);\n");
+					break;
+				case 0x14: // LR0
+					source.append("\t\tstate.flushTimer(tick, tock);\n");
+					source.append("\t\tr0 = retro24.readMemory(ar) & 0xFF;\n");
+					break;
+				case 0x15: // LRW
+					source.append("\t\tstate.flushTimer(tick, tock);\n");
+					source.append("\t\tr1 = retro24.readMemory(ar) & 0xFF;\n");
+					source.append("\t\tr2 = retro24.readMemory((ar + 1) & 0xFFFF) & 0xFF;\n");
+					break;
+				case 0x16: // TAW
+					source.append("\t\tr1 = ar & 0xFF; r2 = ar >>> 8;\n");
+					break;
+				case 0x17: // MR0
+					source.append("\t\tr0 = ").append(arg0).append(";\n");
+					break;
+				case 0x18: // MRW
+					source.append("\t\tr1 = ").append(arg0).append("; r2 = ").append(arg1).append(";\n");
+					break;
+				case 0x19: // JZ0
+					source.append("\t\tic = r0 == 0 ? ar : ").append(next).append(";\n");
+					break;
+				case 0x20: // JGW
+					source.append("\t\tic = r1 > r2 ? ar : ").append(next).append(";\n");
+					break;
+				case 0x21: // JEW
+					source.append("\t\tic = r1 == r2 ? ar : ").append(next).append(";\n");
+					break;
+				case 0x22: // OR0
+					source.append("\t\tr0 |= ").append(arg0).append(";\n");
+					break;
+				case 0x23: // AN0
+					source.append("\t\tr0 &= ").append(arg0).append(";\n");
+					break;
+				case 0x24: // JE0
+					source.append("\t\tic = r0 == ").append(arg0).append(" ? ar : ").append(next).append(";\n");
+					break;
+				case 0x25: // C01
+					source.append("\t\tr1 = r0;\n");
+					break;
+				case 0x26: // C02
+					source.append("\t\tr2 = r0;\n");
+					break;
+				case 0x27: // IRW
+					source.append("\t\tif (++r1 > 0xFF) { r1 = 0; if (++r2 > 0xFF) { r1 = 0xFF; r2 = 0xFF; } }\n");
+					break;
+				case 0x28: // DRW
+					source.append("\t\tif (--r1 < 0) { r1 = 1; if (--r2 < 0) { r1 = 0; r2 = 0; } }\n");
+					break;
+				case 0x29: // X03
+					source.append("\t\ttmp = r0; r0 = r3; r3 = tmp;\n");
+					break;
+				case 0x2A: // C03
+					source.append("\t\tr3 = r0;\n");
+					break;
+				case 0x2B: // C30
+					source.append("\t\tr0 = r3;\n");
+					break;
+				case 0x2C: // PL0
+					source.append("\t\tr0 = (r0 << 1) & 0xFF;\n");
+					break;
+				case 0x2D: // PR0
+					source.append("\t\tr0 >>>= 1;\n");
+					break;
+				case 0xFF: // HLT (IC bleibt stehen)
+					source.append("\t\tic = ").append(address).append(";\n");
+					source.append("\t\tstate.halted = true;\n");
+					break;
+				default:
+					throw new IllegalStateException("Ungültiger Opcode im Block: " + opcode);
+			}
+			source.append("\t\ttick = (tick + 1) & 0xFF;\n");
+			source.append("\t\tif (tock > 0) tock--;\n");
+
+			if (i == count - 1) {
+				if (!Instruction.endsBlock((byte) opcode)) {
+					source.append("\t\tic = ").append(next).append(";\n");
+				}
+				source.append("\t\t").append(exit);
+			} else if (Instruction.writesMemory((byte) opcode)) {
+				// Schreibzugriff: hat sich der Block selbst überschrieben, wird er hier verlassen
+				source.append("\t\tif (!self.valid) { ic = ").append(next).append("; ").append(exit).append("\t\t}\n");
+			}
+		}
+		source.append("\t}\n");
+	}
+
+	/**
+	 * Lädt den Bytecode als Hidden Class im Paket core.CPU und erzeugt eine Instanz.
+	 * @param bytes der Bytecode einer Klasse mit parameterlosem Konstruktor
+	 * @return die Instanz
+	 */
+	static CompiledBlock define(byte[] bytes) throws ReflectiveOperationException {
+		Class<?> compiledClass = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+		return (CompiledBlock) compiledClass.getDeclaredConstructor().newInstance();
+	}
+
+	/**
+	 * Übersetzt den Quelltext im Speicher.
+	 * @param className der (einfache) Klassenname im Paket core.CPU
+	 * @param source der Quelltext
+	 * @return der Bytecode der Klasse oder null bei Fehlern
+	 */
+	static byte[] compileSource(String className, String source) {
+		String qualifiedName = BlockCompiler.class.getPackageName() + "." + className;
+		ClassOutput output = new ClassOutput(qualifiedName);
+		// Der File Manager hält die Jars des Klassenpfads offen: nach jedem Lauf schließen
+		StandardJavaFileManager standardFileManager = COMPILER.getStandardFileManager(null, null, null);
+		try {
+			JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standardFileManager) {
+				@Override
+				public JavaFileObject getJavaFileForOutput(Location location, String name, Kind kind, FileObject sibling) {
+					return output;
+				}
+			};
+			List<String> options = List.of("-classpath", classPath(), "-proc:none", "-g:none");
+			List<SourceInput> units = List.of(new SourceInput(qualifiedName, source));
+			Boolean success = COMPILER.getTask(null, fileManager, diagnostic -> {}, options, null, units).call();
+			return success ? output.bytes.toByteArray() : null;
+		} finally {
+			try {
+				standardFileManager.close();
+			} catch (IOException e) {
+				// Der Bytecode ist bereits erzeugt
+			}
+		}
+	}
+
+	/**
+	 * @return der Klassenpfad der Anwendung, ergänzt um den Ort der eigenen Klassen
+	 * (falls diese über einen eigenen ClassLoader geladen wurden, z.B. in Tests)
+	 */
+	private static String classPath() {
+		String classPath = System.getProperty("java.class.path");
+		CodeSource codeSource = BlockCompiler.class.getProtectionDomain().getCodeSource();
+		if (codeSource != null && codeSource.getLocation() != null) {
+			try {
+				classPath = Paths.get(codeSource.getLocation().toURI()) + File.pathSeparator + classPath;
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				// Nur java.class.path verwenden
+			}
+		}
+		return classPath;
+	}
+
+	private static URI memoryUri(String qualifiedName, Kind kind) {
+		return URI.create("mem:///" + qualifiedName.replace('.', '/') + kind.extension);
+	}
+
+	private static final class SourceInput extends SimpleJavaFileObject {
+
+		private final String source;
+
+		SourceInput(String qualifiedName, String source) {
+			super(memoryUri(qualifiedName, Kind.SOURCE), Kind.SOURCE);
+			this.source = source;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return source;
+		}
+	}
+
+	private static final class ClassOutput extends SimpleJavaFileObject {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		ClassOutput(String qualifiedName) {
+			super(memoryUri(qualifiedName, Kind.CLASS), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+	}
+}
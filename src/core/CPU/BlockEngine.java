@@ -0,0 +1,790 @@
+package core.CPU;
+
+import static core.Retro24.TICK_ADDRESS;
+import static core.Retro24.TOCK_ADDRESS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.MemoryWriteListener;
+import core.Retro24;
+import core.graphics.GraphicChip;
+
+/**
+ * Übersetzender Interpreter (JIT): häufig ausgeführter Code im Programmbereich
+ * (0x0100 - 0xDFFF) wird in Basisblöcke (TranslatedBlock) übersetzt, die mit einer
+ * Sprunginstruktion oder HLT enden. Übersetzte Blöcke werden ohne Speicherzugriff
+ * für das Dekodieren ausgeführt und über ihre Nachfolger verkettet, sodass
+ * Schleifen ohne Nachschlagen im Blockcache laufen. Sehr heiße Blöcke werden
+ * zusätzlich vom BlockCompiler in JVM Bytecode (Hidden Classes) übersetzt.
+ * Häufige Instruktionspaare werden dabei als Superinstruktionen ausgeführt.
+ * Der Engine ist als MemoryWriteListener registriert: wird ein Byte eines Blocks
+ * überschrieben (selbstmodifizierender Code), wird der Block verworfen und bei
+ * Bedarf neu übersetzt.
+ * Kalter Code wird Instruktion für Instruktion direkt aus dem Speicher interpretiert.
+ * Mit einem ProgramCache werden heiße Blöcke und ihr Bytecode über Läufe hinweg
+ * je Programm gespeichert und beim nächsten Laden desselben Programms übernommen.
+ * @author Eric Schneider
+ */
+public class BlockEngine implements ExecutionEngine, MemoryWriteListener {
+
+	public static final int CODE_START = Retro24.PROGRAMM_MEMORYSTART;
+	public static final int CODE_END = GraphicChip.VIDMEM_START - 1;
+
+	// Anzahl der Ausführungen einer Adresse, ab der ein Block übersetzt wird
+	public static final int TRANSLATION_THRESHOLD = 16;
+	// Anzahl der Ausführungen eines übersetzten Blocks, ab der er kompiliert wird
+	public static final int DEFAULT_COMPILE_THRESHOLD = 256;
+	// Maximale Anzahl an Instruktionen (und damit Bytes) eines Blocks
+	static final int MAX_BLOCK_INSTRUCTIONS = 64;
+	static final int MAX_BLOCK_BYTES = MAX_BLOCK_INSTRUCTIONS * 3;
+
+	private final Retro24 retro24;
+	private final CPU cpu;
+
+	// Die Tabellen je Adresse liegen je Seite (256 Byte) vor und werden erst bei der
+	// ersten Verwendung einer Seite angelegt (null = in der Seite noch nichts gezählt)
+	// Blockcache: Startadresse -> übersetzter Block
+	private final TranslatedBlock[][] blocks = new TranslatedBlock[0x100][];
+	// Anzahl der Blöcke, die ein Byte überdecken (für die Invalidierung)
+	private final short[][] coverage = new short[0x100][];
+	// Ausführungszähler je Adresse (sättigt bei TRANSLATION_THRESHOLD)
+	private final byte[][] heat = new byte[0x100][];
+
+	// Position innerhalb eines Blocks am Ende des letzten Batches (zum Fortsetzen)
+	private TranslatedBlock resumeBlock;
+	private int resumeIndex;
+	private int resumeAddress = -1;
+
+	// Registerzustand für den Aufruf kompilierter Blöcke
+	private final BlockState state;
+	
+	private int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+	private boolean synchronousCompilation = false;
+
+	// Persistenter Blockcache (null = keiner, siehe ProgramCache.CACHE_DIR_PROPERTY)
+	private ProgramCache programCache = ProgramCache.fromSystemProperty();
+
+	// Wiederverwendeter Einzelblock für kalten Code
+	private final TranslatedBlock single = new TranslatedBlock(0, 0, new int[1], true);
+
+	private BlockEngine(Retro24 retro24) {
+		this.retro24 = retro24;
+		this.cpu = retro24.getCPU();
+		this.state = new BlockState(retro24);
+	}
+
+	/**
+	 * Erzeugt den Engine und registriert ihn als MemoryWriteListener des Systems.
+	 * @param retro24 das System (CPU muss bereits existieren)
+	 * @return der neue Engine
+	 */
+	public static BlockEngine create(Retro24 retro24) {
+		BlockEngine engine = new BlockEngine(retro24);
+		retro24.addMemoryWriteListener(engine);
+		return engine;
+	}
+
+	@Override
+	public int run(int maxInstructions) {
+		if (cpu.isHalted() || maxInstructions <= 0) {
+			return 0;
+		}
+
+		// Register in lokale Variablen laden (unsigned)
+		int r0 = cpu.getR0() & 0xFF;
+		int r1 = cpu.getR1() & 0xFF;
+		int r2 = cpu.getR2() & 0xFF;
+		int r3 = cpu.getR3() & 0xFF;
+		int ic = cpu.getIC() & 0xFFFF;
+		int ar = cpu.getAR() & 0xFFFF;
+		int tick = cpu.getTick() & 0xFF;
+		int tock = cpu.getTock() & 0xFF;
+		boolean halted = false;
+
+		// Zuletzt ausgeführte Instruktion: Block und Index darin (Opcode und Argumente
+		// werden erst am Ende des Batches aus dem Block gelesen)
+		TranslatedBlock lastBlock = null;
+		int lastIndex = 0;
+		int lastAddress = 0;
+
+		// Aktueller Block (null = kalter Code) und Position darin
+		TranslatedBlock block = null;
+		int index = 0;
+		if (resumeBlock != null && resumeBlock.valid && resumeAddress == ic) {
+			block = resumeBlock;
+			index = resumeIndex;
+		}
+
+		// Opcode einer ungültigen Instruktion (-1 = kein Fehler)
+		int faultOpcode = -1;
+
+		int executed = 0;
+		long cycles = 0;
+		try {
+			while (executed < maxInstructions) {
+				if (block == null) {
+					block = enterBlock(ic);
+					index = 0;
+				}
+				TranslatedBlock current;
+				if (block == null) {
+					// Kalter Code: einzelne Instruktion aus dem Speicher dekodieren
+					current = decodeSingle(ic);
+					if (current == null) {
+						// Ungültiger Opcode: IC bleibt stehen, Fehlerzustand wird im finally gesetzt
+						faultOpcode = retro24.readMemory(ic) & 0xFF;
+						halted = true;
+						break;
+					}
+				} else if (index == 0 && block.size() <= maxInstructions - executed) {
+					current = block;
+					countExecution(block);
+				} else {
+					// Fortsetzen innerhalb des Blocks oder Budget reicht nicht für den ganzen Block
+					current = single;
+					single.code[0] = block.code[index] & 0x00FFFFFF;
+				}
+
+				int count;
+				CompiledBlock compiled = current.compiled;
+				if (compiled != null) {
+					// Kompilierter Block: läuft komplett (oder bis er sich selbst überschreibt)
+					state.load(r0, r1, r2, r3, ar, tick, tock);
+					count = compiled.execute(state, current);
+					r0 = state.r0;
+					r1 = state.r1;
+					r2 = state.r2;
+					r3 = state.r3;
+					ic = state.ic;
+					ar = state.ar;
+					tick = state.tick;
+					tock = state.tock;
+					halted = state.halted;
+					lastAddress = current.addressOf(count - 1);
+				} else {
+					// Ohne Lesezugriffe im Block sind Zwischenstände von tick / tock nicht
+					// beobachtbar, sie werden dann erst beim Verlassen des Blocks geschrieben
+					boolean writeTimerPerInstruction = current.readsMemory;
+					int[] code = current.fused;
+					int slot = 0;
+
+					// Der Block läuft komplett (das Budget wurde oben geprüft), jeder Eintrag
+					// in code ist eine Instruktion oder eine Superinstruktion
+					while (slot < code.length) {
+						int address = ic;
+						int packed = code[slot];
+						int opcode = packed & 0xFF;
+						int arg0 = (packed >>> 8) & 0xFF;
+						int arg1 = (packed >>> 16) & 0xFF;
+
+						switch (opcode) {
+							case 0x00: // NUL
+								ic = ic + 1;
+								break;
+							case 0x01: // MAR
+								ar = (arg1 << 8) | arg0;
+								ic = ic + 3;
+								break;
+							case 0x02: // SIC
+								retro24.writeMemory(ar, (byte) ic);
+								retro24.writeMemory((ar + 1) & 0xFFFF, (byte) (ic >>> 8));
+								ic = ic + 1;
+								break;
+							case 0x03: // RAR
+								ar = (r2 << 8) | r1;
+								ic = ic + 1;
+								break;
+							case 0x04: // AAR
+								ar = (ar + r0) & 0xFFFF;
+								ic = ic + 1;
+								break;
+							case 0x05: // IR0
+								if (r0 < 0xFF) {
+									r0++;
+								}
+								ic = ic + 1;
+								break;
+							case 0x06: // A01
+								r1 = r1 + r0;
+								if (r1 > 0xFF) {
+									r1 &= 0xFF;
+									r2++;
+									if (r2 > 0xFF) {
+										r1 = 0xFF;
+										r2 = 0xFF;
+									}
+								}
+								ic = ic + 1;
+								break;
+							case 0x07: // DR0
+								if (r0 > 0) {
+									r0--;
+								}
+								ic = ic + 1;
+								break;
+							case 0x08: // S01
+								r1 = r1 - r0;
+								if (r1 < 0) {
+									r1 = -r1;
+									r2--;
+									if (r2 < 0) {
+										r1 = 0;
+										r2 = 0;
+									}
+								}
+								ic = ic + 1;
+								break;
+							case 0x09: { // X12
+								int tmp = r1;
+								r1 = r2;
+								r2 = tmp;
+								ic = ic + 1;
+								break;
+							}
+							case 0x10: { // X01
+								int tmp = r0;
+								r0 = r1;
+								r1 = tmp;
+								ic = ic + 1;
+								break;
+							}
+							case 0x11: // JMP
+								ic = ar;
+								break;
+							case 0x12: // SR0
+								retro24.writeMemory(ar, (byte) r0);
+								ic = ic + 1;
+								break;
+							case 0x13: // SRW
+								retro24.writeMemory(ar, (byte) r1);
+								retro24.writeMemory((ar + 1) & 0xFFFF, (byte) r2);
+								ic = ic + 1;
+								break;
+							case 0x14: // LR0
+								r0 = retro24.readMemory(ar) & 0xFF;
+								ic = ic + 1;
+								break;
+							case 0x15: // LRW
+								r1 = retro24.readMemory(ar) & 0xFF;
+								r2 = retro24.readMemory((ar + 1) & 0xFFFF) & 0xFF;
+								ic = ic + 1;
+								break;
+							case 0x16: // TAW
+								r1 = ar & 0xFF;
+								r2 = ar >>> 8;
+								ic = ic + 1;
+								break;
+							case 0x17: // MR0
+								r0 = arg0;
+								ic = ic + 2;
+								break;
+							case 0x18: // MRW
+								r1 = arg0;
+								r2 = arg1;
+								ic = ic + 3;
+								break;
+							case 0x19: // JZ0
+								ic = r0 == 0 ? ar : ic + 1;
+								break;
+							case 0x20: // JGW
+								ic = r1 > r2 ? ar : ic + 1;
+								break;
+							case 0x21: // JEW
+								ic = r1 == r2 ? ar : ic + 1;
+								break;
+							case 0x22: // OR0
+								r0 |= arg0;
+								ic = ic + 2;
+								break;
+							case 0x23: // AN0
+								r0 &= arg0;
+								ic = ic + 2;
+								break;
+							case 0x24: // JE0
+								ic = arg0 == r0 ? ar : ic + 2;
+								break;
+							case 0x25: // C01
+								r1 = r0;
+								ic = ic + 1;
+								break;
+							case 0x26: // C02
+								r2 = r0;
+								ic = ic + 1;
+								break;
+							case 0x27: // IRW
+								r1++;
+								if (r1 > 0xFF) {
+									r1 = 0;
+									r2++;
+									if (r2 > 0xFF) {
+										r1 = 0xFF;
+										r2 = 0xFF;
+									}
+								}
+								ic = ic + 1;
+								break;
+							case 0x28: // DRW
+								r1--;
+								if (r1 < 0) {
+									r1 = 1;
+									r2--;
+									if (r2 < 0) {
+										r1 = 0;
+										r2 = 0;
+									}
+								}
+								ic = ic + 1;
+								break;
+							case 0x29: { // X03
+								int tmp = r0;
+								r0 = r3;
+								r3 = tmp;
+								ic = ic + 1;
+								break;
+							}
+							case 0x2A: // C03
+								r3 = r0;
+								ic = ic + 1;
+								break;
+							case 0x2B: // C30
+								r0 = r3;
+								ic = ic + 1;
+								break;
+							case 0x2C: // PL0
+								r0 = (r0 << 1) & 0xFF;
+								ic = ic + 1;
+								break;
+							case 0x2D: // PR0
+								r0 = r0 >>> 1;
+								ic = ic + 1;
+								break;
+							case 0xFF: // HLT (IC bleibt stehen)
+								halted = true;
+								break;
+							// Superinstruktionen: nach der ersten Hälfte gilt die zweite Instruktion
+							// als die ausgeführte (Argumente der zweiten Hälfte aus current.code)
+							case Superinstruction.MAR_JMP:
+								ar = (arg1 << 8) | arg0;
+								// erste Hälfte abschließen
+								address += 3;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								ic = ar;
+								break;
+							case Superinstruction.MAR_JZ0:
+								ar = (arg1 << 8) | arg0;
+								// erste Hälfte abschließen
+								address += 3;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								ic = r0 == 0 ? ar : ic + 4;
+								break;
+							case Superinstruction.MAR_LRW:
+								ar = (arg1 << 8) | arg0;
+								// erste Hälfte abschließen
+								address += 3;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								// tick / tock nach MAR sind vor dem Lesen sichtbar
+								retro24.writeMemory(TICK_ADDRESS, (byte) tick);
+								retro24.writeMemory(TOCK_ADDRESS, (byte) tock);
+								r1 = retro24.readMemory(ar) & 0xFF;
+								r2 = retro24.readMemory((ar + 1) & 0xFFFF) & 0xFF;
+								ic = ic + 4;
+								break;
+							case Superinstruction.MR0_MAR:
+								r0 = arg0;
+								// erste Hälfte abschließen
+								address += 2;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								ar = (current.code[current.indexOf(slot) + 1] >>> 8) & 0xFFFF;
+								ic = ic + 5;
+								break;
+							case Superinstruction.DR0_DR0:
+								r0 = r0 > 2 ? r0 - 2 : 0;
+								// erste Hälfte abschließen
+								address += 1;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								ic = ic + 2;
+								break;
+							case Superinstruction.IR0_IR0:
+								r0 = r0 < 0xFD ? r0 + 2 : 0xFF;
+								// erste Hälfte abschließen
+								address += 1;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								ic = ic + 2;
+								break;
+							case Superinstruction.A01_DR0:
+								r1 = r1 + r0;
+								if (r1 > 0xFF) {
+									r1 &= 0xFF;
+									r2++;
+									if (r2 > 0xFF) {
+										r1 = 0xFF;
+										r2 = 0xFF;
+									}
+								}
+								// erste Hälfte abschließen
+								address += 1;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								if (r0 > 0) {
+									r0--;
+								}
+								ic = ic + 2;
+								break;
+							case Superinstruction.DR0_MAR:
+								if (r0 > 0) {
+									r0--;
+								}
+								// erste Hälfte abschließen
+								address += 1;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								ar = (current.code[current.indexOf(slot) + 1] >>> 8) & 0xFFFF;
+								ic = ic + 4;
+								break;
+							case Superinstruction.MR0_C01:
+								r0 = arg0;
+								// erste Hälfte abschließen
+								address += 2;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								r1 = arg0;
+								ic = ic + 3;
+								break;
+							case Superinstruction.LRW_RAR:
+								r1 = retro24.readMemory(ar) & 0xFF;
+								r2 = retro24.readMemory((ar + 1) & 0xFFFF) & 0xFF;
+								// erste Hälfte abschließen
+								address += 1;
+								tick++;
+								if (tock > 0) {
+									tock--;
+								}
+								ar = (r2 << 8) | r1;
+								ic = ic + 2;
+								break;
+							default:
+								// Nicht erreichbar: Blöcke enthalten nur gültige Opcodes (siehe decodeSingle())
+								Instruction.getInstruction((byte) opcode);
+						}
+						ic &= 0xFFFF;
+
+						// tick & tock
+						tick = (tick + 1) & 0xFF;
+						if (tock > 0) {
+							tock--;
+						}
+						if (writeTimerPerInstruction) {
+							retro24.writeMemory(TICK_ADDRESS, (byte) tick);
+							retro24.writeMemory(TOCK_ADDRESS, (byte) tock);
+						}
+						lastAddress = address;
+						slot++;
+
+						if (halted || !current.valid) {
+							break;
+						}
+					}
+					if (!writeTimerPerInstruction) {
+						retro24.writeMemory(TICK_ADDRESS, (byte) tick);
+						retro24.writeMemory(TOCK_ADDRESS, (byte) tock);
+					}
+					count = current.indexOf(slot);
+				}
+				executed += count;
+				// single wird je Instruktion neu befüllt, seine Summe im Block ist nicht aktuell
+				cycles += current == single ? Instruction.getCycles((byte) single.code[0]) : current.cyclesOf(count);
+				lastBlock = current;
+				lastIndex = count - 1;
+
+				if (halted) {
+					// IC bleibt auf HLT stehen
+					if (current == block) {
+						index += count - 1;
+					}
+					break;
+				}
+				if (block == null) {
+					// Kalter Code: ab IC neu nachschlagen
+					continue;
+				}
+				index += current == block ? count : 1;
+				if (!block.valid) {
+					// Block wurde (von sich selbst) überschrieben: ab IC neu nachschlagen
+					block = null;
+				} else if (index == block.size()) {
+					TranslatedBlock next = block.successor(ic);
+					if (next == null) {
+						next = enterBlock(ic);
+						if (next != null) {
+							block.link(ic, next);
+						}
+					}
+					block = next;
+					index = 0;
+				}
+			}
+		} finally {
+			// Position merken, damit der nächste Batch im Block fortsetzen kann
+			resumeBlock = block;
+			resumeIndex = index;
+			resumeAddress = ic;
+			
+			// Zustand zurückschreiben (Batchgrenze)
+			cpu.setR0((byte) r0);
+			cpu.setR1((byte) r1);
+			cpu.setR2((byte) r2);
+			cpu.setR3((byte) r3);
+			cpu.setIC((short) ic);
+			cpu.setAR((short) ar);
+			cpu.setTick((byte) tick);
+			cpu.setTock((byte) tock);
+			cpu.setHalt(halted);
+			cpu.addCycles(cycles);
+			if (faultOpcode >= 0) {
+				cpu.fault(FaultCode.INVALID_OPCODE, (short) ic, (byte) faultOpcode);
+			}
+			if (lastBlock != null) {
+				int packed = lastBlock.code[lastIndex];
+				Instruction lastInstruction = Instruction.getInstruction((byte) packed);
+				cpu.getDecodedInstruction().set(lastInstruction, lastAddress, (byte) (packed >>> 8), (byte) (packed >>> 16));
+				cpu.setLastInstruction(lastInstruction);
+			}
+		}
+		if (halted && faultOpcode < 0 && programCache != null) {
+			programCache.store(this);
+		}
+		return executed;
+	}
+
+	/**
+	 * Übersetzt alle statisch erreichbaren Blöcke des geladenen Programms vorab,
+	 * sie laufen damit ab dem ersten Eintritt übersetzt. Danach werden, falls vorhanden,
+	 * die zwischengespeicherten Blöcke übernommen.
+	 */
+	@Override
+	public void programLoaded() {
+		ControlFlowGraph graph = retro24.getControlFlowGraph();
+		if (graph != null) {
+			for (int start : graph.getBlockStarts()) {
+				preload(start);
+			}
+		}
+		if (programCache != null) {
+			programCache.restore(retro24, this);
+		}
+	}
+
+	/**
+	 * Zählt den Eintritt in einen übersetzten Block und stößt beim Erreichen
+	 * des Schwellwerts seine Kompilierung an.
+	 * @param block der Block
+	 */
+	private void countExecution(TranslatedBlock block) {
+		if (++block.executions != compileThreshold || block.compiled != null || !BlockCompiler.isAvailable()) {
+			return;
+		}
+		if (synchronousCompilation) {
+			BlockCompiler.compile(block);
+		} else {
+			BlockCompiler.compileAsync(block);
+		}
+	}
+
+	/**
+	 * Dekodiert die einzelne Instruktion an der Adresse in den wiederverwendeten Einzelblock.
+	 * @param address die (unsigned) Adresse
+	 * @return der Einzelblock oder null, falls der Opcode ungültig ist (ungültige Opcodes
+	 * dürfen nicht als Superinstruktion laufen)
+	 */
+	private TranslatedBlock decodeSingle(int address) {
+		int opcode = retro24.readMemory(address) & 0xFF;
+		int length = Instruction.getLength((byte) opcode);
+		if (length == 0) {
+			return null;
+		}
+		int arg0 = length > 1 ? retro24.readMemory((address + 1) & 0xFFFF) & 0xFF : 0;
+		int arg1 = length > 2 ? retro24.readMemory((address + 2) & 0xFFFF) & 0xFF : 0;
+		single.code[0] = opcode | arg0 << 8 | arg1 << 16;
+		return single;
+	}
+
+	/**
+	 * Liefert den übersetzten Block ab der Adresse. Ist die Adresse heiß genug,
+	 * wird der Block hierbei übersetzt.
+	 * @param address die (unsigned) Adresse
+	 * @return der Block oder null, falls der Code (noch) interpretiert wird
+	 */
+	private TranslatedBlock enterBlock(int address) {
+		TranslatedBlock block = blockAt(address);
+		if (block != null) {
+			return block;
+		}
+		if (address < CODE_START || address > CODE_END) {
+			return null;
+		}
+		byte[] pageHeat = heat[address >>> 8];
+		if (pageHeat == null) {
+			pageHeat = new byte[0x100];
+			heat[address >>> 8] = pageHeat;
+		}
+		if (pageHeat[address & 0xFF] < TRANSLATION_THRESHOLD) {
+			pageHeat[address & 0xFF]++;
+			return null;
+		}
+		return translate(address);
+	}
+
+	/**
+	 * @return der übersetzte Block ab der Adresse oder null, falls es keinen gibt
+	 */
+	private TranslatedBlock blockAt(int address) {
+		TranslatedBlock[] page = blocks[address >>> 8];
+		return page == null ? null : page[address & 0xFF];
+	}
+
+	/**
+	 * Übersetzt den Basisblock ab der Startadresse und legt ihn im Blockcache ab.
+	 * @param start die Startadresse
+	 * @return der Block oder null, falls an der Adresse keine gültige Instruktion steht
+	 */
+	private TranslatedBlock translate(int start) {
+		TranslatedBlock block = TranslatedBlock.translate(retro24, start);
+		if (block != null) {
+			if (blocks[start >>> 8] == null) {
+				blocks[start >>> 8] = new TranslatedBlock[0x100];
+			}
+			blocks[start >>> 8][start & 0xFF] = block;
+			for (int i = start; i < start + block.byteLength; i++) {
+				if (coverage[i >>> 8] == null) {
+					coverage[i >>> 8] = new short[0x100];
+				}
+				coverage[i >>> 8][i & 0xFF]++;
+			}
+		}
+		return block;
+	}
+
+	/**
+	 * Übersetzt den Block ab der Startadresse im Voraus (siehe ProgramCache).
+	 * @param start die Startadresse
+	 * @return der Block oder null, falls dort kein Block übersetzt werden kann
+	 */
+	TranslatedBlock preload(int start) {
+		if (start < CODE_START || start > CODE_END) {
+			return null;
+		}
+		TranslatedBlock block = blockAt(start);
+		return block != null ? block : translate(start);
+	}
+
+	/**
+	 * @return die Startadressen aller aktuell übersetzten Blöcke (aufsteigend)
+	 */
+	List<Integer> getTranslatedBlockStarts() {
+		List<Integer> starts = new ArrayList<>();
+		for (int start = CODE_START; start <= CODE_END; start++) {
+			if (blockAt(start) != null) {
+				starts.add(start);
+			}
+		}
+		return starts;
+	}
+
+	/**
+	 * Verwirft alle Blöcke, die die beschriebene Adresse überdecken.
+	 */
+	@Override
+	public void memoryWritten(int address) {
+		short[] pageCoverage = coverage[address >>> 8];
+		if (pageCoverage == null || pageCoverage[address & 0xFF] == 0) {
+			return;
+		}
+		int from = Math.max(CODE_START, address - MAX_BLOCK_BYTES + 1);
+		for (int start = from; start <= address; start++) {
+			TranslatedBlock block = blockAt(start);
+			if (block != null && start + block.byteLength > address) {
+				invalidate(block);
+			}
+		}
+	}
+
+	/**
+	 * Übernimmt die vorab kompilierten Blöcke eines Programms (siehe ProgramTranslator).
+	 * Die Blöcke werden dabei aus dem aktuellen Speicher übersetzt, der Aufrufer stellt
+	 * sicher, dass dieser dem übersetzten Programm entspricht.
+	 * @param program das kompilierte Programm
+	 */
+	void install(CompiledProgram program) {
+		for (int start : program.getBlockStarts()) {
+			TranslatedBlock block = blockAt(start) != null ? blockAt(start) : translate(start);
+			if (block != null) {
+				block.compiled = program;
+			}
+		}
+	}
+
+	/**
+	 * Setzt die Anzahl an Ausführungen, ab der ein übersetzter Block kompiliert wird.
+	 * @param compileThreshold der Schwellwert (mindestens 1)
+	 */
+	public void setCompileThreshold(int compileThreshold) {
+		if (compileThreshold < 1) {
+			throw new IllegalArgumentException("Schwellwert muss mindestens 1 sein: " + compileThreshold);
+		}
+		this.compileThreshold = compileThreshold;
+	}
+
+	/**
+	 * Legt fest, ob Blöcke im ausführenden Thread (true) oder im Hintergrund (false)
+	 * kompiliert werden. Synchron ist langsamer, aber deterministisch (z.B. für Tests).
+	 * @param synchronousCompilation true für synchrones Kompilieren
+	 */
+	public void setSynchronousCompilation(boolean synchronousCompilation) {
+		this.synchronousCompilation = synchronousCompilation;
+	}
+
+	/**
+	 * Setzt den persistenten Blockcache, standardmäßig wird er über die System Property
+	 * retro24.cache gewählt. Wirkt ab dem nächsten geladenen Programm.
+	 * @param programCache der Cache oder null für keinen Cache
+	 */
+	public void setProgramCache(ProgramCache programCache) {
+		this.programCache = programCache;
+	}
+
+	private void invalidate(TranslatedBlock block) {
+		block.valid = false;
+		blocks[block.start >>> 8][block.start & 0xFF] = null;
+		if (heat[block.start >>> 8] != null) {
+			heat[block.start >>> 8][block.start & 0xFF] = 0;
+		}
+		for (int i = block.start; i < block.start + block.byteLength; i++) {
+			coverage[i >>> 8][i & 0xFF]--;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package core.CPU;
+
+import static core.Retro24.TICK_ADDRESS;
+import static core.Retro24.TOCK_ADDRESS;
+
+import core.Retro24;
+
+/**
+ * Registerzustand, über den der BlockEngine mit kompilierten Blöcken
+ * (CompiledBlock) kommuniziert. Alle Werte sind unsigned als int abgelegt.
+ * @author Eric Schneider
+ */
+final class BlockState {
+	
+	final Retro24 retro24;
+	
+	int r0;
+	int r1;
+	int r2;
+	int r3;
+	int ic;
+	int ar;
+	int tick;
+	int tock;
+	boolean halted;
+	
+	BlockState(Retro24 retro24) {
+		this.retro24 = retro24;
+	}
+	
+	/**
+	 * Übernimmt die Register vor dem Aufruf eines kompilierten Blocks.
+	 */
+	void load(int r0, int r1, int r2, int r3, int ar, int tick, int tock) {
+		this.r0 = r0;
+		this.r1 = r1;
+		this.r2 = r2;
+		this.r3 = r3;
+		this.ar = ar;
+		this.tick = tick;
+		this.tock = tock;
+		this.halted = false;
+	}
+	
+	/**
+	 * Speichert die Register beim Verlassen eines kompilierten Blocks und schreibt
+	 * tick und tock in den Speicher.
+	 * @return count (die Anzahl ausgeführter Instruktionen, zum direkten Zurückgeben)
+	 */
+	int exit(int r0, int r1, int r2, int r3, int ic, int ar, int tick, int tock, int count) {
+		this.r0 = r0;
+		this.r1 = r1;
+		this.r2 = r2;
+		this.r3 = r3;
+		this.ic = ic;
+		this.ar = ar;
+		this.tick = tick;
+		this.tock = tock;
+		flushTimer(tick, tock);
+		return count;
+	}
+	
+	/**
+	 * Schreibt tick und tock in den Speicher (vor Lesezugriffen und beim Verlassen eines Blocks).
+	 */
+	void flushTimer(int tick, int tock) {
+		retro24.writeMemory(TICK_ADDRESS, (byte) tick);
+		retro24.writeMemory(TOCK_ADDRESS, (byte) tock);
+	}
+}
@@ -2,7 +2,7 @@ package core.CPU;
 
 import static common.util.NumberUtil.*;
 import static core.CPU.Instruction.HLT;
-import static core.CPU.Instruction.getInstruction;
+import static core.CPU.Instruction.findInstruction;
 import static core.Retro24.TICK_ADDRESS;
 import static core.Retro24.TOCK_ADDRESS;
 
@@ -26,18 +26,33 @@ public class CPU {
 
 	private Instruction lastInstruction = HLT;
 	
+	// Dekodierte (zuletzt ausgeführte) Instruktion dieser CPU, wird je Schritt wiederverwendet
+	private final DecodedInstruction decodedInstruction = new DecodedInstruction();
+	
 	// Tick & Tock
 	private byte tick;
 	private byte tock;
 
+	// Seit initCPU() verbrauchte Zyklen (siehe Instruction.getCycles())
+	private long cycles;
+
 	// Ist CPU angehalten?
 	private boolean halt = false;
 	
 	// Information darüber ob die letzte IC Änderung ein Sprung war:
 	private boolean jumped = false;
+	
+	// Fehlerzustand: Fehlercode, IC und Opcode der fehlerhaften Instruktion
+	private FaultCode faultCode = FaultCode.NONE;
+	private short faultIC;
+	private byte faultOpcode;
 
 	// Referenz auf das Gesamtsystem
 	private final Retro24 retro24;
+	
+	// Dekodierte Instruktionen je Adresse, wird bei Schreibzugriffen invalidiert
+	// (null = executeOpcode() noch nie verwendet, die übrigen Engines dekodieren selbst)
+	private DecodeCache decodeCache;
 
 	public CPU(Retro24 retro24) {
         this.retro24 = retro24;
@@ -56,22 +71,80 @@ public class CPU {
     	
     	tick = 0x00;
     	tock = (byte)0xFF;
+    	cycles = 0;
+    	
+    	halt = false;
+    	jumped = false;
+    	lastInstruction = HLT;
+    	faultCode = FaultCode.NONE;
+    	faultIC = 0x0000;
+    	faultOpcode = 0x00;
     }
 
     /**
-     * Ausführen der auf in IC verwiesenen Instruktion
+     * Liefert den Cache der dekodierten Instruktionen (für executeOpcode()). Er wird
+     * beim ersten Aufruf erstellt und als MemoryWriteListener registriert.
+     * @return Cache der dekodierten Instruktionen
+     */
+    public DecodeCache getDecodeCache() {
+    	if (decodeCache == null) {
+    		decodeCache = new DecodeCache(retro24);
+    		retro24.addMemoryWriteListener(decodeCache);
+    	}
+    	return decodeCache;
+    }
+
+    /**
+     * Ausführen der auf in IC verwiesenen Instruktion. Opcode und Argumente kommen
+     * aus dem DecodeCache und werden nur nach einem Schreibzugriff neu gelesen.
+     * Bei einem ungültigen Opcode geht die CPU in den Fehlerzustand (siehe fault()).
      */
     public void executeOpcode() {
-    	byte opcode = retro24.readMemory(IC);  // Lese das Byte an der Adresse IC
-    	executeOpcode(opcode);
+    	int address = unsign(IC);
+    	int decoded = getDecodeCache().lookup(address);
+    	Instruction newInstruction = findInstruction((byte) decoded);
+    	if (newInstruction == null) {
+    		fault(FaultCode.INVALID_OPCODE, IC, (byte) decoded);
+    		return;
+    	}
+    	decodedInstruction.set(newInstruction, address, (byte) (decoded >>> 8), (byte) (decoded >>> 16));
+    	execute(newInstruction);
     }
 
+    /**
+     * Ausführen des übergebenen Opcodes an der Position IC, die Argumente werden
+     * direkt aus dem Speicher gelesen (ohne DecodeCache).
+     * Bei einem ungültigen Opcode geht die CPU in den Fehlerzustand (siehe fault()).
+     * @param opcode der Opcode
+     */
     public void executeOpcode(byte opcode) {
-    	Instruction newInstruction = getInstruction(opcode);
-    	newInstruction.execute(this);
-    	moveIC(newInstruction.getLength());
+    	Instruction newInstruction = findInstruction(opcode);
+    	if (newInstruction == null) {
+    		fault(FaultCode.INVALID_OPCODE, IC, opcode);
+    		return;
+    	}
+    	decode(newInstruction);
+    	execute(newInstruction);
+    }
+
+    private void execute(Instruction instruction) {
+    	instruction.execute(this, decodedInstruction);
+    	moveIC(instruction.getLength());
     	tickTock();
-    	setLastInstruction(newInstruction);
+    	cycles += instruction.getCycles();
+    	setLastInstruction(instruction);
+    }
+
+    /**
+     * Dekodiert die Argumente der übergebenen Instruktion an der aktuellen IC Position
+     * in das decodedInstruction Objekt dieser CPU.
+     * @param instruction die zu dekodierende Instruktion
+     */
+    private void decode(Instruction instruction) {
+    	int length = instruction.getLength();
+    	byte arg0 = length > 1 ? getOpcodeArgument(0) : 0;
+    	byte arg1 = length > 2 ? getOpcodeArgument(1) : 0;
+    	decodedInstruction.set(instruction, unsign(IC), arg0, arg1);
     }
 
 	public void writeMemory(int address, byte data) {
@@ -105,7 +178,16 @@ public class CPU {
 		if (offset < 0) {
 			throw new IllegalArgumentException("Offset < 0 is not allowed!");
 		}
-		return readMemory(addU(AR, offset));
+		return readMemory(unsign(trimToShort(addU(AR, offset))));
+	}
+	
+	/**
+	 * Schreibt ein byte an die Speicheradresse die in AR + offset steht.
+	 * @param offset das auf die Adresse addiert wird (Wrap around bei 0xFFFF)
+	 * @param data das byte
+	 */
+	public void writeToAR(int offset, byte data) {
+		retro24.writeMemory(addU(AR, offset), data);
 	}
 	
 	/**
@@ -247,6 +329,80 @@ public class CPU {
 	public void setJumped(boolean jumped) {
 		this.jumped = jumped;
 	}
+	
+	/**
+	 * Versetzt die CPU in einen Fehlerzustand und hält sie an. IC bleibt auf der
+	 * fehlerhaften Instruktion stehen, diese zählt nicht als ausgeführt.
+	 * @param code der Fehlercode
+	 * @param ic die Adresse der fehlerhaften Instruktion
+	 * @param opcode der Opcode an dieser Adresse
+	 */
+	public void fault(FaultCode code, short ic, byte opcode) {
+		faultCode = code;
+		faultIC = ic;
+		faultOpcode = opcode;
+		halt = true;
+	}
+	
+	/**
+	 * @return true, wenn die CPU wegen eines Fehlers angehalten hat
+	 */
+	public boolean isFaulted() {
+		return faultCode != FaultCode.NONE;
+	}
+	
+	public FaultCode getFaultCode() {
+		return faultCode;
+	}
+	
+	public short getFaultIC() {
+		return faultIC;
+	}
+	
+	public byte getFaultOpcode() {
+		return faultOpcode;
+	}
+	
+	/**
+	 * @return Beschreibung des Fehlers (z.B. für Log und Anzeige) oder null, falls kein Fehler vorliegt
+	 */
+	public String getFaultMessage() {
+		if (!isFaulted()) {
+			return null;
+		}
+		return String.format("%s 0x%02X an Adresse 0x%04X", faultCode.getDescription(), unsign(faultOpcode), unsign(faultIC));
+	}
+
+	public byte getTick() {
+		return tick;
+	}
+
+	public byte getTock() {
+		return tock;
+	}
+
+	public void setTick(byte tick) {
+		this.tick = tick;
+	}
+
+	public void setTock(byte tock) {
+		this.tock = tock;
+	}
+
+	/**
+	 * @return die seit initCPU() verbrauchten Zyklen, unabhängig von der Geschwindigkeit des Hosts
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Verbucht Zyklen, die ein ExecutionEngine außerhalb von executeOpcode() ausgeführt hat.
+	 * @param cycles die verbrauchten Zyklen
+	 */
+	public void addCycles(long cycles) {
+		this.cycles += cycles;
+	}
 
 	public Instruction getLastInstruction() {
 		return lastInstruction;
@@ -255,4 +411,11 @@ public class CPU {
 	public void setLastInstruction(Instruction lastInstruction) {
 		this.lastInstruction = lastInstruction;
 	}
+	
+	/**
+	 * @return die zuletzt dekodierte Instruktion dieser CPU (inkl. Argumente)
+	 */
+	public DecodedInstruction getDecodedInstruction() {
+		return decodedInstruction;
+	}
 }
@@ -0,0 +1,18 @@
+package core.CPU;
+
+/** 
+ * Interface der vom BlockCompiler zur Laufzeit erzeugten Klassen.
+ * Eine Implementierung führt genau einen übersetzten Basisblock aus.
+ */
+interface CompiledBlock {
+	
+	/**
+	 * Führt den Block auf dem übergebenen Zustand aus. Der Block läuft komplett,
+	 * außer er überschreibt eines seiner eigenen Bytes (dann endet er nach der
+	 * schreibenden Instruktion).
+	 * @param state Register und Speicher, wird aktualisiert (inkl. IC, tick, tock, halt)
+	 * @param self der zugehörige übersetzte Block (für die Gültigkeitsprüfung)
+	 * @return die Anzahl der ausgeführten Instruktionen
+	 */
+	int execute(BlockState state, TranslatedBlock self);
+}
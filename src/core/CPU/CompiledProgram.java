@@ -0,0 +1,19 @@
+package core.CPU;
+
+/**
+ * Interface der vom ProgramTranslator vorab übersetzten Programme: eine Klasse
+ * enthält alle statisch gefundenen Blöcke eines Programms und führt den Block
+ * aus, dessen Startadresse der übergebene TranslatedBlock hat.
+ */
+interface CompiledProgram extends CompiledBlock {
+
+	/**
+	 * @return Hash des Programmbereichs, aus dem die Klasse erzeugt wurde
+	 */
+	long getProgramHash();
+
+	/**
+	 * @return die Startadressen der enthaltenen Blöcke
+	 */
+	int[] getBlockStarts();
+}
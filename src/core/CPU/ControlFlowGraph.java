@@ -0,0 +1,284 @@
+package core.CPU;
+
+import static core.CPU.BlockEngine.CODE_END;
+import static core.CPU.BlockEngine.CODE_START;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import core.Retro24;
+
+/**
+ * Statisch rekonstruierter Kontrollfluss eines Programms im Speicher.
+ * Ausgehend von einer Einsprungadresse werden alle erreichbaren Basisblöcke
+ * (TranslatedBlock) gesucht. Sprungziele ergeben sich aus dem Adressregister,
+ * dessen Wert über MAR als Konstante durch die Blöcke propagiert wird.
+ * Sprünge mit unbekanntem Ziel (nach RAR / AAR) und Schreibzugriffe, die Code
+ * treffen können, werden vermerkt: diese Teile müssen zur Laufzeit interpretiert werden.
+ * Bytes des Programms, die zu keinem erreichbaren Block gehören, gelten als Daten
+ * (z.B. DAT Bytes). Für das geladene Programm erstellt Retro24.getControlFlowGraph()
+ * den Graphen bei Bedarf.
+ * @author Eric Schneider
+ */
+public final class ControlFlowGraph {
+
+	// Wert des Adressregisters ist unbekannt bzw. der Block wurde noch nicht erreicht
+	private static final int UNKNOWN = -1;
+	private static final int UNSEEN = -2;
+	private static final int[] NO_SUCCESSORS = new int[0];
+
+	private final TreeMap<Integer, TranslatedBlock> blocks = new TreeMap<>();
+	private final Map<Integer, int[]> successors = new HashMap<>();
+	// Blöcke mit berechnetem Sprungziel
+	private final Set<Integer> computedJumps = new TreeSet<>();
+	// Sprungziele außerhalb des Programmbereichs oder ohne gültige Instruktion
+	private final Set<Integer> unresolvedTargets = new TreeSet<>();
+	// Beschriebene Adressen (bekanntes AR) und Blöcke mit Schreibzugriffen über unbekanntes AR
+	private final TreeSet<Integer> writtenAddresses = new TreeSet<>();
+	private final Set<Integer> unknownWrites = new TreeSet<>();
+	// Bytes, die zu mindestens einem erreichbaren Block gehören
+	private final BitSet code = new BitSet(0x10000);
+	// Datenbereiche des Programms: Startadresse -> Endadresse (inklusive)
+	private final TreeMap<Integer, Integer> dataRegions = new TreeMap<>();
+	private int programEnd;
+
+	private ControlFlowGraph() {
+	}
+
+	/**
+	 * Rekonstruiert den Kontrollfluss des Programms im Speicher des Systems.
+	 * Das Programm endet mit dem letzten Byte des erreichbaren Codes.
+	 * @param retro24 das System mit geladenem Programm
+	 * @param entry die Einsprungadresse (i.d.R. Retro24.PROGRAMM_MEMORYSTART)
+	 * @return der Kontrollflussgraph
+	 */
+	public static ControlFlowGraph analyze(Retro24 retro24, int entry) {
+		return analyze(retro24, entry, -1);
+	}
+
+	/**
+	 * Rekonstruiert den Kontrollfluss des Programms im Speicher des Systems.
+	 * @param retro24 das System mit geladenem Programm
+	 * @param entry die Einsprungadresse (i.d.R. Retro24.PROGRAMM_MEMORYSTART)
+	 * @param programEnd letzte Adresse des geladenen Programms (für die Datenbereiche),
+	 * -1 für das Ende des erreichbaren Codes
+	 * @return der Kontrollflussgraph
+	 */
+	public static ControlFlowGraph analyze(Retro24 retro24, int entry, int programEnd) {
+		ControlFlowGraph graph = new ControlFlowGraph();
+		int[] entryAr = new int[0x10000];
+		Arrays.fill(entryAr, UNSEEN);
+		Deque<Integer> worklist = new ArrayDeque<>();
+
+		entryAr[entry] = UNKNOWN;
+		worklist.push(entry);
+		while (!worklist.isEmpty()) {
+			int start = worklist.pop();
+			TranslatedBlock block = graph.blocks.get(start);
+			if (block == null) {
+				block = start >= CODE_START && start <= CODE_END ? TranslatedBlock.translate(retro24, start) : null;
+				if (block == null) {
+					graph.unresolvedTargets.add(start);
+					continue;
+				}
+				graph.blocks.put(start, block);
+			}
+
+			int ar = entryAr[start];
+			int opcode = 0;
+			for (int i = 0; i < block.size(); i++) {
+				int packed = block.code[i];
+				opcode = packed & 0xFF;
+				switch (opcode) {
+					case 0x01: // MAR
+						ar = (packed >>> 8) & 0xFFFF;
+						break;
+					case 0x03: // RAR
+					case 0x04: // AAR
+						ar = UNKNOWN;
+						break;
+					default:
+						break;
+				}
+				if (Instruction.writesMemory((byte) opcode)) {
+					graph.recordWrite(start, ar, Instruction.getMemoryAccesses((byte) opcode));
+				}
+			}
+
+			int next = start + block.byteLength;
+			int[] blockSuccessors;
+			switch (opcode) {
+				case 0x11: // JMP
+					blockSuccessors = ar == UNKNOWN ? NO_SUCCESSORS : new int[] {ar};
+					break;
+				case 0x19: // JZ0
+				case 0x20: // JGW
+				case 0x21: // JEW
+				case 0x24: // JE0
+					blockSuccessors = ar == UNKNOWN ? new int[] {next} : new int[] {next, ar};
+					break;
+				case 0xFF: // HLT
+					blockSuccessors = NO_SUCCESSORS;
+					break;
+				default:
+					// Block wurde wegen seiner Länge oder vor einem ungültigen Opcode beendet
+					blockSuccessors = new int[] {next};
+					break;
+			}
+			if (ar == UNKNOWN && Instruction.isJump((byte) opcode)) {
+				graph.computedJumps.add(start);
+			} else {
+				graph.computedJumps.remove(start);
+			}
+			graph.successors.put(start, blockSuccessors);
+
+			for (int successor : blockSuccessors) {
+				int merged = entryAr[successor] == UNSEEN || entryAr[successor] == ar ? ar : UNKNOWN;
+				if (merged != entryAr[successor]) {
+					entryAr[successor] = merged;
+					worklist.push(successor);
+				}
+			}
+		}
+		graph.findDataRegions(entry, programEnd);
+		return graph;
+	}
+
+	/**
+	 * Markiert die Bytes aller Blöcke als Code, alle übrigen Bytes des Programms
+	 * bilden die Datenbereiche.
+	 */
+	private void findDataRegions(int entry, int programEnd) {
+		for (TranslatedBlock block : blocks.values()) {
+			code.set(block.start, block.start + block.byteLength);
+		}
+		this.programEnd = programEnd >= 0 ? programEnd : code.length() - 1;
+		int from = Math.max(entry, CODE_START);
+		int to = Math.min(this.programEnd, CODE_END);
+		for (int start = code.nextClearBit(from); start <= to; start = code.nextClearBit(start)) {
+			int end = Math.min(code.nextSetBit(start) < 0 ? to : code.nextSetBit(start) - 1, to);
+			dataRegions.put(start, end);
+			start = end + 1;
+		}
+	}
+
+	private void recordWrite(int block, int ar, int length) {
+		if (ar == UNKNOWN) {
+			unknownWrites.add(block);
+		} else {
+			for (int i = 0; i < length; i++) {
+				writtenAddresses.add((ar + i) & 0xFFFF);
+			}
+		}
+	}
+
+	/**
+	 * @return die Startadressen aller erreichbaren Blöcke (aufsteigend)
+	 */
+	public NavigableSet<Integer> getBlockStarts() {
+		return Collections.unmodifiableNavigableSet(blocks.navigableKeySet());
+	}
+
+	/**
+	 * @param start Startadresse eines Blocks
+	 * @return die statisch bekannten Nachfolger des Blocks
+	 */
+	public int[] getSuccessors(int start) {
+		return successors.getOrDefault(start, NO_SUCCESSORS).clone();
+	}
+
+	/**
+	 * @return true, wenn mindestens ein Sprung ein zur Laufzeit berechnetes Ziel hat
+	 */
+	public boolean hasComputedJumps() {
+		return !computedJumps.isEmpty();
+	}
+
+	/**
+	 * @return die Startadressen der Blöcke mit berechnetem Sprungziel
+	 */
+	public Set<Integer> getComputedJumps() {
+		return Collections.unmodifiableSet(computedJumps);
+	}
+
+	/**
+	 * @return Sprungziele, die nicht übersetzt werden konnten (außerhalb des Programmbereichs
+	 * oder ohne gültige Instruktion)
+	 */
+	public Set<Integer> getUnresolvedTargets() {
+		return Collections.unmodifiableSet(unresolvedTargets);
+	}
+
+	/**
+	 * @return true, wenn das Programm (möglicherweise) eigenen Code überschreibt
+	 */
+	public boolean isSelfModifying() {
+		if (!unknownWrites.isEmpty()) {
+			return true;
+		}
+		for (TranslatedBlock block : blocks.values()) {
+			Integer written = writtenAddresses.ceiling(block.start);
+			if (written != null && written < block.start + block.byteLength) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param address die (unsigned) Adresse
+	 * @return true, wenn die Adresse zu einem erreichbaren Block gehört
+	 */
+	public boolean isCode(int address) {
+		return code.get(address);
+	}
+
+	/**
+	 * @param address die (unsigned) Adresse
+	 * @return die Startadresse des Blocks, zu dem die Adresse gehört, oder -1, falls sie
+	 * zu keinem erreichbaren Block gehört (bei überlappenden Blöcken der nächstgelegene)
+	 */
+	public int getBlockStart(int address) {
+		if (!code.get(address)) {
+			return -1;
+		}
+		for (TranslatedBlock block : blocks.headMap(address, true).descendingMap().values()) {
+			if (block.start + block.byteLength > address) {
+				return block.start;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return die Datenbereiche des Programms: Startadresse -&gt; Endadresse (inklusive)
+	 */
+	public NavigableMap<Integer, Integer> getDataRegions() {
+		return Collections.unmodifiableNavigableMap(dataRegions);
+	}
+
+	/**
+	 * @return die letzte Adresse des analysierten Programms
+	 */
+	public int getProgramEnd() {
+		return programEnd;
+	}
+
+	/**
+	 * @return die übersetzten Blöcke (aufsteigend nach Startadresse)
+	 */
+	Collection<TranslatedBlock> getBlocks() {
+		return Collections.unmodifiableCollection(blocks.values());
+	}
+}
@@ -0,0 +1,87 @@
+package core.CPU;
+
+import core.MemoryWriteListener;
+import core.Retro24;
+
+/**
+ * Cache der dekodierten Instruktionen: je Adresse werden Opcode und Argumente
+ * einmalig aus dem Speicher gelesen und bis zum nächsten Schreibzugriff auf eines
+ * ihrer Bytes wiederverwendet. Die Einträge liegen je Seite (256 Byte) vor, eine
+ * Seite wird erst beim ersten Dekodieren darin angelegt.
+ * Als MemoryWriteListener (Registrierung durch den Erzeuger, siehe CPU.getDecodeCache())
+ * verwirft der Cache die Einträge aller Instruktionen, die das beschriebene Byte
+ * enthalten können (selbstmodifizierender Code).
+ * @author Eric Schneider
+ */
+public class DecodeCache implements MemoryWriteListener {
+
+	// Markiert einen gültigen Eintrag (0 = nicht dekodiert)
+	private static final int CACHED = 1 << 24;
+
+	private final Retro24 retro24;
+
+	// Seite -> Adresse in der Seite -> CACHED | opcode | arg0 << 8 | arg1 << 16 (null = nichts dekodiert)
+	private final int[][] pages = new int[0x100][];
+
+	public DecodeCache(Retro24 retro24) {
+		this.retro24 = retro24;
+	}
+
+	/**
+	 * Liefert die dekodierte Instruktion an der Adresse, bei Bedarf wird sie
+	 * aus dem Speicher gelesen. Ungültige Opcodes werden nicht zwischengespeichert.
+	 * @param address die (unsigned) Adresse
+	 * @return opcode | arg0 << 8 | arg1 << 16 (jeweils unsigned)
+	 */
+	public int lookup(int address) {
+		int[] page = pages[address >>> 8];
+		int entry = page == null ? 0 : page[address & 0xFF];
+		if (entry != 0) {
+			return entry & ~CACHED;
+		}
+		int opcode = retro24.readMemory(address) & 0xFF;
+		int length = Instruction.getLength((byte) opcode);
+		if (length == 0) {
+			return opcode;
+		}
+		int arg0 = length > 1 ? retro24.readMemory((address + 1) & 0xFFFF) & 0xFF : 0;
+		int arg1 = length > 2 ? retro24.readMemory((address + 2) & 0xFFFF) & 0xFF : 0;
+		entry = opcode | arg0 << 8 | arg1 << 16;
+		if (page == null) {
+			page = new int[0x100];
+			pages[address >>> 8] = page;
+		}
+		page[address & 0xFF] = entry | CACHED;
+		return entry;
+	}
+
+	/**
+	 * Dekodiert alle Instruktionen der Blöcke des Kontrollflussgraphen vorab.
+	 * @param graph der Graph des geladenen Programms
+	 */
+	public void predecode(ControlFlowGraph graph) {
+		for (TranslatedBlock block : graph.getBlocks()) {
+			for (int i = 0; i < block.size(); i++) {
+				lookup(block.addressOf(i));
+			}
+		}
+	}
+
+	/**
+	 * Verwirft die Einträge der Instruktionen, die das Byte an der Adresse enthalten können
+	 * (Instruktionen sind höchstens 3 Byte lang).
+	 */
+	@Override
+	public void memoryWritten(int address) {
+		invalidate(address);
+		invalidate((address - 1) & 0xFFFF);
+		invalidate((address - 2) & 0xFFFF);
+	}
+
+	private void invalidate(int address) {
+		int[] page = pages[address >>> 8];
+		if (page != null) {
+			page[address & 0xFF] = 0;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package core.CPU;
+
+/**
+ * Dekodierte Form einer Instruktion: die Instruktion selbst, die Adresse an der
+ * sie steht und ihre Argumente (maximal zwei Bytes).
+ * Jede CPU besitzt ihr eigenes Objekt, welches bei jedem Schritt neu befüllt wird.
+ * Dadurch liegt kein veränderlicher Zustand in den (geteilten) Instruction Enums
+ * und mehrere Retro24 Instanzen können parallel in einer JVM laufen.
+ * @author Eric Schneider
+ */
+public class DecodedInstruction {
+	
+	private Instruction instruction = Instruction.HLT;
+	private int address;
+	private byte arg0;
+	private byte arg1;
+	
+	/**
+	 * Befüllt das Objekt mit einer neu dekodierten Instruktion.
+	 * @param instruction die Instruktion
+	 * @param address die (unsigned) Adresse des Opcodes
+	 * @param arg0 erstes Argument (nur relevant bei Länge >= 2)
+	 * @param arg1 zweites Argument (nur relevant bei Länge 3)
+	 */
+	public void set(Instruction instruction, int address, byte arg0, byte arg1) {
+		this.instruction = instruction;
+		this.address = address;
+		this.arg0 = arg0;
+		this.arg1 = arg1;
+	}
+
+	public Instruction getInstruction() {
+		return instruction;
+	}
+
+	public int getAddress() {
+		return address;
+	}
+
+	public byte getArg0() {
+		return arg0;
+	}
+
+	public byte getArg1() {
+		return arg1;
+	}
+	
+	/**
+	 * @return die Länge der Instruktion (Opcode + Argumente)
+	 */
+	public int getLength() {
+		return instruction.getLength();
+	}
+	
+	/**
+	 * Liefert die Argumente als neues Array. Nur für Anzeige / Logging gedacht,
+	 * nicht für den Ausführungspfad (allokiert).
+	 * @return die Argumente (Länge = Instruktionslänge - 1)
+	 */
+	public byte[] getArgs() {
+		switch (instruction.getLength()) {
+			case 2: return new byte[] {arg0};
+			case 3: return new byte[] {arg0, arg1};
+			default: return new byte[0];
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package core.CPU;
+
+import core.Retro24;
+
+/**
+ * Enum aller verfügbaren ExecutionEngines. Jeder Eintrag enthält einen Namen
+ * und eine Fabrik (ExecutionEngineFactory), mit der das Retro24 System beim
+ * Initialisieren seinen Interpreter erzeugt.
+ * @see core.CPU.ExecutionEngine
+ * @author Eric Schneider
+ */
+public enum EngineType {
+	
+	// Referenzimplementierung: eine Instruktion nach der anderen über CPU.executeOpcode()
+	REFERENCE("reference", ReferenceEngine::new),
+	
+	// switch-Interpreter: Register in lokalen Variablen, Rückschreiben an Batchgrenzen
+	SWITCH("switch", SwitchEngine::new),
+	
+	// Übersetzt heiße Basisblöcke im Programmbereich und verkettet sie
+	BLOCK("block", BlockEngine::create);
+	
+	private final String engineName;
+	private final ExecutionEngineFactory factory;
+	
+	EngineType(String engineName, ExecutionEngineFactory factory) {
+		this.engineName = engineName;
+		this.factory = factory;
+	}
+	
+	/**
+	 * Erzeugt ein neues ExecutionEngine dieses Typs für das übergebene System.
+	 * @param retro24 das System (CPU muss bereits existieren)
+	 * @return das neue ExecutionEngine
+	 */
+	public ExecutionEngine create(Retro24 retro24) {
+		return factory.create(retro24);
+	}
+
+	public String getEngineName() {
+		return engineName;
+	}
+	
+	/**
+	 * Sucht einen EngineType anhand seines Namens (Groß-/Kleinschreibung egal).
+	 * @param engineName der Name
+	 * @return der EngineType
+	 * @throws IllegalArgumentException wenn es keinen Engine mit diesem Namen gibt
+	 */
+	public static EngineType fromName(String engineName) {
+		for (EngineType type : values()) {
+			if (type.engineName.equalsIgnoreCase(engineName)) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unbekannter Engine: " + engineName);
+	}
+}
@@ -0,0 +1,29 @@
+package core.CPU;
+
+/**
+ * Schnittstelle für Interpreter / Ausführungseinheiten der Retro24 CPU.
+ * Ein ExecutionEngine führt Instruktionen gebündelt aus, sodass verschiedene
+ * Implementierungen (Referenz, optimiert, kompiliert) je Retro24 Instanz
+ * gewählt und miteinander verglichen werden können.
+ * @see core.CPU.EngineType
+ * @author Eric Schneider
+ */
+public interface ExecutionEngine {
+	
+	/**
+	 * Führt bis zu maxInstructions Instruktionen aus. Die Ausführung endet
+	 * früher, sobald die CPU angehalten ist (HLT).
+	 * Nach Rückkehr ist der Zustand der CPU (Register, IC, AR, letzte Instruktion)
+	 * vollständig aktualisiert.
+	 * @param maxInstructions maximale Anzahl auszuführender Instruktionen
+	 * @return die Anzahl tatsächlich ausgeführter Instruktionen
+	 */
+	int run(int maxInstructions);
+
+	/**
+	 * Wird aufgerufen, nachdem ein Programm in den Speicher geladen wurde
+	 * (Retro24.loadProgramm()), z.B. um zwischengespeicherte Übersetzungen zu übernehmen.
+	 */
+	default void programLoaded() {
+	}
+}
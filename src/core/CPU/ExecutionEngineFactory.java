@@ -0,0 +1,10 @@
+package core.CPU;
+
+import core.Retro24;
+
+/** 
+ * Funktionales Interface zum Erzeugen eines ExecutionEngine für eine Retro24 Instanz
+ */
+public interface ExecutionEngineFactory {
+	ExecutionEngine create(Retro24 retro24);
+}
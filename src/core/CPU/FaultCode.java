@@ -0,0 +1,27 @@
+package core.CPU;
+
+/**
+ * Fehlerzustände der CPU. Tritt ein Fehler auf, hält die CPU an (wie bei HLT) und
+ * merkt sich Fehlercode, IC und Opcode der fehlerhaften Instruktion (siehe CPU.fault()).
+ * So bricht ein fehlerhaftes Programm nicht mit einer Exception ab, sondern der
+ * Aufrufer kann den Fehler nach dem Lauf abfragen.
+ * @author Eric Schneider
+ */
+public enum FaultCode {
+
+	// Kein Fehler
+	NONE("Kein Fehler"),
+
+	// Am IC steht kein gültiger Opcode
+	INVALID_OPCODE("Ungültiger Opcode");
+
+	private final String description;
+
+	FaultCode(String description) {
+		this.description = description;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+}
@@ -0,0 +1,329 @@
+package core.CPU;
+
+import static core.Retro24.TICK_ADDRESS;
+import static core.Retro24.TOCK_ADDRESS;
+
+import core.Retro24;
+
+/**
+ * Erkennt Warteschleifen, in denen ein Programm z.B. den Joystick Port oder tick
+ * abfragt, und überspringt deren Durchläufe, statt sie auszuführen.
+ * Ab dem aktuellen IC wird die Schleife nebenwirkungsfrei simuliert (tick / tock
+ * je Instruktion mitgezählt): ein Durchlauf endet, sobald der IC wieder am Start
+ * steht, ohne dass geschrieben wurde (SIC, SR0, SRW) oder die CPU anhält. Solche
+ * Durchläufe werden exakt übernommen (Register, tick / tock, Zyklen), z.B. bis der
+ * erwartete tick Wert kommt. Ist ein Durchlauf ohne Lesen von tick / tock ein
+ * Fixpunkt (Register unverändert), ändert sich bis zu einem Schreibzugriff von außen
+ * (z.B. IOChip) nichts mehr: die Schleife ist idle und der Rest des Budgets wird in
+ * einem Schritt übersprungen.
+ * @author Eric Schneider
+ */
+public class IdleLoopDetector {
+
+	// Maximale Länge eines Durchlaufs in Instruktionen
+	static final int MAX_LOOP_INSTRUCTIONS = 32;
+	// Maximale Anzahl einzeln simulierter Durchläufe je Aufruf
+	static final int MAX_SIMULATED_ITERATIONS = 256;
+
+	/**
+	 * Kleinstes Budget (Instruktionen bzw. Zyklen), ab dem sich die Suche nach einer
+	 * Warteschleife lohnt
+	 */
+	public static final int MIN_BUDGET = MAX_LOOP_INSTRUCTIONS * 2;
+
+	private final Retro24 retro24;
+
+	// Simulierter Zustand (unsigned)
+	private int r0;
+	private int r1;
+	private int r2;
+	private int r3;
+	private int ar;
+	private int tick;
+	private int tock;
+
+	// Letzter simulierter Durchlauf: Instruktionen, Zyklen, wurde tick / tock gelesen
+	// und zuletzt ausgeführte Instruktion (opcode | arg0 << 8 | arg1 << 16) samt Adresse
+	private int iterationInstructions;
+	private long iterationCycles;
+	private boolean readsTimer;
+	private int lastPacked;
+	private int lastAddress;
+
+	private boolean idle;
+
+	/**
+	 * @param retro24 das System, dessen CPU (auch nach initialize()) geprüft wird
+	 */
+	public IdleLoopDetector(Retro24 retro24) {
+		this.retro24 = retro24;
+	}
+
+	/**
+	 * Überspringt vollständige Durchläufe einer Warteschleife ab dem aktuellen IC,
+	 * insgesamt höchstens maxInstructions Instruktionen und maxCycles Zyklen. Der
+	 * IC steht danach wieder am Start der Schleife.
+	 * @param maxInstructions maximale Anzahl zu überspringender Instruktionen
+	 * @param maxCycles maximale Anzahl zu überspringender Zyklen
+	 * @return Anzahl der übersprungenen Instruktionen (0 = keine Warteschleife)
+	 */
+	public int skip(int maxInstructions, long maxCycles) {
+		idle = false;
+		CPU cpu = retro24.getCPU();
+		if (cpu.isHalted()) {
+			return 0;
+		}
+		int start = cpu.getIC() & 0xFFFF;
+		r0 = cpu.getR0() & 0xFF;
+		r1 = cpu.getR1() & 0xFF;
+		r2 = cpu.getR2() & 0xFF;
+		r3 = cpu.getR3() & 0xFF;
+		ar = cpu.getAR() & 0xFFFF;
+		tick = cpu.getTick() & 0xFF;
+		tock = cpu.getTock() & 0xFF;
+
+		long instructions = 0;
+		long cycles = 0;
+		int packed = -1;
+		int address = 0;
+		for (int iteration = 0; iteration < MAX_SIMULATED_ITERATIONS; iteration++) {
+			int s0 = r0;
+			int s1 = r1;
+			int s2 = r2;
+			int s3 = r3;
+			int sAR = ar;
+			int sTick = tick;
+			int sTock = tock;
+			if (!simulateIteration(start) || instructions + iterationInstructions > maxInstructions
+					|| cycles + iterationCycles > maxCycles) {
+				// Kein (ganzer) Durchlauf mehr: Zustand vor dem Durchlauf übernehmen
+				r0 = s0;
+				r1 = s1;
+				r2 = s2;
+				r3 = s3;
+				ar = sAR;
+				tick = sTick;
+				tock = sTock;
+				break;
+			}
+			instructions += iterationInstructions;
+			cycles += iterationCycles;
+			packed = lastPacked;
+			address = lastAddress;
+			if (!readsTimer && r0 == s0 && r1 == s1 && r2 == s2 && r3 == s3 && ar == sAR) {
+				// Fixpunkt: alle weiteren Durchläufe sind gleich, nur tick / tock laufen weiter
+				idle = true;
+				long repeat = Math.min((maxInstructions - instructions) / iterationInstructions,
+						(maxCycles - cycles) / iterationCycles);
+				instructions += repeat * iterationInstructions;
+				cycles += repeat * iterationCycles;
+				advanceTimer(repeat * iterationInstructions);
+				break;
+			}
+		}
+		if (instructions == 0) {
+			return 0;
+		}
+
+		cpu.setR0((byte) r0);
+		cpu.setR1((byte) r1);
+		cpu.setR2((byte) r2);
+		cpu.setR3((byte) r3);
+		cpu.setAR((short) ar);
+		cpu.setTick((byte) tick);
+		cpu.setTock((byte) tock);
+		cpu.addCycles(cycles);
+		retro24.writeMemory(TICK_ADDRESS, (byte) tick);
+		retro24.writeMemory(TOCK_ADDRESS, (byte) tock);
+		Instruction lastInstruction = Instruction.getInstruction((byte) packed);
+		cpu.getDecodedInstruction().set(lastInstruction, address, (byte) (packed >>> 8), (byte) (packed >>> 16));
+		cpu.setLastInstruction(lastInstruction);
+		return (int) instructions;
+	}
+
+	/**
+	 * @return true, wenn der letzte Aufruf von skip() eine Schleife gefunden hat, die
+	 * ohne Schreibzugriff von außen nicht mehr verlassen wird
+	 */
+	public boolean isIdle() {
+		return idle;
+	}
+
+	/**
+	 * Simuliert einen Durchlauf ab start, bis der IC wieder bei start steht.
+	 * @return false, falls der Durchlauf schreibt, anhält, einen ungültigen Opcode
+	 * enthält oder länger als MAX_LOOP_INSTRUCTIONS ist (Zustand ist dann unbrauchbar)
+	 */
+	private boolean simulateIteration(int start) {
+		iterationInstructions = 0;
+		iterationCycles = 0;
+		readsTimer = false;
+		int address = start;
+		do {
+			if (iterationInstructions == MAX_LOOP_INSTRUCTIONS) {
+				return false;
+			}
+			int opcode = read(address);
+			int length = Instruction.getLength((byte) opcode);
+			if (length == 0) {
+				return false;
+			}
+			int arg0 = length > 1 ? read((address + 1) & 0xFFFF) : 0;
+			int arg1 = length > 2 ? read((address + 2) & 0xFFFF) : 0;
+			int next = (address + length) & 0xFFFF;
+			int word;
+			switch (opcode) {
+				case 0x00: // NUL
+					break;
+				case 0x01: // MAR
+					ar = (arg1 << 8) | arg0;
+					break;
+				case 0x03: // RAR
+					ar = (r2 << 8) | r1;
+					break;
+				case 0x04: // AAR
+					ar = (ar + r0) & 0xFFFF;
+					break;
+				case 0x05: // IR0
+					r0 = AluTables.INC[r0];
+					break;
+				case 0x06: // A01
+					word = AluTables.addWord(r0, r1, r2);
+					r1 = word & 0xFF;
+					r2 = word >>> 8;
+					break;
+				case 0x07: // DR0
+					r0 = AluTables.DEC[r0];
+					break;
+				case 0x08: // S01
+					word = AluTables.subWord(r0, r1, r2);
+					r1 = word & 0xFF;
+					r2 = word >>> 8;
+					break;
+				case 0x09: // X12
+					word = r1;
+					r1 = r2;
+					r2 = word;
+					break;
+				case 0x10: // X01
+					word = r0;
+					r0 = r1;
+					r1 = word;
+					break;
+				case 0x11: // JMP
+					next = ar;
+					break;
+				case 0x14: // LR0
+					r0 = read(ar);
+					break;
+				case 0x15: // LRW
+					r1 = read(ar);
+					r2 = read((ar + 1) & 0xFFFF);
+					break;
+				case 0x16: // TAW
+					r1 = ar & 0xFF;
+					r2 = ar >>> 8;
+					break;
+				case 0x17: // MR0
+					r0 = arg0;
+					break;
+				case 0x18: // MRW
+					r1 = arg0;
+					r2 = arg1;
+					break;
+				case 0x19: // JZ0
+					if (r0 == 0) {
+						next = ar;
+					}
+					break;
+				case 0x20: // JGW
+					if (r1 > r2) {
+						next = ar;
+					}
+					break;
+				case 0x21: // JEW
+					if (r1 == r2) {
+						next = ar;
+					}
+					break;
+				case 0x22: // OR0
+					r0 |= arg0;
+					break;
+				case 0x23: // AN0
+					r0 &= arg0;
+					break;
+				case 0x24: // JE0
+					if (r0 == arg0) {
+						next = ar;
+					}
+					break;
+				case 0x25: // C01
+					r1 = r0;
+					break;
+				case 0x26: // C02
+					r2 = r0;
+					break;
+				case 0x27: // IRW
+					word = AluTables.addWord(1, r1, r2);
+					r1 = word & 0xFF;
+					r2 = word >>> 8;
+					break;
+				case 0x28: // DRW
+					word = AluTables.subWord(1, r1, r2);
+					r1 = word & 0xFF;
+					r2 = word >>> 8;
+					break;
+				case 0x29: // X03
+					word = r0;
+					r0 = r3;
+					r3 = word;
+					break;
+				case 0x2A: // C03
+					r3 = r0;
+					break;
+				case 0x2B: // C30
+					r0 = r3;
+					break;
+				case 0x2C: // PL0
+					r0 = (r0 << 1) & 0xFF;
+					break;
+				case 0x2D: // PR0
+					r0 = r0 >>> 1;
+					break;
+				default:
+					// SIC, SR0, SRW und HLT: keine Warteschleife
+					return false;
+			}
+			advanceTimer(1);
+			iterationInstructions++;
+			iterationCycles += Instruction.getCycles((byte) opcode);
+			lastPacked = opcode | arg0 << 8 | arg1 << 16;
+			lastAddress = address;
+			address = next;
+		} while (address != start);
+		return true;
+	}
+
+	/**
+	 * Liest ein Byte, tick und tock kommen aus der Simulation.
+	 */
+	private int read(int address) {
+		if (address == TICK_ADDRESS) {
+			readsTimer = true;
+			return tick;
+		}
+		if (address == TOCK_ADDRESS) {
+			readsTimer = true;
+			return tock;
+		}
+		return retro24.readMemory(address) & 0xFF;
+	}
+
+	/**
+	 * Zählt tick / tock um die Anzahl an Instruktionen weiter.
+	 */
+	private void advanceTimer(long instructions) {
+		tick = (int) ((tick + instructions) & 0xFF);
+		tock = (int) Math.max(0, tock - instructions);
+	}
+}
@@ -2,7 +2,8 @@ package core.CPU;
 
 import static common.util.NumberUtil.*;
 
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.Set;
 
 import core.exceptions.InvalidOpcodeException;
 
@@ -11,23 +12,23 @@ import core.exceptions.InvalidOpcodeException;
  * ihre Assembler Repräsentation als String, den Opcode als Bytewert und ihre
  * tatsächliche Funktion in Form eines OpcodeOperation Objektes (funktionales
  * Interface).
- * Sämtliche Instruktionen werden in einer HashMap abgelegt, auf die über die
- * getInstruction() Funktion zugegriffen wird. Somit gibt es ein einfaches Mapping
- * von Opcode (byte) auf die Instruktion (Instruction), die alle Details enthält.
+ * Sämtliche Instruktionen werden in einer 256 Einträge großen Tabelle (Index =
+ * unsigned Opcode) abgelegt, auf die über die getInstruction() Funktion zugegriffen
+ * wird. Somit gibt es ein einfaches Mapping von Opcode (byte) auf die Instruktion
+ * (Instruction), die alle Details enthält, ohne Boxing oder Allokation.
  * @see core.CPU.OpcodeOperation
  * @author Eric Schneider
  */
 public enum Instruction {
 
-	NUL("NUL", 0x00, (cpu) -> {
-		return new byte[0];
+	NUL("NUL", 0x00, 1, (cpu, decoded) -> {
 	}),
 
 	// MAR ($01, 3-Byte-OP): Lädt AR mit den nächsten beiden Bytes.
-	MAR("MAR", 0x01, (cpu) -> {
+	MAR("MAR", 0x01, 3, (cpu, decoded) -> {
 		// Arugmente holen
-		byte lowByte = cpu.getOpcodeArgument(0);
-		byte highByte = cpu.getOpcodeArgument(1);
+		byte lowByte = decoded.getArg0();
+		byte highByte = decoded.getArg1();
 
 		// Kombinieren der beiden Bytes zu einem 16-Bit Wert
 	    short address = twoByteToShort(highByte, lowByte);
@@ -35,29 +36,28 @@ public enum Instruction {
 	    // Adressregister setzen
 	    cpu.setAR(address);
 
-	    // Argumente speichern
-	    return new byte[] {lowByte, highByte};
 	}),
 
  	// SIC ($02, 1-Byte-OP): Speichert IC an die im AR angegebene Adresse.
-	SIC("SIC", 0x02, (cpu) -> {
-		// IC auslesen:
-		byte[] bytes = shortToByteArray(cpu.getIC());
+	SIC("SIC", 0x02, 1, 2, (cpu, decoded) -> {
+		// IC auslesen (ohne Zwischenarray):
+		short ic = cpu.getIC();
+		byte lowByte = trimToByte(ic);
+		byte highByte = trimToByte(unsign(ic) >>> 8);
 
-		// highbyte ist an bytes[0] lowbyte an bytes[1]
-		// nutze daher Decrementing um das lowByte zuerst zu schreiben
+		// lowByte zuerst (an AR), highByte an AR + 1
 		
 		// TESTWEISE mal drehen OBEN IST ORIGINAL:
-		cpu.writeToARDecrementing(bytes);
+		cpu.writeToAR(0, lowByte);
+		cpu.writeToAR(1, highByte);
 		
 		// FALSCHHERUM, ABER HABEN MANCHE RETRO EVTL SO: 
-		// cpu.writeToARIncrementing(bytes);
-		
-		return new byte[0];
+		// cpu.writeToAR(0, highByte);
+		// cpu.writeToAR(1, lowByte);
 	}),
 
 	// RAR ($03, 1-Byte-OP): R1/R2 werden ins AR kopiert.
-	RAR("RAR", 0x03, (cpu) -> {
+	RAR("RAR", 0x03, 1, (cpu, decoded) -> {
 		
 		// TESTWEISE mal drehen OBEN IST ORIGINAL:
 		short newAR = twoByteToShort(cpu.getR2(), cpu.getR1()); // ORIG
@@ -66,171 +66,98 @@ public enum Instruction {
 		
 		cpu.setAR(newAR);
 
-		return new byte[0];
 	}),
 	
 	// AAR ($04, 1-Byte-OP): Addiert R0 aufs AR, bei Überlauf geht Übertrag verloren.
-	AAR("AAR", 0x04, (cpu) -> {
+	AAR("AAR", 0x04, 1, (cpu, decoded) -> {
 		cpu.setAR(trimToShort(addU(cpu.getR0(), cpu.getAR())));
 		
-		return new byte[0];
 	}),
 	
 	// IR0 ($05, 1-Byte-OP): Erhöht den Wert von R0 um 1, allerdings nicht über $FF hinaus
-	IR0("IR0", 0x05, (cpu) -> {
-		if (checkByteOverflow(addU(cpu.getR0(), (byte)1))) {
-			return new byte[0];
-		}
-		
-		cpu.setR0(trimToByte(addU(cpu.getR0(), (byte)1)));
-		
-		return new byte[0];
+	IR0("IR0", 0x05, 1, (cpu, decoded) -> {
+		cpu.setR0((byte) AluTables.INC[unsign(cpu.getR0())]);
 	}),
 	
 	// A01 ($06, 1-Byte-OP): Addiert R0 auf R1. Bei Überlauf wird R2 um 1 erhöht.
 	// Läuft dabei wiederum R2 über, werden R1 und R2 zu $FF.
-	A01("A01", 0x06, (cpu) -> {
-		boolean R1Overflown = false;
-		boolean R2Overflown = false;
-		
-		// Addiert R0 auf R1
-		int sumR0R1 = addU(cpu.getR0(), cpu.getR1()); 
-		
-		// R1 neu setzen:
-		cpu.setR1(trimToByte(sumR0R1));
-		
-		// R1 Overflow prüfen und merken
-		R1Overflown = checkByteOverflow(sumR0R1);
-
-		// Bei Überlauf R1:
-		if (R1Overflown) {
-			// R2 neu berechnen
-			int R2Incremented = addU(cpu.getR2(), (byte) 1);
-			
-			// R2 neu setzen:
-			cpu.setR2(trimToByte(R2Incremented));
-			
-			// R2 auf Überlauf prüfen und merken:
-			R2Overflown = checkByteOverflow(R2Incremented);
-		}
-		
-		// Wenn R2 übergelaufen ist:
-		if (R2Overflown) {
-			cpu.setR1((byte) 0xFF);
-			cpu.setR2((byte) 0xFF);
-		}
-		
-		return new byte[0];
+	A01("A01", 0x06, 1, (cpu, decoded) -> {
+		int word = AluTables.addWord(unsign(cpu.getR0()), unsign(cpu.getR1()), unsign(cpu.getR2()));
+		cpu.setR1((byte) word);
+		cpu.setR2((byte) (word >>> 8));
 	}),
 	
 	//DR0 ($07, 1-Byte-OP): Erniedrigt den Wert von R0 um 1, allerdings nicht unter $00.
-	DR0("DR0", 0x07, (cpu) -> {
-
-		int result = subU(cpu.getR0(), (byte) 1);
-		cpu.setR0((byte) Math.max(0, result));
-
-		return new byte[0];
+	DR0("DR0", 0x07, 1, (cpu, decoded) -> {
+		cpu.setR0((byte) AluTables.DEC[unsign(cpu.getR0())]);
 	}),
 	
 	// S01 ($08, 1-Byte-OP): Subtrahiert R0 von R1. Falls eine negative Zahl
 	// entsteht, enthält R1 dann den Betrag der negativen Zahl. Ferner wird dann
 	// R2 um 1 erniedrigt. Tritt dabei ein Unterlauf von R2 auf, werden R1 und R2
 	// zu $00.
-	S01("S01", 0x08, (cpu) -> {
-		boolean R1Underflown = false;
-		boolean R2Underflown = false;
-		
-		// Subtrahiert R0 von R1
-		int diffR1R0 = subU(cpu.getR1(), cpu.getR0());
-		// R1 neu setzen:
-		cpu.setR1(trimToByte(diffR1R0));
-		
-		// R1 Underflow prüfen und merken
-		R1Underflown = checkUnderflow(diffR1R0);
-		
-		if (R1Underflown) {
-			// Auf absoluten Wert setzen:
-			cpu.setR1(trimToByte(Math.abs(diffR1R0)));
-			
-			// R2 dektremntieren
-			int R2Decremented = subU(cpu.getR2(), (byte) 1);
-			cpu.setR2(trimToByte(R2Decremented));
-			
-			// R2 Underflow prüfen und merken
-			R2Underflown = checkUnderflow(R2Decremented);
-		}
-		
-		if (R2Underflown) {
-			cpu.setR1((byte) 0x00);
-			cpu.setR2((byte) 0x00);
-		}
-		
-		return new byte[0];
+	S01("S01", 0x08, 1, (cpu, decoded) -> {
+		int word = AluTables.subWord(unsign(cpu.getR0()), unsign(cpu.getR1()), unsign(cpu.getR2()));
+		cpu.setR1((byte) word);
+		cpu.setR2((byte) (word >>> 8));
 	}),
 	
 	// X12 ($09, 1-Byte-OP): Vertauscht die Inhalte von R1 und R2.
-	X12("X12", 0x09, (cpu) -> {
+	X12("X12", 0x09, 1, (cpu, decoded) -> {
 		byte R1Old = cpu.getR1();
 		byte R2Old = cpu.getR2();
 
 		cpu.setR1(R2Old);
 		cpu.setR2(R1Old);
 		
-		return new byte[0];
 	}),
 	
 	// X01 ($10, 1-Byte-OP): Vertauscht die Inhalte von R0 und R1.
-	X01("X01", 0x10, (cpu) -> {
+	X01("X01", 0x10, 1, (cpu, decoded) -> {
 		byte R0Old = cpu.getR0();
 		byte R1Old = cpu.getR1();
 
 		cpu.setR0(R1Old);
 		cpu.setR1(R0Old);
 		
-		return new byte[0];
 	}),
 	
 	// JMP ($11, 1-Byte-OP): Springt zu der in AR angegebenen Adresse.
-	JMP("JMP", 0x11, (cpu) -> {
+	JMP("JMP", 0x11, 1, (cpu, decoded) -> {
 		cpu.jumpIC(cpu.getAR());
 		
-		return new byte[0];
 	}),
 	
 	// SR0 ($12, 1-Byte-OP): Speichert R0 an die in AR angegebene Adresse.
-	SR0("SR0", 0x12, (cpu) -> {
+	SR0("SR0", 0x12, 1, 1, (cpu, decoded) -> {
 		cpu.writeMemory(unsign(cpu.getAR()), cpu.getR0());
-		return new byte[0];
 	}),
 	
 	// SRW ($13, 1-Byte-OP): 
 	// Speichert R1 an die in AR angegebene Adresse,ferner R2 an die Adresse dahinter.
-	SRW("SRW", 0x13, (cpu) -> {
-		cpu.writeToARIncrementing(new byte[] {cpu.getR1(), cpu.getR2()});
-		
-		return new byte[0];
+	SRW("SRW", 0x13, 1, 2, (cpu, decoded) -> {
+		cpu.writeToAR(0, cpu.getR1());
+		cpu.writeToAR(1, cpu.getR2());
 	}),
 	
 	// LR0 ($14, 1-Byte-OP): Lädt R0 aus der in AR angegebenen Adresse.
-	LR0("LR0", 0x14, (cpu) -> {
+	LR0("LR0", 0x14, 1, 1, (cpu, decoded) -> {
 		cpu.setR0(cpu.readFromAR());
 		
-		return new byte[0];
 	}),
 	
 	// LRW ($15, 1-Byte-OP): Lädt R1 aus der in AR angegebenen Adresse,
 	// ferner R2 aus der Adresse dahinter.
-	LRW("LRW", 0x15, (cpu) -> {
+	LRW("LRW", 0x15, 1, 2, (cpu, decoded) -> {
 		cpu.setR1(cpu.readFromAR());
 		cpu.setR2(cpu.readFromAR(1));
-		return new byte[0];
 	}),
 	
 	// TAW ($16, 1-Byte-OP): AR wird nach R1/R2 kopiert.
-	TAW("TAW", 0x16, (cpu) -> {
-		byte[] ARbytes = shortToByteArray(cpu.getAR());
-		byte highByte = ARbytes[0];
-		byte lowByte = ARbytes[1];
+	TAW("TAW", 0x16, 1, (cpu, decoded) -> {
+		short ar = cpu.getAR();
+		byte highByte = trimToByte(unsign(ar) >>> 8);
+		byte lowByte = trimToByte(ar);
 		
 		// TESTWEISE mal drehen OBEN IST ORIGINAL:
 		
@@ -240,275 +167,325 @@ public enum Instruction {
 		// FALSCHHERUM! ABER IST IN MANCHEN RETRO SO:
 		// cpu.setR1(highByte);
 		// cpu.setR2(lowByte);
-		return new byte[0];
 	}),
 
 	// MR0 ($17, 2-Byte-OP): Das nachfolgende Byte wird nach R0 geschrieben.
-	MR0("MR0", 0x17, (cpu) -> {
-		byte arg = cpu.getOpcodeArgument(0);
+	MR0("MR0", 0x17, 2, (cpu, decoded) -> {
+		byte arg = decoded.getArg0();
 		cpu.setR0(arg);
-		return new byte[] {arg};
 	}),
 	
 	// MRW ($18, 3-Byte-OP): Die nachfolgenden 2 Bytes werden nach R1 und R2 geschrieben.
-	MRW("MR0", 0x18, (cpu) -> {
+	MRW("MR0", 0x18, 3, (cpu, decoded) -> {
 		
 		// TESTWEISE mal drehen OBEN IST ORIGINAL:
-		byte R1 = cpu.getOpcodeArgument(0); // ORIG
-		byte R2 = cpu.getOpcodeArgument(1);	// ORIG
+		byte R1 = decoded.getArg0(); // ORIG
+		byte R2 = decoded.getArg1();	// ORIG
 		
 		// FALSCHHERUM! ABER IST IN MANCHEN RETRO SO:
-		// byte R1 = cpu.getOpcodeArgument(1);
-		// byte R2 = cpu.getOpcodeArgument(0);
+		// byte R1 = decoded.getArg1();
+		// byte R2 = decoded.getArg0();
 		
 		cpu.setR1(R1);
 		cpu.setR2(R2);
-		
-		return new byte[] {R1, R2};
 	}),
 	
 	// JZ0 ($19, 1-Byte-OP): Springt zu der in AR angegebenen Adresse, falls R0=$00 ist.
-	JZ0("JZ0", 0x19, (cpu) -> {
+	JZ0("JZ0", 0x19, 1, (cpu, decoded) -> {
 		if (cpu.getR0() == 0x00) {
 			cpu.jumpIC(cpu.getAR());
 		}
 		
-		return new byte[0];
 	}),
 	
 	// JGW ($20, 1-Byte-OP): Springt zu der in AR angegebenen Adresse, falls
     //	R1 > R2 ist.
-	JGW("JGW", 0x20, (cpu) -> {
+	JGW("JGW", 0x20, 1, (cpu, decoded) -> {
 		if (unsign(cpu.getR1()) > unsign(cpu.getR2())) {
 			cpu.jumpIC(cpu.getAR());
 		}
 		
-		return new byte[0];
 	}),
 	
 	// JEW ($21, 1-Byte-OP): Springt zu der in AR angegebenen Adresse, falls
 	// R1=R2 ist
-	JEW("JEW", 0x21, (cpu) -> {
+	JEW("JEW", 0x21, 1, (cpu, decoded) -> {
 		if (unsign(cpu.getR1()) == unsign(cpu.getR2())) {
 			cpu.jumpIC(cpu.getAR());
 		}
 		
-		return new byte[0];
 	}),
 	
 	// OR0 ($22, 2-Byte-OP): Speichert in R0 das logische ODER aus dem
     //	aktuellen Wert von R0 und dem nachfolgenden Byte
-	OR0("OR0", 0x22, (cpu) -> {
-		byte arg = cpu.getOpcodeArgument(0);
+	OR0("OR0", 0x22, 2, (cpu, decoded) -> {
+		byte arg = decoded.getArg0();
 		cpu.setR0(trimToByte(uOr(arg, cpu.getR0())));
-		
-		return new byte[] {arg};
 	}),
 	
 	// AN0 ($23, 2-Byte-OP): Speichert in R0 das logische UND aus dem
 	//	aktuellen Wert von R0 und dem nachfolgenden Byte.
-	AN0("AN0", 0x23, (cpu) -> {
-		byte arg = cpu.getOpcodeArgument(0);
+	AN0("AN0", 0x23, 2, (cpu, decoded) -> {
+		byte arg = decoded.getArg0();
 		cpu.setR0(trimToByte(uAnd(arg, cpu.getR0())));
-		
-		return new byte[] {arg};
 	}),
 
 	// JE0 ($24, 2-Byte-OP): Springt zu der in AR angegebenen Adresse, falls R0
 	//	gleich dem nachfolgenden Byte ist
-	JE0("JE0", 0x24, (cpu) -> {
-		byte arg = cpu.getOpcodeArgument(0);
+	JE0("JE0", 0x24, 2, (cpu, decoded) -> {
+		byte arg = decoded.getArg0();
 		
 		if(unsign(arg) == unsign(cpu.getR0())) {
 			cpu.jumpIC(cpu.getAR());
 		}
-		
-		return new byte[] {arg};
 	}),
 	
 	// C01 ($25, 1-Byte-OP): Kopiert R0 nach R1.
-	C01("C01", 0x25, (cpu) -> {
+	C01("C01", 0x25, 1, (cpu, decoded) -> {
 		cpu.setR1(cpu.getR0());
 
-		return new byte[0];
 	}),
 	
 	// C02 ($26, 1-Byte-OP): Kopiert R0 nach R2.
-	C02("C02", 0x26, (cpu) -> {
+	C02("C02", 0x26, 1, (cpu, decoded) -> {
 		cpu.setR2(cpu.getR0());
 		
-		return new byte[0];
 	}),
 	
 	// IRW ($27, 1-Byte-OP): Erhöht den Wert von R1 um 1. Bei Überlauf wird R2
 	//	um 1 erhöht. Läuft dabei wiederum R2 über, werden R1 und R2 zu $FF.
-	IRW("IRW", 0x27, (cpu) -> {
-		boolean R1Overflown = false;
-		boolean R2Overflown = false;
-		
-		// Addiert 1 auf R1
-		int incrementedR0 = addU(cpu.getR1(), 1); 
-		
-		// R1 neu setzen:
-		cpu.setR1(trimToByte(incrementedR0));
-		
-		// R1 Overflow prüfen und merken
-		R1Overflown = checkByteOverflow(incrementedR0);
-
-		// Bei Überlauf R1:
-		if (R1Overflown) {
-			// R2 neu berechnen
-			int R2Incremented = addU(cpu.getR2(), (byte) 1);
-			
-			// R2 neu setzen:
-			cpu.setR2(trimToByte(R2Incremented));
-			
-			// R2 auf Überlauf prüfen und merken:
-			R2Overflown = checkByteOverflow(R2Incremented);
-		}
-		
-		// Wenn R2 übergelaufen ist:
-		if (R2Overflown) {
-			cpu.setR1((byte) 0xFF);
-			cpu.setR2((byte) 0xFF);
-		}
-		
-		return new byte[0];
+	IRW("IRW", 0x27, 1, (cpu, decoded) -> {
+		int word = AluTables.addWord(1, unsign(cpu.getR1()), unsign(cpu.getR2()));
+		cpu.setR1((byte) word);
+		cpu.setR2((byte) (word >>> 8));
 	}),
 	
 	// DRW ($28, 1-Byte-OP): Erniedrigt den Wert von R1 um 1. Falls eine
 	// negative Zahl entsteht, enthält R1 dann den Betrag der negativen Zahl.
 	// Ferner wird dann R2 um 1 erniedrigt. Tritt dabei ein Unterlauf von R2 auf,
 	// werden R1 und R2 zu $00.
-	DRW("DRW", 0x28, (cpu) -> {
-		boolean R1Underflown = false;
-		boolean R2Underflown = false;
-		
-		// Subtrahiert R0 von R1
-		int decrementedR1 = subU(cpu.getR1(), 1);
-		// R1 neu setzen:
-		cpu.setR1(trimToByte(decrementedR1));
-		
-		// R1 Underflow prüfen und merken
-		R1Underflown = checkUnderflow(decrementedR1);
-		
-		if (R1Underflown) {
-			// Auf absoluten Wert setzen:
-			cpu.setR1(trimToByte(Math.abs(decrementedR1)));
-			
-			// R2 dektremntieren
-			int R2Decremented = subU(cpu.getR2(), (byte) 1);
-			cpu.setR2(trimToByte(R2Decremented));
-			
-			// R2 Underflow prüfen und merken
-			R2Underflown = checkUnderflow(R2Decremented);
-		}
-		
-		if (R2Underflown) {
-			cpu.setR1((byte) 0x00);
-			cpu.setR2((byte) 0x00);
-		}
-		
-		return new byte[0];
+	DRW("DRW", 0x28, 1, (cpu, decoded) -> {
+		int word = AluTables.subWord(1, unsign(cpu.getR1()), unsign(cpu.getR2()));
+		cpu.setR1((byte) word);
+		cpu.setR2((byte) (word >>> 8));
 	}),
 	
 	// X03 ($29, 1-Byte-OP): Vertauscht die Inhalte von R0 und R3.
-	X03("X03", 0x29, (cpu) -> {
+	X03("X03", 0x29, 1, (cpu, decoded) -> {
 		byte oldR0 = cpu.getR0();
 		byte oldR3 = cpu.getR3();
 
 		cpu.setR0(oldR3);
 		cpu.setR3(oldR0);
 		
-		return new byte[0];
 	}),
 	
 	// C03 ($2A, 1-Byte-OP): Kopiert R0 nach R3.
-	C03("C03", 0x2A, (cpu) -> {
+	C03("C03", 0x2A, 1, (cpu, decoded) -> {
 		cpu.setR3(cpu.getR0());
 		
-		return new byte[0];
 	}),
 	
 	// C30 ($2B, 1-Byte-OP): Kopiert R3 nach R0.
-	C30("C30", 0x2B, (cpu) -> {
+	C30("C30", 0x2B, 1, (cpu, decoded) -> {
 		cpu.setR0(cpu.getR3());
 		
-		return new byte[0];
 	}),
 	
 	// PL0 ($2C, 1-Byte-OP): Schiebt die Bits in R0 um ein Bit nach
 	//	„links“ (entspricht Teilen ?MULTIPLIZIEREN? durch 2 ohne Rest)
-	PL0("PL0", 0x2C, (cpu) -> {
+	PL0("PL0", 0x2C, 1, (cpu, decoded) -> {
 		cpu.setR0(trimToByte((unsign(cpu.getR0()) << 1)));
-		return new byte[0];
 	}),
 	
 	// PR0 ($2D, 1-Byte-OP): Schiebt die Bits in R0 um ein Bit nach
 	// „rechts“ (entspricht Multiplikation ?DIVISION? mit 2 ohne Übertrag).
-	PR0("PR0", 0x2D, (cpu) -> {
+	PR0("PR0", 0x2D, 1, (cpu, decoded) -> {
 		cpu.setR0(trimToByte((unsign(cpu.getR0()) >>> 1)));
-		return new byte[0];
 	}),
 
 	// HLT ($FF, 1-Byte-OP): Prozessor hält an.
-	HLT("HLT", 0xFF, (cpu) -> {
+	HLT("HLT", 0xFF, 1, (cpu, decoded) -> {
 		cpu.setHalt(true);
 
-		return new byte[0];
 	});
 
 
 	// STATIC PART:
 
-	private final static HashMap<Byte, Instruction> instructions;
+	/**
+	 * Anzahl möglicher Opcodes (ein Byte).
+	 */
+	public static final int OPCODE_COUNT = 0x100;
+
+	// Direkte Dispatch-Tabelle: unsigned Opcode -> Instruktion (null = ungültig).
+	private final static Instruction[] instructions;
 	
-	// Initialisieren der HashMap:
+	// Länge je Opcode (0 = ungültiger Opcode).
+	private final static int[] lengths;
+
+	// Zyklen je Opcode (0 = ungültiger Opcode) und Zyklen der teuersten Instruktion.
+	private final static int[] cycles;
+	private final static int maxCycles;
+
+	// Speicherzugriffe über AR je Opcode und Eigenschaften für die Engines (Sprung,
+	// Ende eines Basisblocks, Schreibzugriff), ungültige Opcodes haben keine
+	private final static int[] memoryAccessCounts;
+	private final static boolean[] jumps;
+	private final static boolean[] blockEnds;
+	private final static boolean[] writes;
+	
+	// Initialisieren der Tabellen:
 	static {
-		instructions = new HashMap<>();
+		instructions = new Instruction[OPCODE_COUNT];
+		lengths = new int[OPCODE_COUNT];
+		cycles = new int[OPCODE_COUNT];
+		memoryAccessCounts = new int[OPCODE_COUNT];
+		jumps = new boolean[OPCODE_COUNT];
+		blockEnds = new boolean[OPCODE_COUNT];
+		writes = new boolean[OPCODE_COUNT];
+		int max = 0;
+		Set<Instruction> jumpInstructions = EnumSet.of(JMP, JZ0, JGW, JEW, JE0);
+		Set<Instruction> writeInstructions = EnumSet.of(SIC, SR0, SRW);
 
 		for (Instruction instruction : Instruction.values()) {
-			instructions.put(instruction.getOpcode(), instruction);
+			int index = unsign(instruction.getOpcode());
+			instructions[index] = instruction;
+			lengths[index] = instruction.getLength();
+			cycles[index] = instruction.getCycles();
+			memoryAccessCounts[index] = instruction.memoryAccesses;
+			jumps[index] = jumpInstructions.contains(instruction);
+			blockEnds[index] = jumps[index] || instruction == HLT;
+			writes[index] = writeInstructions.contains(instruction);
+			max = Math.max(max, instruction.getCycles());
 		}
+		maxCycles = max;
 	}
 
 	public static Instruction getInstruction(byte opcode) throws InvalidOpcodeException {
-
-		if (instructions.get(opcode) == null) {
+		Instruction instruction = instructions[opcode & 0xFF];
+		if (instruction == null) {
 			throw new InvalidOpcodeException("Invalid Opcode: " + String.format("0x%02X", opcode));
 		}
-		return instructions.get(opcode);
+		return instruction;
+	}
+	
+	/**
+	 * Liefert die Instruktion zu einem Opcode ohne Exception (für den Ausführungspfad,
+	 * ungültige Opcodes führen dort zu einem Fehlerzustand der CPU).
+	 * @param opcode der Opcode
+	 * @return die Instruktion oder null, falls der Opcode ungültig ist
+	 */
+	public static Instruction findInstruction(byte opcode) {
+		return instructions[opcode & 0xFF];
+	}
+	
+	/**
+	 * Liefert die Länge der Instruktion zu einem Opcode aus der statischen Tabelle.
+	 * @param opcode der Opcode
+	 * @return die Länge in Byte oder 0, falls der Opcode ungültig ist
+	 */
+	public static int getLength(byte opcode) {
+		return lengths[opcode & 0xFF];
+	}
+
+	/**
+	 * Liefert die Zyklen der Instruktion zu einem Opcode aus der statischen Tabelle.
+	 * @param opcode der Opcode
+	 * @return die Zyklen oder 0, falls der Opcode ungültig ist
+	 */
+	public static int getCycles(byte opcode) {
+		return cycles[opcode & 0xFF];
+	}
+
+	/**
+	 * @return die Zyklen der teuersten Instruktion
+	 */
+	public static int getMaxCycles() {
+		return maxCycles;
+	}
+
+	/**
+	 * Liefert die Anzahl der Speicherzugriffe über AR (ohne Holen der Instruktion), bei
+	 * schreibenden Instruktionen ist das die Anzahl der geschriebenen Bytes.
+	 * @param opcode der Opcode
+	 * @return die Anzahl oder 0, falls der Opcode ungültig ist
+	 */
+	public static int getMemoryAccesses(byte opcode) {
+		return memoryAccessCounts[opcode & 0xFF];
+	}
+
+	/**
+	 * @param opcode der Opcode
+	 * @return true, wenn die Instruktion über AR auf den Speicher zugreift (SIC, SR0, SRW, LR0, LRW)
+	 */
+	public static boolean accessesMemory(byte opcode) {
+		return memoryAccessCounts[opcode & 0xFF] != 0;
+	}
+
+	/**
+	 * @param opcode der Opcode
+	 * @return true, wenn die Instruktion über AR in den Speicher schreibt (SIC, SR0, SRW)
+	 */
+	public static boolean writesMemory(byte opcode) {
+		return writes[opcode & 0xFF];
+	}
+
+	/**
+	 * @param opcode der Opcode
+	 * @return true, wenn die Instruktion über AR aus dem Speicher liest (LR0, LRW)
+	 */
+	public static boolean readsMemory(byte opcode) {
+		return memoryAccessCounts[opcode & 0xFF] != 0 && !writes[opcode & 0xFF];
+	}
+
+	/**
+	 * @param opcode der Opcode
+	 * @return true, wenn die Instruktion ein (bedingter) Sprung nach AR ist
+	 */
+	public static boolean isJump(byte opcode) {
+		return jumps[opcode & 0xFF];
+	}
+
+	/**
+	 * @param opcode der Opcode
+	 * @return true, wenn die Instruktion einen Basisblock beendet (Sprünge und HLT)
+	 */
+	public static boolean endsBlock(byte opcode) {
+		return blockEnds[opcode & 0xFF];
 	}
 
 	private final String assemblerCode;
 	private final byte opcode;
+	private final int length;
+	// Zugriffe auf den Speicher über AR (ohne Holen der Instruktion)
+	private final int memoryAccesses;
 	private final OpcodeOperation function;
-	private byte[] args;
 
 	
 
 	// NON STATIC:
 
-	Instruction(String assemblerCode, int opcode, OpcodeOperation function) {
+	Instruction(String assemblerCode, int opcode, int length, OpcodeOperation function) {
+		this(assemblerCode, opcode, length, 0, function);
+	}
+
+	Instruction(String assemblerCode, int opcode, int length, int memoryAccesses, OpcodeOperation function) {
 		this.assemblerCode = assemblerCode;
 		this.opcode = (byte) (opcode & 0xFF);
+		this.length = length;
+		this.memoryAccesses = memoryAccesses;
 		this.function = function;
 	}
 
 	/**
-	 * Führt eine Instruktion aus und speichert die Argumente dieser im args Attribut. 
+	 * Führt eine Instruktion aus. Die Argumente kommen aus der dekodierten Instruktion
+	 * der jeweiligen CPU, die Instruktion selbst hält keinen Zustand.
 	 * @param cpu die CPU auf der die Instruktion ausgeführt wird
+	 * @param decoded die dekodierte Instruktion (Argumente) dieser CPU
 	 */
-	public void execute(CPU cpu) {
-		args = function.execute(cpu);
-	}
-
-	public byte[] getArgs() {
-		return args;
-	}
-
-	public void setArgs(byte[] args) {
-		this.args = args;
+	public void execute(CPU cpu, DecodedInstruction decoded) {
+		function.execute(cpu, decoded);
 	}
 
 	public String getAssemblerCode() {
@@ -524,6 +501,15 @@ public enum Instruction {
 	 * @return die Länge der Instruktion / Operation
 	 */
 	public int getLength() {
-		return this.args.length + 1;
+		return length;
+	}
+
+	/**
+	 * Kostenmodell: jedes Byte der Instruktion (Holen) und jeder Speicherzugriff über
+	 * AR kostet einen Zyklus, z.B. NUL 1, MR0 2, LRW 3.
+	 * @return die Zyklen der Instruktion
+	 */
+	public int getCycles() {
+		return length + memoryAccesses;
 	}
 }
@@ -0,0 +1,714 @@
+package core.CPU;
+
+import static core.Retro24.TICK_ADDRESS;
+import static core.Retro24.TOCK_ADDRESS;
+
+import java.nio.ByteBuffer;
+
+import core.MemoryWriteListener;
+import core.Retro24;
+
+/**
+ * Führt viele unabhängige Retro24 Systeme (Lanes) im Gleichschritt aus, z.B. zum
+ * Fuzzing oder Bewerten vieler Programme bzw. Eingaben.
+ * Register und Speicher aller Lanes liegen als struct-of-arrays vor: je Register ein
+ * Array über alle Lanes, der Speicher verschränkt (Adresse * Lanes + Lane), sodass
+ * dieselbe Adresse aller Lanes hintereinander liegt.
+ * Je Schritt wird die Instruktion einmal dekodiert und für alle Lanes ausgeführt, die
+ * am selben IC dieselbe Instruktion stehen haben (Gruppe). Eine Gruppe läuft bis zum
+ * nächsten Sprung, HLT oder Schreibzugriff zusammen, danach wird neu gruppiert.
+ * Laufen Lanes auseinander (bedingte Sprünge, unterschiedlicher Code), werden sie
+ * abgespalten: es läuft immer die Gruppe mit dem kleinsten IC, sodass sich Lanes an
+ * Sprungzielen wieder treffen.
+ * Das Ergebnis jeder Lane ist identisch zur Ausführung mit dem Referenz-Interpreter.
+ * Die Schleifen über die Lanes sind bewusst einfache Array Schleifen statt Vector API:
+ * eine Gruppe ist eine Liste von Lane Indizes (nach dem Abspalten nicht zusammenhängend)
+ * und Speicherzugriffe gehen je Lane über ihr eigenes AR, jeder Zugriff wäre also ein
+ * Gather bzw. Scatter. Der Gewinn kommt daher allein vom einmaligen Dekodieren je Gruppe.
+ * Die Register werden zu Beginn von run() aus den Systemen geladen und am Ende mit
+ * den geänderten Speicheradressen zurückgeschrieben. Den Speicher übernimmt der Engine
+ * beim Erzeugen und hält ihn als MemoryWriteListener aktuell, nach initialize() eines
+ * Systems muss er daher neu erzeugt werden. Ein nicht mehr benötigter Engine wird mit
+ * close() von den Systemen abgemeldet (z.B. vor MachinePool.release()), sonst halten
+ * ihn die Systeme samt Speicher aller Lanes am Leben.
+ * @author Eric Schneider
+ */
+public class LockstepEngine implements AutoCloseable {
+
+	// Opcodes, nach denen die Gruppe neu gebildet wird (Sprünge, HLT, Schreibzugriffe)
+	private static final boolean[] ENDS_GROUP = new boolean[Instruction.OPCODE_COUNT];
+	// Opcodes mit Speicherzugriff (sehen tick / tock)
+	private static final boolean[] ACCESSES_MEMORY = new boolean[Instruction.OPCODE_COUNT];
+
+	static {
+		for (int opcode = 0; opcode < Instruction.OPCODE_COUNT; opcode++) {
+			ENDS_GROUP[opcode] = Instruction.endsBlock((byte) opcode) || Instruction.writesMemory((byte) opcode);
+			ACCESSES_MEMORY[opcode] = Instruction.accessesMemory((byte) opcode);
+		}
+	}
+
+	private final Retro24[] machines;
+	private final int lanes;
+	// Listener je Lane (gemerkt, um sie in close() wieder entfernen zu können)
+	private final MemoryWriteListener[] listeners;
+	private boolean closed;
+
+	// Register je Lane (unsigned)
+	private final int[] r0;
+	private final int[] r1;
+	private final int[] r2;
+	private final int[] r3;
+	private final int[] ic;
+	private final int[] ar;
+	private final int[] tick;
+	private final int[] tock;
+	private final boolean[] halted;
+	// Opcode einer ungültigen Instruktion (-1 = kein Fehler)
+	private final int[] faultOpcode;
+	// Zuletzt ausgeführte Instruktion (opcode | arg0 << 8 | arg1 << 16, -1 = keine) und ihre Adresse
+	private final int[] lastPacked;
+	private final int[] lastAddress;
+	// Ausgeführte Instruktionen im aktuellen Lauf
+	private final int[] executed;
+	// Verbrauchte Zyklen im aktuellen Lauf
+	private final long[] cycles;
+
+	// Speicher aller Lanes: Adresse * lanes + Lane
+	private final byte[] memory;
+	// Adressen, die in mindestens einer Lane beschrieben wurden (Markierung und Liste)
+	private final boolean[] dirty = new boolean[0x10000];
+	private final int[] dirtyAddresses = new int[0x10000];
+	private int dirtyCount;
+	// Eigene Schreibzugriffe beim Zurückschreiben nicht als Änderung von außen werten
+	private boolean writingBack;
+
+	// Adressen, an denen alle Lanes dasselbe Byte haben (beim Laden berechnet, bei
+	// Schreibzugriffen verworfen): dort muss die Gruppe nicht je Lane geprüft werden
+	private final boolean[] codeSame = new boolean[0x10000];
+
+	// Lanes der aktuellen Gruppe
+	private final int[] group;
+	// Von der Gruppe ausgeführte, noch nicht in die Lanes übernommene Instruktionen
+	// (tick / tock und Zähler werden erst vor Speicherzugriffen und beim Umgruppieren geschrieben)
+	private int pending;
+	private long pendingCycles;
+	private int pendingPacked;
+	private int pendingAddress;
+
+	// Statistik: Schritte (Dispatches) und darin ausgeführte Instruktionen aller Lanes
+	private long steps;
+	private long laneInstructions;
+
+	/**
+	 * @param machines die Systeme (initialisiert, Programm geladen), je System eine Lane
+	 */
+	public LockstepEngine(Retro24... machines) {
+		if (machines.length == 0) {
+			throw new IllegalArgumentException("Mindestens ein System benötigt");
+		}
+		this.machines = machines.clone();
+		this.lanes = machines.length;
+		r0 = new int[lanes];
+		r1 = new int[lanes];
+		r2 = new int[lanes];
+		r3 = new int[lanes];
+		ic = new int[lanes];
+		ar = new int[lanes];
+		tick = new int[lanes];
+		tock = new int[lanes];
+		halted = new boolean[lanes];
+		faultOpcode = new int[lanes];
+		lastPacked = new int[lanes];
+		lastAddress = new int[lanes];
+		executed = new int[lanes];
+		cycles = new long[lanes];
+		memory = new byte[0x10000 * lanes];
+		group = new int[lanes];
+		listeners = new MemoryWriteListener[lanes];
+
+		// Speicher einmalig laden, danach halten Listener ihn bei Schreibzugriffen von
+		// außen (z.B. IO, neues Programm) aktuell
+		for (int i = 0; i < lanes; i++) {
+			int lane = i;
+			Retro24 machine = machines[lane];
+			ByteBuffer image = machine.getMemoryView(Retro24.MEMORY_START, Retro24.MEMORY_END);
+			for (int address = 0; address < image.limit(); address++) {
+				memory[address * lanes + lane] = image.get(address);
+			}
+			listeners[lane] = address -> {
+				if (!writingBack) {
+					memory[address * lanes + lane] = machine.readMemory(address);
+					codeSame[address] = false;
+				}
+			};
+			machine.addMemoryWriteListener(listeners[lane]);
+		}
+		for (int address = 0; address < codeSame.length; address++) {
+			updateCodeSame(address);
+		}
+	}
+
+	/**
+	 * Führt auf jedem System bis zu maxInstructions Instruktionen aus (weniger, sobald
+	 * es anhält). Danach ist der Zustand aller Systeme (CPU und Speicher) aktualisiert.
+	 * @param maxInstructions maximale Anzahl an Instruktionen je System
+	 * @return die Anzahl ausgeführter Instruktionen aller Systeme
+	 * @throws IllegalStateException wenn der Engine mit close() abgemeldet wurde
+	 */
+	public long run(int maxInstructions) {
+		if (closed) {
+			throw new IllegalStateException("LockstepEngine wurde geschlossen");
+		}
+		load();
+		long total = 0;
+		// Aktuelle Gruppe: Größe, IC und wie viele Instruktionen sie noch ausführen darf
+		int size = 0;
+		int address = 0;
+		int remaining = 0;
+		boolean regroup = true;
+		try {
+			while (true) {
+				if (regroup) {
+					flush(size);
+					size = buildGroup(maxInstructions);
+					if (size == 0) {
+						break;
+					}
+					address = ic[group[0]];
+					remaining = Integer.MAX_VALUE;
+					for (int k = 0; k < size; k++) {
+						remaining = Math.min(remaining, maxInstructions - executed[group[k]]);
+					}
+					regroup = false;
+				}
+
+				int leader = group[0];
+				int opcode = read(address, leader);
+				int length = Instruction.getLength((byte) opcode);
+				int arg0 = length > 1 ? read((address + 1) & 0xFFFF, leader) : 0;
+				int arg1 = length > 2 ? read((address + 2) & 0xFFFF, leader) : 0;
+
+				if (!codeSame[address] || (length > 1 && !codeSame[(address + 1) & 0xFFFF])
+						|| (length > 2 && !codeSame[(address + 2) & 0xFFFF])) {
+					// Code der Lanes unterscheidet sich: Lanes mit anderer Instruktion abspalten
+					flush(size);
+					size = splitGroup(size, address, Math.max(1, length));
+				}
+
+				if (length == 0) {
+					// Ungültiger Opcode: IC bleibt stehen, zählt nicht als ausgeführt
+					flush(size);
+					for (int k = 0; k < size; k++) {
+						int lane = group[k];
+						faultOpcode[lane] = opcode;
+						halted[lane] = true;
+					}
+					regroup = true;
+					continue;
+				}
+				if (ACCESSES_MEMORY[opcode]) {
+					// tick / tock müssen im Speicher aktuell sein
+					flush(size);
+				}
+
+				execute(opcode, address, length, arg0, arg1, size);
+
+				pending++;
+				pendingCycles += Instruction.getCycles((byte) opcode);
+				pendingPacked = opcode | arg0 << 8 | arg1 << 16;
+				pendingAddress = address;
+				total += size;
+				steps++;
+				laneInstructions += size;
+
+				if (--remaining == 0 || ENDS_GROUP[opcode]) {
+					regroup = true;
+				} else {
+					address = (address + length) & 0xFFFF;
+				}
+			}
+		} finally {
+			flush(size);
+			writeBack();
+		}
+		return total;
+	}
+
+	/**
+	 * Bildet die nächste Gruppe: alle ausführbaren Lanes, die am kleinsten IC stehen und
+	 * dort dieselbe Instruktion haben wie die erste davon.
+	 * @return die Größe der Gruppe (0 = keine Lane mehr ausführbar)
+	 */
+	private int buildGroup(int maxInstructions) {
+		int address = Integer.MAX_VALUE;
+		for (int lane = 0; lane < lanes; lane++) {
+			if (!halted[lane] && executed[lane] < maxInstructions && ic[lane] < address) {
+				address = ic[lane];
+			}
+		}
+		int size = 0;
+		for (int lane = 0; lane < lanes; lane++) {
+			if (ic[lane] == address && !halted[lane] && executed[lane] < maxInstructions) {
+				group[size++] = lane;
+			}
+		}
+		if (size == 0) {
+			return 0;
+		}
+		int length = Math.max(1, Instruction.getLength((byte) read(address, group[0])));
+		return splitGroup(size, address, length);
+	}
+
+	/**
+	 * Entfernt die Lanes aus der Gruppe, deren Instruktion an der Adresse sich von der
+	 * der ersten Lane unterscheidet.
+	 * @return die neue Größe der Gruppe
+	 */
+	private int splitGroup(int size, int address, int length) {
+		int leader = group[0];
+		int kept = 1;
+		for (int k = 1; k < size; k++) {
+			int lane = group[k];
+			boolean same = true;
+			for (int i = 0; i < length; i++) {
+				int a = (address + i) & 0xFFFF;
+				if (memory[a * lanes + lane] != memory[a * lanes + leader]) {
+					same = false;
+				}
+			}
+			if (same) {
+				group[kept++] = lane;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Schreibt die seit dem letzten Aufruf von der Gruppe ausgeführten Instruktionen in
+	 * die Lanes (tick / tock inkl. Speicher, Zähler und letzte Instruktion).
+	 */
+	private void flush(int size) {
+		if (pending == 0) {
+			return;
+		}
+		for (int k = 0; k < size; k++) {
+			int lane = group[k];
+			tick[lane] = (tick[lane] + pending) & 0xFF;
+			tock[lane] = Math.max(0, tock[lane] - pending);
+			memory[TICK_ADDRESS * lanes + lane] = (byte) tick[lane];
+			memory[TOCK_ADDRESS * lanes + lane] = (byte) tock[lane];
+			executed[lane] += pending;
+			cycles[lane] += pendingCycles;
+			lastPacked[lane] = pendingPacked;
+			lastAddress[lane] = pendingAddress;
+		}
+		markDirty(TICK_ADDRESS);
+		markDirty(TOCK_ADDRESS);
+		codeSame[TICK_ADDRESS] = false;
+		codeSame[TOCK_ADDRESS] = false;
+		pending = 0;
+		pendingCycles = 0;
+	}
+
+	/**
+	 * Führt eine Instruktion für alle Lanes der Gruppe aus.
+	 */
+	private void execute(int opcode, int address, int length, int arg0, int arg1, int size) {
+		int next = (address + length) & 0xFFFF;
+		switch (opcode) {
+			case 0x00: // NUL
+				for (int k = 0; k < size; k++) {
+					ic[group[k]] = next;
+				}
+				break;
+			case 0x01: // MAR
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ar[lane] = (arg1 << 8) | arg0;
+					ic[lane] = next;
+				}
+				break;
+			case 0x02: // SIC
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					write(ar[lane], lane, address);
+					write((ar[lane] + 1) & 0xFFFF, lane, address >>> 8);
+					ic[lane] = next;
+				}
+				break;
+			case 0x03: // RAR
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ar[lane] = (r2[lane] << 8) | r1[lane];
+					ic[lane] = next;
+				}
+				break;
+			case 0x04: // AAR
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ar[lane] = (ar[lane] + r0[lane]) & 0xFFFF;
+					ic[lane] = next;
+				}
+				break;
+			case 0x05: // IR0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] = AluTables.INC[r0[lane]];
+					ic[lane] = next;
+				}
+				break;
+			case 0x06: // A01
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					int word = AluTables.addWord(r0[lane], r1[lane], r2[lane]);
+					r1[lane] = word & 0xFF;
+					r2[lane] = word >>> 8;
+					ic[lane] = next;
+				}
+				break;
+			case 0x07: // DR0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] = AluTables.DEC[r0[lane]];
+					ic[lane] = next;
+				}
+				break;
+			case 0x08: // S01
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					int word = AluTables.subWord(r0[lane], r1[lane], r2[lane]);
+					r1[lane] = word & 0xFF;
+					r2[lane] = word >>> 8;
+					ic[lane] = next;
+				}
+				break;
+			case 0x09: // X12
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					int tmp = r1[lane];
+					r1[lane] = r2[lane];
+					r2[lane] = tmp;
+					ic[lane] = next;
+				}
+				break;
+			case 0x10: // X01
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					int tmp = r0[lane];
+					r0[lane] = r1[lane];
+					r1[lane] = tmp;
+					ic[lane] = next;
+				}
+				break;
+			case 0x11: // JMP
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ic[lane] = ar[lane];
+				}
+				break;
+			case 0x12: // SR0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					write(ar[lane], lane, r0[lane]);
+					ic[lane] = next;
+				}
+				break;
+			case 0x13: // SRW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					write(ar[lane], lane, r1[lane]);
+					write((ar[lane] + 1) & 0xFFFF, lane, r2[lane]);
+					ic[lane] = next;
+				}
+				break;
+			case 0x14: // LR0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] = read(ar[lane], lane);
+					ic[lane] = next;
+				}
+				break;
+			case 0x15: // LRW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r1[lane] = read(ar[lane], lane);
+					r2[lane] = read((ar[lane] + 1) & 0xFFFF, lane);
+					ic[lane] = next;
+				}
+				break;
+			case 0x16: // TAW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r1[lane] = ar[lane] & 0xFF;
+					r2[lane] = ar[lane] >>> 8;
+					ic[lane] = next;
+				}
+				break;
+			case 0x17: // MR0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] = arg0;
+					ic[lane] = next;
+				}
+				break;
+			case 0x18: // MRW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r1[lane] = arg0;
+					r2[lane] = arg1;
+					ic[lane] = next;
+				}
+				break;
+			case 0x19: // JZ0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ic[lane] = r0[lane] == 0 ? ar[lane] : next;
+				}
+				break;
+			case 0x20: // JGW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ic[lane] = r1[lane] > r2[lane] ? ar[lane] : next;
+				}
+				break;
+			case 0x21: // JEW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ic[lane] = r1[lane] == r2[lane] ? ar[lane] : next;
+				}
+				break;
+			case 0x22: // OR0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] |= arg0;
+					ic[lane] = next;
+				}
+				break;
+			case 0x23: // AN0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] &= arg0;
+					ic[lane] = next;
+				}
+				break;
+			case 0x24: // JE0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					ic[lane] = r0[lane] == arg0 ? ar[lane] : next;
+				}
+				break;
+			case 0x25: // C01
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r1[lane] = r0[lane];
+					ic[lane] = next;
+				}
+				break;
+			case 0x26: // C02
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r2[lane] = r0[lane];
+					ic[lane] = next;
+				}
+				break;
+			case 0x27: // IRW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					int word = AluTables.addWord(1, r1[lane], r2[lane]);
+					r1[lane] = word & 0xFF;
+					r2[lane] = word >>> 8;
+					ic[lane] = next;
+				}
+				break;
+			case 0x28: // DRW
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					int word = AluTables.subWord(1, r1[lane], r2[lane]);
+					r1[lane] = word & 0xFF;
+					r2[lane] = word >>> 8;
+					ic[lane] = next;
+				}
+				break;
+			case 0x29: // X03
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					int tmp = r0[lane];
+					r0[lane] = r3[lane];
+					r3[lane] = tmp;
+					ic[lane] = next;
+				}
+				break;
+			case 0x2A: // C03
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r3[lane] = r0[lane];
+					ic[lane] = next;
+				}
+				break;
+			case 0x2B: // C30
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] = r3[lane];
+					ic[lane] = next;
+				}
+				break;
+			case 0x2C: // PL0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] = (r0[lane] << 1) & 0xFF;
+					ic[lane] = next;
+				}
+				break;
+			case 0x2D: // PR0
+				for (int k = 0; k < size; k++) {
+					int lane = group[k];
+					r0[lane] = r0[lane] >>> 1;
+					ic[lane] = next;
+				}
+				break;
+			case 0xFF: // HLT (IC bleibt stehen)
+				for (int k = 0; k < size; k++) {
+					halted[group[k]] = true;
+				}
+				break;
+			default:
+				// Nicht erreichbar: ungültige Opcodes werden in run() behandelt
+				Instruction.getInstruction((byte) opcode);
+		}
+	}
+
+	private int read(int address, int lane) {
+		return memory[address * lanes + lane] & 0xFF;
+	}
+
+	private void write(int address, int lane, int value) {
+		memory[address * lanes + lane] = (byte) value;
+		markDirty(address);
+		codeSame[address] = false;
+	}
+
+	private void markDirty(int address) {
+		if (!dirty[address]) {
+			dirty[address] = true;
+			dirtyAddresses[dirtyCount++] = address;
+		}
+	}
+
+	/**
+	 * Lädt die Register aller Systeme in die Lanes. Der Speicher ist bereits aktuell
+	 * (siehe Konstruktor).
+	 */
+	private void load() {
+		for (int lane = 0; lane < lanes; lane++) {
+			CPU cpu = machines[lane].getCPU();
+			r0[lane] = cpu.getR0() & 0xFF;
+			r1[lane] = cpu.getR1() & 0xFF;
+			r2[lane] = cpu.getR2() & 0xFF;
+			r3[lane] = cpu.getR3() & 0xFF;
+			ic[lane] = cpu.getIC() & 0xFFFF;
+			ar[lane] = cpu.getAR() & 0xFFFF;
+			tick[lane] = cpu.getTick() & 0xFF;
+			tock[lane] = cpu.getTock() & 0xFF;
+			halted[lane] = cpu.isHalted();
+			faultOpcode[lane] = -1;
+			lastPacked[lane] = -1;
+			executed[lane] = 0;
+			cycles[lane] = 0;
+		}
+		pending = 0;
+		pendingCycles = 0;
+	}
+
+	/**
+	 * Prüft, ob alle Lanes an der Adresse dasselbe Byte haben.
+	 */
+	private void updateCodeSame(int address) {
+		int base = address * lanes;
+		boolean same = true;
+		for (int lane = 1; lane < lanes; lane++) {
+			if (memory[base + lane] != memory[base]) {
+				same = false;
+				break;
+			}
+		}
+		codeSame[address] = same;
+	}
+
+	/**
+	 * Schreibt Register und geänderten Speicher aller Lanes in die Systeme zurück.
+	 */
+	private void writeBack() {
+		for (int lane = 0; lane < lanes; lane++) {
+			Retro24 machine = machines[lane];
+			CPU cpu = machine.getCPU();
+			cpu.setR0((byte) r0[lane]);
+			cpu.setR1((byte) r1[lane]);
+			cpu.setR2((byte) r2[lane]);
+			cpu.setR3((byte) r3[lane]);
+			cpu.setIC((short) ic[lane]);
+			cpu.setAR((short) ar[lane]);
+			cpu.setTick((byte) tick[lane]);
+			cpu.setTock((byte) tock[lane]);
+			cpu.setHalt(halted[lane]);
+			cpu.addCycles(cycles[lane]);
+			if (faultOpcode[lane] >= 0) {
+				cpu.fault(FaultCode.INVALID_OPCODE, (short) ic[lane], (byte) faultOpcode[lane]);
+			}
+			if (lastPacked[lane] >= 0) {
+				int packed = lastPacked[lane];
+				Instruction lastInstruction = Instruction.getInstruction((byte) packed);
+				cpu.getDecodedInstruction().set(lastInstruction, lastAddress[lane], (byte) (packed >>> 8), (byte) (packed >>> 16));
+				cpu.setLastInstruction(lastInstruction);
+			}
+
+			writingBack = true;
+			try {
+				for (int i = 0; i < dirtyCount; i++) {
+					int address = dirtyAddresses[i];
+					byte value = memory[address * lanes + lane];
+					if (machine.readMemory(address) != value) {
+						machine.writeMemory(address, value);
+					}
+				}
+			} finally {
+				writingBack = false;
+			}
+		}
+		for (int i = 0; i < dirtyCount; i++) {
+			int address = dirtyAddresses[i];
+			dirty[address] = false;
+			updateCodeSame(address);
+		}
+		dirtyCount = 0;
+	}
+
+	/**
+	 * Meldet den Engine von allen Systemen ab, danach kann er nicht mehr ausgeführt
+	 * werden. Die Systeme behalten den Zustand nach dem letzten run().
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (int lane = 0; lane < lanes; lane++) {
+			machines[lane].removeMemoryWriteListener(listeners[lane]);
+		}
+	}
+
+	/**
+	 * @return die Anzahl der Lanes (Systeme)
+	 */
+	public int getLaneCount() {
+		return lanes;
+	}
+
+	/**
+	 * @return durchschnittliche Anzahl an Lanes je ausgeführter Instruktion (Auslastung,
+	 * maximal getLaneCount() wenn alle Lanes im Gleichschritt laufen)
+	 */
+	public double getAverageGroupSize() {
+		return steps == 0 ? 0 : (double) laneInstructions / steps;
+	}
+}
@@ -4,5 +4,5 @@ package core.CPU;
  * Funktionales Interface für Opcodes / deren Funktion
  */
 public interface OpcodeOperation {
-	byte[] execute(CPU cpu);
+	void execute(CPU cpu, DecodedInstruction decoded);
 }
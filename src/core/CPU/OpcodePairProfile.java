@@ -0,0 +1,100 @@
+package core.CPU;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import core.Retro24;
+
+/**
+ * Zählt, wie oft zwei Instruktionen direkt hintereinander im Speicher stehend
+ * ausgeführt werden (Paare ohne Sprung dazwischen). Grundlage für die Auswahl der
+ * Superinstruktionen (siehe Superinstruction).
+ * @author Eric Schneider
+ */
+public class OpcodePairProfile {
+
+	private final long[] counts = new long[Instruction.OPCODE_COUNT * Instruction.OPCODE_COUNT];
+	private long total;
+
+	// Opcode und Folgeadresse der zuletzt gezählten Instruktion
+	private int previousOpcode = -1;
+	private int previousNext = -1;
+
+	/**
+	 * Zählt die ausgeführte Instruktion.
+	 * @param opcode der (unsigned) Opcode
+	 * @param address die Adresse der Instruktion
+	 * @param length die Länge der Instruktion
+	 */
+	public void record(int opcode, int address, int length) {
+		if (previousOpcode >= 0 && previousNext == address) {
+			counts[previousOpcode << 8 | opcode]++;
+			total++;
+		}
+		previousOpcode = opcode;
+		previousNext = address + length;
+	}
+
+	/**
+	 * @return wie oft second direkt nach first ausgeführt wurde
+	 */
+	public long getCount(int first, int second) {
+		return counts[(first & 0xFF) << 8 | (second & 0xFF)];
+	}
+
+	/**
+	 * @return die Anzahl aller gezählten Paare
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @param limit maximale Anzahl an Paaren
+	 * @return die häufigsten Paare als {first, second} (absteigend nach Häufigkeit)
+	 */
+	public List<int[]> getTopPairs(int limit) {
+		List<int[]> pairs = new ArrayList<>();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				pairs.add(new int[] {i >>> 8, i & 0xFF});
+			}
+		}
+		pairs.sort(Comparator.comparingLong((int[] pair) -> getCount(pair[0], pair[1])).reversed());
+		return pairs.subList(0, Math.min(limit, pairs.size()));
+	}
+
+	/**
+	 * Führt das geladene Programm mit dem Referenz-Interpreter aus und zählt dabei die Paare.
+	 * @param retro24 das System mit geladenem Programm
+	 * @param maxInstructions maximale Anzahl auszuführender Instruktionen
+	 * @return das Profil
+	 */
+	public static OpcodePairProfile measure(Retro24 retro24, int maxInstructions) {
+		OpcodePairProfile profile = new OpcodePairProfile();
+		CPU cpu = retro24.getCPU();
+		for (int i = 0; i < maxInstructions && !cpu.isHalted(); i++) {
+			cpu.executeOpcode();
+			if (cpu.isFaulted()) {
+				break;
+			}
+			DecodedInstruction decoded = cpu.getDecodedInstruction();
+			Instruction instruction = decoded.getInstruction();
+			profile.record(instruction.getOpcode() & 0xFF, decoded.getAddress(), instruction.getLength());
+		}
+		return profile;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int[] pair : getTopPairs(20)) {
+			long count = getCount(pair[0], pair[1]);
+			builder.append(String.format("%s %s: %d (%.1f%%)%n",
+					Instruction.getInstruction((byte) pair[0]), Instruction.getInstruction((byte) pair[1]),
+					count, 100.0 * count / total));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,304 @@
+package core.CPU;
+
+import static core.CPU.BlockEngine.CODE_END;
+import static core.CPU.BlockEngine.CODE_START;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import core.Retro24;
+
+/**
+ * Persistenter Cache der übersetzten Blöcke eines Programms. Beim Laden eines Programms
+ * (Retro24.loadProgramm) werden die beim letzten Lauf heißen Blöcke sofort vordekodiert
+ * und ihr bereits kompilierter Bytecode geladen, statt erst wieder Schwellwerte
+ * abzuwarten und javac aufzurufen. Die Dateien im Cacheordner sind über den Hash
+ * des geladenen Programms (siehe ProgramTranslator.programHash()) zugeordnet:
+ * Program_&lt;HASH&gt;.profile (Startadressen der heißen Blöcke, eine je Zeile, dazu
+ * eine Zeile sha256=... mit dem Hash der Klassendatei) und
+ * Program_&lt;HASH&gt;.class (alle Blöcke des Profils als CompiledProgram). Die
+ * Klassendatei wird nur geladen, wenn sie zum Hash im Profil passt, sonst wird
+ * kein fremder oder beschädigter Bytecode definiert.
+ * Geschrieben wird, sobald das Programm HLT erreicht und neue heiße Blöcke gefunden
+ * wurden, und zwar im Hintergrund Thread des BlockCompiler (javac hält die Emulation
+ * so nicht auf). Beim Beenden der JVM wird auf noch laufendes Schreiben gewartet
+ * (Shutdown Hook), so bekommt auch ein Prozess je Lauf (z.B. cli.Retro24Runner) seinen
+ * Cache, obwohl der Hintergrund Thread ein Daemon ist. Die Blöcke werden dabei aus dem Speicherabbild beim Laden übersetzt, so
+ * passt der Cache auch bei selbstmodifizierendem Code zum nächsten Laden.
+ * Fehler beim Lesen oder Schreiben werden ignoriert, das Programm läuft dann ohne Cache.
+ * @author Eric Schneider
+ */
+public class ProgramCache {
+
+	// System Property mit dem Cacheordner (ohne Property kein Cache)
+	public static final String CACHE_DIR_PROPERTY = "retro24.cache";
+
+	// Präfix der Profilzeile mit dem SHA-256 Hash der Klassendatei
+	private static final String CLASS_DIGEST_PREFIX = "sha256=";
+
+	// So lange wird beim Beenden der JVM höchstens auf das Schreiben gewartet (Sekunden)
+	private static final long EXIT_TIMEOUT_SECONDS = 30;
+
+	// Zuletzt angestoßenes Schreiben aller Caches: der Hintergrund Thread arbeitet die
+	// Aufgaben der Reihe nach ab, ist es fertig, sind es auch alle vorherigen
+	private static Future<?> lastStore;
+	private static boolean shutdownHookRegistered;
+
+	private final Path directory;
+
+	// Programmbereich und Hash des zuletzt geladenen Programms
+	private byte[] image;
+	private long programHash;
+	// Startadressen aus dem Profil des zuletzt geladenen Programms
+	private final TreeSet<Integer> profile = new TreeSet<>();
+	private int restoredBlockCount;
+	private boolean stored;
+	// Passte die Klassendatei beim Laden zum Hash im Profil?
+	private boolean classVerified;
+	// Schreiben des Caches im Hintergrund (null = nichts geschrieben)
+	private Future<?> pendingStore;
+
+	/**
+	 * @param directory der Cacheordner (wird bei Bedarf angelegt)
+	 */
+	public ProgramCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return Cache im Ordner der System Property retro24.cache oder null, falls sie nicht gesetzt ist
+	 */
+	public static ProgramCache fromSystemProperty() {
+		String directory = System.getProperty(CACHE_DIR_PROPERTY);
+		if (directory == null || directory.isBlank()) {
+			return null;
+		}
+		return new ProgramCache(Paths.get(directory));
+	}
+
+	/**
+	 * Merkt sich das soeben geladene Programm und übernimmt, falls vorhanden, dessen
+	 * Blöcke aus dem Cache in den BlockEngine.
+	 * @param retro24 das System mit soeben geladenem Programm
+	 * @param engine der BlockEngine des Systems
+	 */
+	void restore(Retro24 retro24, BlockEngine engine) {
+		image = retro24.readMemory(CODE_START, CODE_END);
+		programHash = ProgramTranslator.programHash(retro24);
+		profile.clear();
+		restoredBlockCount = 0;
+		stored = false;
+		classVerified = false;
+
+		Path profileFile = file(".profile");
+		if (!Files.isReadable(profileFile)) {
+			return;
+		}
+		byte[] classDigest = null;
+		try {
+			for (String line : Files.readAllLines(profileFile, StandardCharsets.UTF_8)) {
+				line = line.trim();
+				if (line.startsWith(CLASS_DIGEST_PREFIX)) {
+					classDigest = HexFormat.of().parseHex(line.substring(CLASS_DIGEST_PREFIX.length()));
+				} else if (!line.isEmpty()) {
+					profile.add(Integer.decode(line));
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// Defektes Profil: wie ohne Cache weiter
+			profile.clear();
+			return;
+		}
+		for (int start : profile) {
+			if (engine.preload(start) != null) {
+				restoredBlockCount++;
+			}
+		}
+
+		Path classFile = file(".class");
+		if (classDigest == null || !Files.isReadable(classFile)) {
+			return;
+		}
+		try {
+			// Erst prüfen, dann definieren: nur die zum Profil geschriebene Klasse wird geladen
+			byte[] classBytes = Files.readAllBytes(classFile);
+			if (!MessageDigest.isEqual(classDigest, sha256(classBytes))) {
+				return;
+			}
+			classVerified = true;
+			CompiledBlock compiled = BlockCompiler.define(classBytes);
+			if (compiled instanceof CompiledProgram && ((CompiledProgram) compiled).getProgramHash() == programHash) {
+				engine.install((CompiledProgram) compiled);
+			}
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			// Blöcke bleiben vordekodiert und werden wie gewohnt kompiliert
+		}
+	}
+
+	/**
+	 * Schreibt die heißen Blöcke des aktuellen Laufs in den Cache, falls darunter
+	 * Blöcke sind, die das Profil noch nicht enthält. Je geladenem Programm wird
+	 * höchstens einmal geschrieben.
+	 * @param engine der BlockEngine, der das Programm ausgeführt hat
+	 */
+	void store(BlockEngine engine) {
+		if (image == null || stored) {
+			return;
+		}
+		stored = true;
+
+		TreeSet<Integer> starts = new TreeSet<>(profile);
+		starts.addAll(engine.getTranslatedBlockStarts());
+		if (starts.equals(profile) && classVerified) {
+			return;
+		}
+
+		// Übersetzen, Kompilieren und Schreiben im Hintergrund, mit dem Stand von jetzt
+		byte[] loadedImage = image;
+		Path profileFile = file(".profile");
+		Path classFile = file(".class");
+		long hash = programHash;
+		pendingStore = BlockCompiler.submit(() -> writeCache(loadedImage, hash, starts, profileFile, classFile));
+		awaitOnExit(pendingStore);
+	}
+
+	/**
+	 * Merkt sich das Schreiben, damit die JVM vor ihrem Ende darauf wartet.
+	 */
+	private static synchronized void awaitOnExit(Future<?> store) {
+		lastStore = store;
+		if (!shutdownHookRegistered) {
+			shutdownHookRegistered = true;
+			Runtime.getRuntime().addShutdownHook(new Thread(ProgramCache::awaitPendingStores, "Retro24 ProgramCache"));
+		}
+	}
+
+	/**
+	 * Wartet (im Shutdown Hook) auf das zuletzt angestoßene Schreiben aller Caches.
+	 */
+	private static void awaitPendingStores() {
+		Future<?> store;
+		synchronized (ProgramCache.class) {
+			store = lastStore;
+		}
+		try {
+			store.get(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			// Der Cache bleibt, wie er war
+		}
+	}
+
+	/**
+	 * Wartet, bis der zuletzt mit store() angestoßene Schreibvorgang beendet ist.
+	 * @throws InterruptedException wenn der Thread beim Warten unterbrochen wird
+	 */
+	public void awaitStore() throws InterruptedException {
+		if (pendingStore == null) {
+			return;
+		}
+		try {
+			pendingStore.get();
+		} catch (ExecutionException e) {
+			// Fehler beim Schreiben: der Cache bleibt, wie er war
+		}
+	}
+
+	/**
+	 * Übersetzt die Blöcke aus dem Speicherabbild beim Laden und schreibt Profil und Klasse.
+	 */
+	private void writeCache(byte[] image, long programHash, TreeSet<Integer> starts, Path profileFile, Path classFile) {
+		Retro24 loaded = new Retro24();
+		loaded.initialize();
+		loaded.writeMemory(CODE_START, CODE_END, image);
+		List<TranslatedBlock> blocks = new ArrayList<>();
+		StringBuilder lines = new StringBuilder();
+		for (int start : starts) {
+			TranslatedBlock block = TranslatedBlock.translate(loaded, start);
+			if (block != null) {
+				blocks.add(block);
+				lines.append(String.format("0x%04X%n", start));
+			}
+		}
+		if (blocks.isEmpty()) {
+			return;
+		}
+
+		try {
+			Files.createDirectories(directory);
+			if (BlockCompiler.isAvailable()) {
+				String className = ProgramTranslator.className(programHash);
+				byte[] classBytes = BlockCompiler.compileSource(className, ProgramTranslator.generateSource(programHash, blocks));
+				if (classBytes != null) {
+					// Klasse vor dem Profil schreiben: ein altes Profil passt nicht zur neuen Klasse
+					write(classFile, classBytes);
+					lines.append(CLASS_DIGEST_PREFIX).append(HexFormat.of().formatHex(sha256(classBytes))).append(System.lineSeparator());
+				}
+			}
+			write(profileFile, lines.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.err.println("Programmcache kann nicht geschrieben werden: " + directory);
+		}
+	}
+
+	/**
+	 * @return true, wenn beim letzten Laden eine zum Profil passende Klassendatei gefunden wurde
+	 */
+	public boolean isClassVerified() {
+		return classVerified;
+	}
+
+	/**
+	 * @return Anzahl der beim letzten Laden aus dem Profil vordekodierten Blöcke
+	 */
+	public int getRestoredBlockCount() {
+		return restoredBlockCount;
+	}
+
+	/**
+	 * @return der Cacheordner
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	private static byte[] sha256(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 ist in jeder JVM vorhanden
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Path file(String extension) {
+		return directory.resolve(ProgramTranslator.className(programHash) + extension);
+	}
+
+	/**
+	 * Schreibt über eine temporäre Datei, damit parallel startende Instanzen
+	 * nie eine halb geschriebene Datei lesen.
+	 */
+	private void write(Path target, byte[] data) throws IOException {
+		Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, data);
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package core.CPU;
+
+import static core.CPU.BlockEngine.CODE_END;
+import static core.CPU.BlockEngine.CODE_START;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+import core.Retro24;
+
+/**
+ * Übersetzt ein Programm (.bin) vorab (ahead of time) in eine Java Klasse.
+ * Der Kontrollfluss wird statisch rekonstruiert (siehe ControlFlowGraph), jeder
+ * erreichbare Basisblock wird wie beim BlockCompiler zu einer eigenen Methode.
+ * Die erzeugte Klasse kann gespeichert und bei jedem weiteren Lauf desselben
+ * Programms über install() in einen BlockEngine geladen werden, ohne dass erneut
+ * übersetzt werden muss. Code, der nicht statisch gefunden wurde (berechnete Sprünge)
+ * oder zur Laufzeit überschrieben wird, führt der BlockEngine wie gewohnt aus.
+ *
+ * Aufruf als Tool: ProgramTranslator &lt;programm.bin&gt; [ausgabeordner]
+ * @author Eric Schneider
+ */
+public final class ProgramTranslator {
+
+	private ProgramTranslator() {
+	}
+
+	/**
+	 * Berechnet den Hash des Programmbereichs (0x0100 - 0xDFFF), über den eine übersetzte
+	 * Klasse ihrem Programm zugeordnet wird.
+	 * @param retro24 das System mit geladenem Programm
+	 * @return die ersten 8 Byte des SHA-256 Hashes
+	 */
+	public static long programHash(Retro24 retro24) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(retro24.getMemoryView(CODE_START, CODE_END));
+			byte[] hash = digest.digest();
+			return ByteBuffer.wrap(hash).getLong();
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 ist in jeder JVM vorhanden
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param programHash der Hash des Programms
+	 * @return der Name der erzeugten Klasse (ohne Paket)
+	 */
+	public static String className(long programHash) {
+		return String.format("Program_%016X", programHash);
+	}
+
+	/**
+	 * Erzeugt den Java Quelltext für das Programm im Speicher des Systems.
+	 * Muss direkt nach dem Laden des Programms aufgerufen werden.
+	 * @param retro24 das System mit geladenem Programm
+	 * @return der Quelltext (Klasse im Paket core.CPU)
+	 */
+	public static String generateSource(Retro24 retro24) {
+		ControlFlowGraph graph = ControlFlowGraph.analyze(retro24, Retro24.PROGRAMM_MEMORYSTART);
+		return generateSource(programHash(retro24), graph.getBlocks());
+	}
+
+	/**
+	 * Erzeugt den Java Quelltext für die übergebenen Blöcke eines Programms.
+	 * @param programHash der Hash des Programms
+	 * @param blocks die Blöcke (aufsteigend nach Startadresse)
+	 * @return der Quelltext (Klasse im Paket core.CPU)
+	 */
+	static String generateSource(long programHash, Collection<TranslatedBlock> blocks) {
+		StringBuilder source = new StringBuilder();
+		source.append("package core.CPU;\n\n");
+		source.append("final class ").append(className(programHash)).append(" implements CompiledProgram {\n\n");
+		source.append("\tpublic long getProgramHash() {\n");
+		source.append(String.format("\t\treturn 0x%016XL;%n", programHash));
+		source.append("\t}\n\n");
+
+		source.append("\tpublic int[] getBlockStarts() {\n");
+		source.append("\t\treturn new int[] {");
+		String separator = "";
+		for (TranslatedBlock block : blocks) {
+			source.append(separator).append(String.format("0x%04X", block.start));
+			separator = ", ";
+		}
+		source.append("};\n");
+		source.append("\t}\n\n");
+
+		source.append("\tpublic int execute(BlockState state, TranslatedBlock self) {\n");
+		source.append("\t\tswitch (self.start) {\n");
+		for (TranslatedBlock block : blocks) {
+			source.append(String.format("\t\t\tcase 0x%04X: return %s(state, self);%n", block.start, methodName(block.start)));
+		}
+		source.append("\t\t\tdefault: throw new IllegalStateException(\"Kein übersetzter Block an Adresse \" + self.start);\n");
+		source.append("\t\t}\n");
+		source.append("\t}\n");
+
+		for (TranslatedBlock block : blocks) {
+			source.append("\n");
+			BlockCompiler.appendBlockMethod(source, methodName(block.start), block);
+		}
+		source.append("}\n");
+		return source.toString();
+	}
+
+	/**
+	 * Übersetzt das Programm im Speicher des Systems in Bytecode.
+	 * Muss direkt nach dem Laden des Programms aufgerufen werden.
+	 * @param retro24 das System mit geladenem Programm
+	 * @return der Bytecode der Klasse oder null, falls kein Java Compiler verfügbar ist
+	 * bzw. das Übersetzen fehlschlägt
+	 */
+	public static byte[] compile(Retro24 retro24) {
+		if (!BlockCompiler.isAvailable()) {
+			return null;
+		}
+		return BlockCompiler.compileSource(className(programHash(retro24)), generateSource(retro24));
+	}
+
+	/**
+	 * Lädt eine übersetzte Klasse in den BlockEngine des Systems. Muss direkt nach dem
+	 * Laden des Programms aufgerufen werden; passt die Klasse nicht zum Programm im
+	 * Speicher, wird sie verworfen.
+	 * @param retro24 das System mit geladenem Programm (EngineType.BLOCK)
+	 * @param classBytes der Bytecode aus compile()
+	 * @return true, wenn die Klasse geladen wurde, sonst wird das Programm normal ausgeführt
+	 */
+	public static boolean install(Retro24 retro24, byte[] classBytes) {
+		if (!(retro24.getExecutionEngine() instanceof BlockEngine)) {
+			return false;
+		}
+		try {
+			CompiledBlock compiled = BlockCompiler.define(classBytes);
+			if (!(compiled instanceof CompiledProgram)) {
+				return false;
+			}
+			CompiledProgram program = (CompiledProgram) compiled;
+			if (program.getProgramHash() != programHash(retro24)) {
+				return false;
+			}
+			((BlockEngine) retro24.getExecutionEngine()).install(program);
+			return true;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return false;
+		}
+	}
+
+	private static String methodName(int start) {
+		return String.format("block_%04X", start);
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Aufruf: ProgramTranslator <programm.bin> [ausgabeordner]");
+			System.exit(2);
+		}
+		Path outputDir = Paths.get(args.length > 1 ? args[1] : ".");
+
+		Retro24 retro24 = new Retro24();
+		retro24.initialize();
+		retro24.loadProgramm(args[0]);
+
+		ControlFlowGraph graph = ControlFlowGraph.analyze(retro24, Retro24.PROGRAMM_MEMORYSTART);
+		System.out.println("Blöcke: " + graph.getBlockStarts().size());
+		System.out.println("Berechnete Sprünge (interpretiert): " + graph.getComputedJumps().size());
+		System.out.println("Nicht übersetzbare Sprungziele: " + graph.getUnresolvedTargets().size());
+		System.out.println("Selbstmodifizierend: " + (graph.isSelfModifying() ? "ja" : "nein"));
+
+		String className = className(programHash(retro24));
+		byte[] classBytes = compile(retro24);
+		try {
+			Files.createDirectories(outputDir);
+			Files.write(outputDir.resolve(className + ".java"), generateSource(retro24).getBytes(StandardCharsets.UTF_8));
+			if (classBytes == null) {
+				System.err.println("Kein Java Compiler verfügbar oder Übersetzen fehlgeschlagen, nur Quelltext geschrieben");
+				System.exit(1);
+			}
+			Files.write(outputDir.resolve(className + ".class"), classBytes);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Fehler beim Schreiben nach: " + outputDir);
+			System.exit(1);
+		}
+		System.out.println("Geschrieben: " + outputDir.resolve(className + ".class"));
+	}
+}
@@ -0,0 +1,45 @@
+package core.CPU;
+
+import core.Retro24;
+
+/**
+ * Referenz-Interpreter: führt jede Instruktion einzeln über CPU.executeOpcode()
+ * und die Instruction Enums aus. Langsam, aber maßgeblich für das Verhalten
+ * und daher die Wahl zum Debuggen.
+ * @author Eric Schneider
+ */
+public class ReferenceEngine implements ExecutionEngine {
+	
+	private final Retro24 retro24;
+	private final CPU cpu;
+	
+	public ReferenceEngine(Retro24 retro24) {
+		this.retro24 = retro24;
+		this.cpu = retro24.getCPU();
+	}
+
+	@Override
+	public int run(int maxInstructions) {
+		int executed = 0;
+		while (executed < maxInstructions && !cpu.isHalted()) {
+			cpu.executeOpcode();
+			if (cpu.isFaulted()) {
+				// Die fehlerhafte Instruktion zählt nicht als ausgeführt (wie bei den anderen Engines)
+				break;
+			}
+			executed++;
+		}
+		return executed;
+	}
+
+	/**
+	 * Füllt den DecodeCache der CPU mit allen statisch erreichbaren Instruktionen.
+	 */
+	@Override
+	public void programLoaded() {
+		ControlFlowGraph graph = retro24.getControlFlowGraph();
+		if (graph != null) {
+			cpu.getDecodeCache().predecode(graph);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package core.CPU;
+
+/**
+ * Superinstruktionen: häufige Paare aufeinanderfolgender Instruktionen, die der
+ * BlockEngine als eine einzige Operation ausführt (ein Dispatch statt zwei).
+ * Die Auswahl beruht auf OpcodePairProfile Messungen der Beispielprogramme.
+ * Fusioniert werden nur Paare, deren Zwischenzustand nicht beobachtbar ist:
+ * keine Schreibzugriffe (Selbstmodifikation) und Lesezugriffe höchstens in einer
+ * Hälfte. Die Wirkung (Register, Speicher, tick / tock, lastInstruction) ist
+ * identisch zur Ausführung der beiden einzelnen Instruktionen.
+ * Fusionierte Opcodes liegen im ungenutzten Bereich ab 0x80.
+ * @author Eric Schneider
+ */
+final class Superinstruction {
+
+	static final int FIRST_FUSED = 0x80;
+	static final int LAST_FUSED = 0x89;
+
+	static final int MAR_JMP = 0x80;
+	static final int MAR_JZ0 = 0x81;
+	static final int MAR_LRW = 0x82;
+	static final int MR0_MAR = 0x83;
+	static final int DR0_DR0 = 0x84;
+	static final int IR0_IR0 = 0x85;
+	static final int A01_DR0 = 0x86;
+	static final int DR0_MAR = 0x87;
+	static final int MR0_C01 = 0x88;
+	static final int LRW_RAR = 0x89;
+
+	// Fusionierter Opcode -> {erster, zweiter} Opcode
+	private static final int[][] PAIRS = {
+		{0x01, 0x11}, // MAR JMP
+		{0x01, 0x19}, // MAR JZ0
+		{0x01, 0x15}, // MAR LRW
+		{0x17, 0x01}, // MR0 MAR
+		{0x07, 0x07}, // DR0 DR0
+		{0x05, 0x05}, // IR0 IR0
+		{0x06, 0x07}, // A01 DR0
+		{0x07, 0x01}, // DR0 MAR
+		{0x17, 0x25}, // MR0 C01
+		{0x15, 0x03}, // LRW RAR
+	};
+
+	// (erster << 8 | zweiter) -> fusionierter Opcode (0 = nicht fusionierbar)
+	private static final int[] FUSED = new int[Instruction.OPCODE_COUNT * Instruction.OPCODE_COUNT];
+
+	static {
+		for (int i = 0; i < PAIRS.length; i++) {
+			FUSED[PAIRS[i][0] << 8 | PAIRS[i][1]] = FIRST_FUSED + i;
+		}
+	}
+
+	private Superinstruction() {
+	}
+
+	/**
+	 * @return true, wenn der (unsigned) Opcode eine Superinstruktion ist
+	 */
+	static boolean isFused(int opcode) {
+		return opcode >= FIRST_FUSED && opcode <= LAST_FUSED;
+	}
+
+	/**
+	 * @param fusedOpcode ein fusionierter Opcode
+	 * @return der Opcode der ersten Instruktion des Paares
+	 */
+	static int firstOf(int fusedOpcode) {
+		return PAIRS[fusedOpcode - FIRST_FUSED][0];
+	}
+
+	/**
+	 * Fasst in vordekodiertem Code (siehe TranslatedBlock) fusionierbare Paare zu einem
+	 * Eintrag zusammen: Opcode der Superinstruktion mit Argumenten und Offset der ersten
+	 * Instruktion. Die Argumente der zweiten Instruktion stehen weiterhin im Originalcode.
+	 * @param code der vordekodierte Code
+	 * @return der Code mit Superinstruktionen oder code selbst, falls nichts fusioniert wurde
+	 */
+	static int[] fuse(int[] code) {
+		int[] fused = new int[code.length];
+		int slots = 0;
+		for (int i = 0; i < code.length; i++) {
+			int fusedOpcode = i + 1 < code.length ? FUSED[(code[i] & 0xFF) << 8 | (code[i + 1] & 0xFF)] : 0;
+			if (fusedOpcode != 0) {
+				fused[slots++] = (code[i] & ~0xFF) | fusedOpcode;
+				i++;
+			} else {
+				fused[slots++] = code[i];
+			}
+		}
+		if (slots == code.length) {
+			return code;
+		}
+		int[] compact = new int[slots];
+		System.arraycopy(fused, 0, compact, 0, slots);
+		return compact;
+	}
+}
@@ -0,0 +1,306 @@
+package core.CPU;
+
+import static core.Retro24.TICK_ADDRESS;
+import static core.Retro24.TOCK_ADDRESS;
+
+import core.Retro24;
+
+/**
+ * Schneller Interpreter: führt die Retro24 Instruktionen (siehe Instruction) in
+ * einer einzigen switch-Anweisung über den unsigned Opcode aus.
+ * Die Register R0-R3, IC, AR sowie tick und tock liegen während eines Laufes
+ * in lokalen int Variablen und werden erst am Ende des Batches (oder bei einer
+ * Exception) in die CPU zurückgeschrieben. Ungültige Opcodes halten die CPU im
+ * Fehlerzustand an (siehe CPU.fault()). Speicherzugriffe (inkl. tick / tock)
+ * erfolgen weiterhin sofort über das Retro24 System.
+ * @author Eric Schneider
+ */
+public class SwitchEngine implements ExecutionEngine {
+
+	private final Retro24 retro24;
+	private final CPU cpu;
+
+	public SwitchEngine(Retro24 retro24) {
+		this.retro24 = retro24;
+		this.cpu = retro24.getCPU();
+	}
+
+	@Override
+	public int run(int maxInstructions) {
+		if (cpu.isHalted() || maxInstructions <= 0) {
+			return 0;
+		}
+
+		// Register in lokale Variablen laden (unsigned)
+		int r0 = cpu.getR0() & 0xFF;
+		int r1 = cpu.getR1() & 0xFF;
+		int r2 = cpu.getR2() & 0xFF;
+		int r3 = cpu.getR3() & 0xFF;
+		int ic = cpu.getIC() & 0xFFFF;
+		int ar = cpu.getAR() & 0xFFFF;
+		int tick = cpu.getTick() & 0xFF;
+		int tock = cpu.getTock() & 0xFF;
+		boolean halted = false;
+
+		// Zuletzt ausgeführte Instruktion (für lastInstruction / decodedInstruction)
+		int lastOpcode = -1;
+		int lastAddress = 0;
+		int lastArg0 = 0;
+		int lastArg1 = 0;
+
+		// Opcode einer ungültigen Instruktion (-1 = kein Fehler)
+		int faultOpcode = -1;
+
+		int executed = 0;
+		long cycles = 0;
+		try {
+			dispatch:
+			while (executed < maxInstructions) {
+				int address = ic;
+				int opcode = retro24.readMemory(address) & 0xFF;
+				int arg0 = 0;
+				int arg1 = 0;
+
+				switch (opcode) {
+					case 0x00: // NUL
+						ic = ic + 1;
+						break;
+					case 0x01: // MAR
+						arg0 = retro24.readMemory((ic + 1) & 0xFFFF) & 0xFF;
+						arg1 = retro24.readMemory((ic + 2) & 0xFFFF) & 0xFF;
+						ar = (arg1 << 8) | arg0;
+						ic = ic + 3;
+						break;
+					case 0x02: // SIC
+						retro24.writeMemory(ar, (byte) ic);
+						retro24.writeMemory((ar + 1) & 0xFFFF, (byte) (ic >>> 8));
+						ic = ic + 1;
+						break;
+					case 0x03: // RAR
+						ar = (r2 << 8) | r1;
+						ic = ic + 1;
+						break;
+					case 0x04: // AAR
+						ar = (ar + r0) & 0xFFFF;
+						ic = ic + 1;
+						break;
+					case 0x05: // IR0
+						if (r0 < 0xFF) {
+							r0++;
+						}
+						ic = ic + 1;
+						break;
+					case 0x06: // A01
+						r1 = r1 + r0;
+						if (r1 > 0xFF) {
+							r1 &= 0xFF;
+							r2++;
+							if (r2 > 0xFF) {
+								r1 = 0xFF;
+								r2 = 0xFF;
+							}
+						}
+						ic = ic + 1;
+						break;
+					case 0x07: // DR0
+						if (r0 > 0) {
+							r0--;
+						}
+						ic = ic + 1;
+						break;
+					case 0x08: // S01
+						r1 = r1 - r0;
+						if (r1 < 0) {
+							r1 = -r1;
+							r2--;
+							if (r2 < 0) {
+								r1 = 0;
+								r2 = 0;
+							}
+						}
+						ic = ic + 1;
+						break;
+					case 0x09: { // X12
+						int tmp = r1;
+						r1 = r2;
+						r2 = tmp;
+						ic = ic + 1;
+						break;
+					}
+					case 0x10: { // X01
+						int tmp = r0;
+						r0 = r1;
+						r1 = tmp;
+						ic = ic + 1;
+						break;
+					}
+					case 0x11: // JMP
+						ic = ar;
+						break;
+					case 0x12: // SR0
+						retro24.writeMemory(ar, (byte) r0);
+						ic = ic + 1;
+						break;
+					case 0x13: // SRW
+						retro24.writeMemory(ar, (byte) r1);
+						retro24.writeMemory((ar + 1) & 0xFFFF, (byte) r2);
+						ic = ic + 1;
+						break;
+					case 0x14: // LR0
+						r0 = retro24.readMemory(ar) & 0xFF;
+						ic = ic + 1;
+						break;
+					case 0x15: // LRW
+						r1 = retro24.readMemory(ar) & 0xFF;
+						r2 = retro24.readMemory((ar + 1) & 0xFFFF) & 0xFF;
+						ic = ic + 1;
+						break;
+					case 0x16: // TAW
+						r1 = ar & 0xFF;
+						r2 = ar >>> 8;
+						ic = ic + 1;
+						break;
+					case 0x17: // MR0
+						arg0 = retro24.readMemory((ic + 1) & 0xFFFF) & 0xFF;
+						r0 = arg0;
+						ic = ic + 2;
+						break;
+					case 0x18: // MRW
+						arg0 = retro24.readMemory((ic + 1) & 0xFFFF) & 0xFF;
+						arg1 = retro24.readMemory((ic + 2) & 0xFFFF) & 0xFF;
+						r1 = arg0;
+						r2 = arg1;
+						ic = ic + 3;
+						break;
+					case 0x19: // JZ0
+						ic = r0 == 0 ? ar : ic + 1;
+						break;
+					case 0x20: // JGW
+						ic = r1 > r2 ? ar : ic + 1;
+						break;
+					case 0x21: // JEW
+						ic = r1 == r2 ? ar : ic + 1;
+						break;
+					case 0x22: // OR0
+						arg0 = retro24.readMemory((ic + 1) & 0xFFFF) & 0xFF;
+						r0 |= arg0;
+						ic = ic + 2;
+						break;
+					case 0x23: // AN0
+						arg0 = retro24.readMemory((ic + 1) & 0xFFFF) & 0xFF;
+						r0 &= arg0;
+						ic = ic + 2;
+						break;
+					case 0x24: // JE0
+						arg0 = retro24.readMemory((ic + 1) & 0xFFFF) & 0xFF;
+						ic = arg0 == r0 ? ar : ic + 2;
+						break;
+					case 0x25: // C01
+						r1 = r0;
+						ic = ic + 1;
+						break;
+					case 0x26: // C02
+						r2 = r0;
+						ic = ic + 1;
+						break;
+					case 0x27: // IRW
+						r1++;
+						if (r1 > 0xFF) {
+							r1 = 0;
+							r2++;
+							if (r2 > 0xFF) {
+								r1 = 0xFF;
+								r2 = 0xFF;
+							}
+						}
+						ic = ic + 1;
+						break;
+					case 0x28: // DRW
+						r1--;
+						if (r1 < 0) {
+							r1 = 1;
+							r2--;
+							if (r2 < 0) {
+								r1 = 0;
+								r2 = 0;
+							}
+						}
+						ic = ic + 1;
+						break;
+					case 0x29: { // X03
+						int tmp = r0;
+						r0 = r3;
+						r3 = tmp;
+						ic = ic + 1;
+						break;
+					}
+					case 0x2A: // C03
+						r3 = r0;
+						ic = ic + 1;
+						break;
+					case 0x2B: // C30
+						r0 = r3;
+						ic = ic + 1;
+						break;
+					case 0x2C: // PL0
+						r0 = (r0 << 1) & 0xFF;
+						ic = ic + 1;
+						break;
+					case 0x2D: // PR0
+						r0 = r0 >>> 1;
+						ic = ic + 1;
+						break;
+					case 0xFF: // HLT (IC bleibt stehen)
+						halted = true;
+						break;
+					default:
+						// Ungültiger Opcode: IC bleibt stehen, Fehlerzustand wird im finally gesetzt
+						faultOpcode = opcode;
+						halted = true;
+						break dispatch;
+				}
+				ic &= 0xFFFF;
+
+				// tick & tock
+				tick = (tick + 1) & 0xFF;
+				if (tock > 0) {
+					tock--;
+				}
+				retro24.writeMemory(TICK_ADDRESS, (byte) tick);
+				retro24.writeMemory(TOCK_ADDRESS, (byte) tock);
+
+				lastOpcode = opcode;
+				lastAddress = address;
+				lastArg0 = arg0;
+				lastArg1 = arg1;
+				executed++;
+				cycles += Instruction.getCycles((byte) opcode);
+
+				if (halted) {
+					break;
+				}
+			}
+		} finally {
+			// Zustand zurückschreiben (Batchgrenze)
+			cpu.setR0((byte) r0);
+			cpu.setR1((byte) r1);
+			cpu.setR2((byte) r2);
+			cpu.setR3((byte) r3);
+			cpu.setIC((short) ic);
+			cpu.setAR((short) ar);
+			cpu.setTick((byte) tick);
+			cpu.setTock((byte) tock);
+			cpu.setHalt(halted);
+			cpu.addCycles(cycles);
+			if (faultOpcode >= 0) {
+				cpu.fault(FaultCode.INVALID_OPCODE, (short) ic, (byte) faultOpcode);
+			}
+			if (lastOpcode >= 0) {
+				Instruction lastInstruction = Instruction.getInstruction((byte) lastOpcode);
+				cpu.getDecodedInstruction().set(lastInstruction, lastAddress, (byte) lastArg0, (byte) lastArg1);
+				cpu.setLastInstruction(lastInstruction);
+			}
+		}
+		return executed;
+	}
+}
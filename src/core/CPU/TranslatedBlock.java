@@ -0,0 +1,172 @@
+package core.CPU;
+
+import static core.CPU.BlockEngine.CODE_END;
+import static core.CPU.BlockEngine.MAX_BLOCK_INSTRUCTIONS;
+
+import core.Retro24;
+
+/**
+ * Ein übersetzter Basisblock für den BlockEngine: eine Folge von Instruktionen
+ * ohne Sprünge, die mit einer Sprunginstruktion (JMP, JZ0, JGW, JEW, JE0) oder HLT
+ * endet. Opcode und Argumente jeder Instruktion liegen vordekodiert vor, sodass bei
+ * der Ausführung weder Speicher gelesen noch dekodiert werden muss.
+ * Blöcke werden über die zuletzt beobachteten Nachfolger verkettet und beim
+ * Überschreiben ihrer Bytes ungültig.
+ * @author Eric Schneider
+ */
+class TranslatedBlock {
+
+	// Startadresse und Länge in Byte
+	final int start;
+	final int byteLength;
+
+	// Vordekodierte Instruktionen: opcode | arg0 << 8 | arg1 << 16 | offset << 24
+	// (offset = Abstand der Instruktion zur Startadresse)
+	final int[] code;
+	// Code für den Interpreter, Paare sind zu Superinstruktionen zusammengefasst
+	// (siehe Superinstruction), und der Index der ersten Instruktion jedes Eintrags
+	// (null, falls nichts fusioniert wurde)
+	final int[] fused;
+	private final int[] fusedIndex;
+	
+	// Enthält der Block Lesezugriffe auf den Speicher (LR0, LRW)?
+	final boolean readsMemory;
+	// Zyklen aller Instruktionen des Blocks (siehe Instruction.getCycles())
+	final long cycles;
+
+	// Ist false, sobald eines der Bytes des Blocks überschrieben wurde
+	boolean valid = true;
+	
+	// Anzahl der Eintritte in den Block und (ggf. im Hintergrund) kompilierte Form
+	int executions;
+	volatile CompiledBlock compiled;
+
+	// Verkettung: Nachfolger beim Durchfallen bzw. beim (zuletzt genommenen) Sprung
+	private TranslatedBlock fallthrough;
+	private int jumpTarget = -1;
+	private TranslatedBlock jumpSuccessor;
+
+	TranslatedBlock(int start, int byteLength, int[] code, boolean readsMemory) {
+		this.start = start;
+		this.byteLength = byteLength;
+		this.code = code;
+		this.fused = Superinstruction.fuse(code);
+		this.fusedIndex = fused == code ? null : indexFused(fused);
+		this.readsMemory = readsMemory;
+		this.cycles = cyclesOf(code, code.length);
+	}
+
+	/**
+	 * @param index Index der Instruktion im Block
+	 * @return die Adresse der Instruktion
+	 */
+	int addressOf(int index) {
+		return start + (code[index] >>> 24);
+	}
+
+	/**
+	 * @param slot Index eines Eintrags in fused (oder fused.length)
+	 * @return Index der ersten Instruktion des Eintrags in code (bzw. die Anzahl der
+	 * Instruktionen vor dem Eintrag)
+	 */
+	int indexOf(int slot) {
+		return fusedIndex == null ? slot : fusedIndex[slot];
+	}
+
+	private static int[] indexFused(int[] fused) {
+		int[] index = new int[fused.length + 1];
+		for (int slot = 0; slot < fused.length; slot++) {
+			index[slot + 1] = index[slot] + (Superinstruction.isFused(fused[slot] & 0xFF) ? 2 : 1);
+		}
+		return index;
+	}
+
+	/**
+	 * @param count Anzahl der ab Blockanfang ausgeführten Instruktionen
+	 * @return die Zyklen dieser Instruktionen
+	 */
+	long cyclesOf(int count) {
+		return count == code.length ? cycles : cyclesOf(code, count);
+	}
+
+	private static long cyclesOf(int[] code, int count) {
+		long sum = 0;
+		for (int i = 0; i < count; i++) {
+			sum += Instruction.getCycles((byte) code[i]);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return Anzahl der Instruktionen im Block
+	 */
+	int size() {
+		return code.length;
+	}
+
+	/**
+	 * Liefert den verketteten Nachfolger für die Adresse, an der der Block verlassen wurde.
+	 * @param exitAddress der IC nach dem Verlassen des Blocks
+	 * @return der gültige Nachfolger oder null, falls (noch) keiner verkettet ist
+	 */
+	TranslatedBlock successor(int exitAddress) {
+		TranslatedBlock next = null;
+		if (exitAddress == start + byteLength) {
+			next = fallthrough;
+		} else if (exitAddress == jumpTarget) {
+			next = jumpSuccessor;
+		}
+		return next != null && next.valid ? next : null;
+	}
+
+	/**
+	 * Verkettet den Block mit dem Nachfolger, der an exitAddress beginnt.
+	 * @param exitAddress der IC nach dem Verlassen des Blocks
+	 * @param next der Nachfolger
+	 */
+	void link(int exitAddress, TranslatedBlock next) {
+		if (exitAddress == start + byteLength) {
+			fallthrough = next;
+		} else {
+			jumpTarget = exitAddress;
+			jumpSuccessor = next;
+		}
+	}
+
+	/**
+	 * Übersetzt den Basisblock ab der Startadresse aus dem Speicher.
+	 * Der Block endet nach einer Sprunginstruktion oder HLT, vor einem ungültigen
+	 * Opcode, am Ende des Programmbereichs oder nach MAX_BLOCK_INSTRUCTIONS.
+	 * @param retro24 das System, aus dessen Speicher gelesen wird
+	 * @param start die Startadresse
+	 * @return der Block oder null, falls an der Adresse keine gültige Instruktion steht
+	 */
+	static TranslatedBlock translate(Retro24 retro24, int start) {
+		int[] code = new int[MAX_BLOCK_INSTRUCTIONS];
+		int count = 0;
+		boolean readsMemory = false;
+		int address = start;
+		while (count < MAX_BLOCK_INSTRUCTIONS) {
+			byte opcode = retro24.readMemory(address);
+			int length = Instruction.getLength(opcode);
+			if (length == 0 || address + length - 1 > CODE_END) {
+				break;
+			}
+			int arg0 = length > 1 ? retro24.readMemory(address + 1) & 0xFF : 0;
+			int arg1 = length > 2 ? retro24.readMemory(address + 2) & 0xFF : 0;
+			code[count++] = (opcode & 0xFF) | arg0 << 8 | arg1 << 16 | (address - start) << 24;
+			readsMemory |= Instruction.readsMemory(opcode);
+			address += length;
+			if (Instruction.endsBlock(opcode)) {
+				break;
+			}
+		}
+		if (count == 0) {
+			return null;
+		}
+
+		int[] blockCode = new int[count];
+		System.arraycopy(code, 0, blockCode, 0, count);
+		return new TranslatedBlock(start, address - start, blockCode, readsMemory);
+	}
+}
@@ -0,0 +1,165 @@
+package core;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Taktgeber für die Emulation in Echtzeit: statt nach jeder Instruktion zu schlafen,
+ * werden die Instruktionen in Zeitabschnitten ausgeführt. Je Abschnitt liefert
+ * cyclesDue() die Anzahl der Zyklen (siehe Instruction.getCycles()), die seit dem
+ * Start bei der eingestellten Taktfrequenz fällig sind, danach wartet awaitNextSlice()
+ * einmal bis zum nächsten Abschnitt. Über den Bedarf hinaus ausgeführte Zyklen (eine
+ * Instruktion wird nie geteilt) werden mit executed() verbucht und beim nächsten
+ * Abschnitt abgezogen. Weil immer gegen den Startzeitpunkt einer monotonen
+ * Uhr (System.nanoTime()) gerechnet wird, summieren sich Ungenauigkeiten beim
+ * Schlafen nicht auf (kein Drift).
+ * Im Turbo Modus (Frequenz TURBO) läuft die CPU ungebremst, die Größe der Abschnitte
+ * wird dabei so angepasst, dass einer etwa TURBO_SLICE_NANOS dauert.
+ * Die Frequenz kann aus einem anderen Thread geändert werden (z.B. aus der GUI).
+ * @author Eric Schneider
+ */
+public class ClockScheduler {
+
+	/**
+	 * Frequenz für den Turbo Modus (ungebremst)
+	 */
+	public static final int TURBO = 0;
+
+	// Dauer eines Zeitabschnitts
+	public static final long SLICE_NANOS = 1_000_000;
+	// Angestrebte Dauer eines Abschnitts im Turbo Modus (View / IO werden je Abschnitt aktualisiert)
+	public static final long TURBO_SLICE_NANOS = 10_000_000;
+	// Größerer Rückstand (z.B. nach Pause oder GC) wird nicht aufgeholt, sondern verworfen
+	public static final long MAX_LAG_NANOS = 100_000_000;
+
+	private static final long MIN_TURBO_BATCH = 1 << 10;
+	private static final long MAX_TURBO_BATCH = 1 << 26;
+
+	private final LongSupplier clock;
+
+	private int frequency;
+	// Bezugspunkt: Zeitpunkt und seitdem ausgeführte Zyklen
+	private long anchorNanos;
+	private long executedSinceAnchor;
+
+	// Turbo Modus: Größe (in Zyklen) und Startzeitpunkt des aktuellen Abschnitts
+	private long turboBatch = MIN_TURBO_BATCH;
+	private long turboSliceStart;
+
+	/**
+	 * @param frequency die Taktfrequenz in Hz (Zyklen je Sekunde) oder TURBO
+	 */
+	public ClockScheduler(int frequency) {
+		this(frequency, System::nanoTime);
+	}
+
+	/**
+	 * @param frequency die Taktfrequenz in Hz (Zyklen je Sekunde) oder TURBO
+	 * @param clock monotone Uhr in Nanosekunden (z.B. für Tests)
+	 */
+	public ClockScheduler(int frequency, LongSupplier clock) {
+		this.clock = clock;
+		setFrequency(frequency);
+	}
+
+	/**
+	 * Setzt die Frequenz, sie gilt ab sofort (neuer Bezugspunkt).
+	 * @param frequency die Taktfrequenz in Hz (Zyklen je Sekunde) oder TURBO
+	 */
+	public synchronized void setFrequency(int frequency) {
+		if (frequency < 0) {
+			throw new IllegalArgumentException("Frequenz darf nicht negativ sein: " + frequency);
+		}
+		this.frequency = frequency;
+		resynchronize();
+	}
+
+	public synchronized int getFrequency() {
+		return frequency;
+	}
+
+	public synchronized boolean isTurbo() {
+		return frequency == TURBO;
+	}
+
+	/**
+	 * Setzt den Bezugspunkt auf jetzt, z.B. nach einer Pause, damit die
+	 * verstrichene Zeit nicht nachgeholt wird.
+	 */
+	public synchronized void resynchronize() {
+		anchorNanos = clock.getAsLong();
+		executedSinceAnchor = 0;
+		turboSliceStart = anchorNanos;
+	}
+
+	/**
+	 * @return Anzahl der jetzt fälligen Zyklen (im Turbo Modus die Größe des
+	 * nächsten Abschnitts)
+	 */
+	public synchronized long cyclesDue() {
+		long now = clock.getAsLong();
+		if (isTurbo()) {
+			turboSliceStart = now;
+			return turboBatch;
+		}
+		// Rückstand gegenüber dem nächsten fälligen Zyklus
+		if (now - anchorNanos - nanosFor(executedSinceAnchor + 1) > MAX_LAG_NANOS) {
+			// Zu weit im Rückstand: nur MAX_LAG_NANOS aufholen, ab dann weiter im Takt
+			anchorNanos = now - MAX_LAG_NANOS - nanosFor(1);
+			executedSinceAnchor = 0;
+		}
+		long elapsed = now - anchorNanos;
+		// Aufgeteilt, damit das Produkt auch bei hohen Frequenzen nicht überläuft
+		long due = elapsed / 1_000_000_000L * frequency + elapsed % 1_000_000_000L * frequency / 1_000_000_000L
+				- executedSinceAnchor;
+		return Math.max(0, due);
+	}
+
+	/**
+	 * Verbucht die im aktuellen Abschnitt ausgeführten Zyklen.
+	 * @param cycles Anzahl der ausgeführten Zyklen (auch mehr als fällig waren)
+	 */
+	public synchronized void executed(long cycles) {
+		if (!isTurbo()) {
+			executedSinceAnchor += cycles;
+			return;
+		}
+		// Abschnittsgröße an die gemessene Dauer anpassen
+		long elapsed = clock.getAsLong() - turboSliceStart;
+		if (cycles >= turboBatch && elapsed < TURBO_SLICE_NANOS / 2) {
+			turboBatch = Math.min(MAX_TURBO_BATCH, turboBatch * 2);
+		} else if (elapsed > TURBO_SLICE_NANOS * 2) {
+			turboBatch = Math.max(MIN_TURBO_BATCH, turboBatch / 2);
+		}
+	}
+
+	/**
+	 * Wartet bis zum nächsten Zeitabschnitt, mindestens bis der nächste Zyklus
+	 * fällig ist. Im Turbo Modus wird nicht gewartet.
+	 * @throws InterruptedException wenn der Thread beim Warten unterbrochen wird
+	 */
+	public void awaitNextSlice() throws InterruptedException {
+		long deadline;
+		synchronized (this) {
+			if (isTurbo()) {
+				return;
+			}
+			// Bei niedriger Frequenz bis zum nächsten fälligen Zyklus, sonst einen Abschnitt lang
+			deadline = Math.max(anchorNanos + nanosFor(executedSinceAnchor + 1), clock.getAsLong() + SLICE_NANOS);
+		}
+		long remaining;
+		while ((remaining = deadline - clock.getAsLong()) > 0) {
+			LockSupport.parkNanos(remaining);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * @return Zeitpunkt (relativ zum Bezugspunkt), zu dem die Anzahl an Zyklen ausgeführt ist
+	 */
+	private long nanosFor(long cycles) {
+		return cycles / frequency * 1_000_000_000L + cycles % frequency * 1_000_000_000L / frequency;
+	}
+}
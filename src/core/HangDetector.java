@@ -0,0 +1,165 @@
+package core;
+
+import java.util.Arrays;
+
+import core.CPU.CPU;
+
+/**
+ * Erkennt, dass ein Programm hängt: wiederholt sich der komplette Zustand des Systems
+ * (Register, tick / tock und Speicher) exakt, läuft es ohne Eingabe für immer im Kreis.
+ * Geprüft wird jeweils nach CHECK_INTERVAL Instruktionen. Die Wiederholung wird nach
+ * Brent gesucht: der Zustand an Prüfpunkt 1, 2, 4, 8, ... wird gemerkt und mit allen
+ * folgenden Prüfpunkten verglichen, so wird jeder Zyklus nach höchstens etwa doppelter
+ * Vorlauf- plus Zykluslänge gefunden. Der Speicher geht über einen inkrementellen Hash
+ * ein (bei jedem Schreibzugriff aktualisiert), erst bei gleichem Hash wird der Speicher
+ * mit der Kopie vom gemerkten Prüfpunkt exakt verglichen.
+ * Eine Änderung des Joystick Ports gilt als Eingabe und startet die Suche neu.
+ * @author Eric Schneider
+ */
+public class HangDetector implements MemoryWriteListener {
+
+	/**
+	 * Anzahl Instruktionen zwischen zwei Prüfpunkten
+	 */
+	public static final int CHECK_INTERVAL = 1024;
+
+	private final Retro24 retro24;
+
+	// Kopie des Speichers (für den alten Wert bei Schreibzugriffen) und deren Hash
+	private final byte[] shadow = new byte[0x10000];
+	private long memoryHash;
+
+	// Instruktionen seit dem letzten Prüfpunkt
+	private int sinceCheck;
+	// Brent: Prüfpunkte seit dem gemerkten Zustand und Abstand bis zum nächsten Merken
+	private long distance;
+	private long power;
+
+	// Gemerkter Zustand: Register, Speicherhash und Speicher
+	private boolean saved;
+	private long savedRegisters;
+	private long savedHash;
+	private final byte[] savedMemory = new byte[0x10000];
+
+	private boolean hung;
+
+	// Listener für Eingaben (gemerkt, um ihn wieder entfernen zu können)
+	private final Runnable inputListener = this::reset;
+
+	/**
+	 * @param retro24 das zu überwachende System
+	 */
+	public HangDetector(Retro24 retro24) {
+		this.retro24 = retro24;
+	}
+
+	/**
+	 * Registriert den Detektor am (ggf. neu initialisierten) System und liest den
+	 * Speicher ein.
+	 */
+	void attach() {
+		retro24.addMemoryWriteListener(this);
+		// Eingabe: der bisherige Verlauf sagt nichts mehr über den weiteren aus
+		retro24.getIOChip().addInputListener(inputListener);
+		retro24.getMemoryView(Retro24.MEMORY_START, Retro24.MEMORY_END).get(0, shadow);
+		memoryHash = 0;
+		for (int address = 0; address < shadow.length; address++) {
+			memoryHash += mix(address, shadow[address]);
+		}
+		reset();
+	}
+
+	/**
+	 * Meldet den Detektor wieder vom System ab (Schreibzugriffe und Eingaben).
+	 */
+	void detach() {
+		retro24.removeMemoryWriteListener(this);
+		retro24.getIOChip().removeInputListener(inputListener);
+	}
+
+	/**
+	 * Beginnt die Suche nach einer Wiederholung neu, z.B. nach einer Eingabe oder
+	 * einem neu geladenen Programm.
+	 */
+	public void reset() {
+		sinceCheck = 0;
+		distance = 0;
+		power = 1;
+		saved = false;
+		hung = false;
+	}
+
+	@Override
+	public void memoryWritten(int address) {
+		byte value = retro24.readMemory(address);
+		byte old = shadow[address];
+		if (value == old) {
+			return;
+		}
+		shadow[address] = value;
+		memoryHash += mix(address, value) - mix(address, old);
+	}
+
+	/**
+	 * @return Anzahl Instruktionen bis zum nächsten Prüfpunkt
+	 */
+	int instructionsUntilCheck() {
+		return CHECK_INTERVAL - sinceCheck;
+	}
+
+	/**
+	 * Verbucht ausgeführte Instruktionen (höchstens bis zum nächsten Prüfpunkt) und
+	 * vergleicht am Prüfpunkt den Zustand mit dem gemerkten.
+	 * @param instructions Anzahl der ausgeführten Instruktionen
+	 */
+	void executed(int instructions) {
+		sinceCheck += instructions;
+		if (sinceCheck < CHECK_INTERVAL) {
+			return;
+		}
+		sinceCheck = 0;
+		CPU cpu = retro24.getCPU();
+		if (cpu.isHalted()) {
+			return;
+		}
+		long registers = (cpu.getR0() & 0xFFL) | (cpu.getR1() & 0xFFL) << 8 | (cpu.getR2() & 0xFFL) << 16
+				| (cpu.getR3() & 0xFFL) << 24 | (cpu.getIC() & 0xFFFFL) << 32 | (cpu.getAR() & 0xFFFFL) << 48;
+		if (saved && registers == savedRegisters && memoryHash == savedHash && Arrays.equals(shadow, savedMemory)) {
+			// tick / tock liegen im Speicher und sind damit mit verglichen
+			hung = true;
+			return;
+		}
+		if (!saved || ++distance == power) {
+			savedRegisters = registers;
+			savedHash = memoryHash;
+			System.arraycopy(shadow, 0, savedMemory, 0, shadow.length);
+			saved = true;
+			distance = 0;
+			power *= 2;
+		}
+	}
+
+	/**
+	 * Meldet einen Hänger, der anders nachgewiesen wurde (z.B. eine Warteschleife ohne Eingabe).
+	 */
+	void markHung() {
+		hung = true;
+	}
+
+	/**
+	 * @return true, wenn sich seit dem letzten reset() ein Zustand exakt wiederholt hat
+	 */
+	public boolean isHung() {
+		return hung;
+	}
+
+	/**
+	 * Beitrag eines Bytes an einer Adresse zum Speicherhash (SplitMix64 Finalizer).
+	 */
+	private static long mix(int address, byte value) {
+		long z = ((long) address << 8 | (value & 0xFF)) + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
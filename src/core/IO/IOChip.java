@@ -1,7 +1,15 @@
 package core.IO;
 
+import java.util.Arrays;
+
 import core.Retro24;
 
+/**
+ * Virtueller IO Chip des Retro24 Systems (Joystick Port). Über den MemoryBus
+ * erfährt der Chip von jedem Schreibzugriff auf den Joystick Port und informiert
+ * bei einer Änderung die registrierten Listener (z.B. um Warteschleifen zu wecken).
+ * @author Eric Schneider
+ */
 public class IOChip {
 	public final static int JOYSTICK_PORT = 0x0020;
 	public final static byte JOYSTICK_UP = 0b00000001;
@@ -12,6 +20,10 @@ public class IOChip {
 	
 	private final Retro24 retro24;
 	
+	// Zuletzt geschriebener Wert des Joystick Ports und Listener für dessen Änderungen
+	private byte joystick;
+	private Runnable[] inputListeners = new Runnable[0];
+	
 	// Bit 0 ist 1 wenn „oben“, 
 	// Bit 1 ist 1 wenn „unten“, 
 	// Bit 2 ist 1 wenn „links“, 
@@ -20,9 +32,41 @@ public class IOChip {
 	
 	public IOChip(Retro24 retro24) {
 		this.retro24 = retro24;
+		this.joystick = retro24.readMemory(JOYSTICK_PORT);
+		retro24.getMemoryBus().map(JOYSTICK_PORT, JOYSTICK_PORT, (address, value) -> joystickWritten(value));
 	}
 	
 	public void writeJoystickMovement(byte movementByte) {
 		retro24.writeMemory(JOYSTICK_PORT, movementByte);
 	}
+	
+	/**
+	 * Registriert einen Listener, der bei jeder Änderung des Joystick Ports aufgerufen wird.
+	 * @param listener der Listener
+	 */
+	public void addInputListener(Runnable listener) {
+		Runnable[] listeners = Arrays.copyOf(inputListeners, inputListeners.length + 1);
+		listeners[inputListeners.length] = listener;
+		inputListeners = listeners;
+	}
+	
+	/**
+	 * Entfernt einen zuvor registrierten Listener.
+	 * @param listener der Listener
+	 */
+	public void removeInputListener(Runnable listener) {
+		inputListeners = Arrays.stream(inputListeners)
+				.filter(l -> l != listener)
+				.toArray(Runnable[]::new);
+	}
+	
+	private void joystickWritten(byte value) {
+		if (value == joystick) {
+			return;
+		}
+		joystick = value;
+		for (Runnable listener : inputListeners) {
+			listener.run();
+		}
+	}
 }
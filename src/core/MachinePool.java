@@ -0,0 +1,77 @@
+package core;
+
+import java.util.ArrayDeque;
+
+import core.CPU.EngineType;
+
+/**
+ * Pool wiederverwendbarer Retro24 Systeme für viele kurze Läufe (z.B. Batch Läufe
+ * oder Tests): statt je Lauf ein System zu erstellen und zu initialisieren, wird ein
+ * zurückgegebenes System mit reset() auf den Stand nach initialize() gebracht und
+ * beim nächsten acquire() wieder ausgegeben. Der Pool ist threadsicher, ein System
+ * gehört aber immer nur dem Thread, der es gerade ausgeliehen hat.
+ * @author Eric Schneider
+ */
+public class MachinePool {
+
+	private final EngineType engineType;
+	private final int maxIdle;
+	// Zurückgesetzte Systeme, die auf ihren nächsten Lauf warten
+	private final ArrayDeque<Retro24> idle = new ArrayDeque<>();
+
+	/**
+	 * @param engineType der ExecutionEngine der Systeme
+	 * @param maxIdle wie viele freie Systeme höchstens vorgehalten werden
+	 */
+	public MachinePool(EngineType engineType, int maxIdle) {
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException("Anzahl freier Systeme darf nicht negativ sein: " + maxIdle);
+		}
+		this.engineType = engineType;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * @return ein initialisiertes System (aus dem Pool oder neu erstellt)
+	 */
+	public Retro24 acquire() {
+		Retro24 machine;
+		synchronized (idle) {
+			machine = idle.poll();
+		}
+		if (machine == null) {
+			machine = new Retro24(engineType);
+			machine.initialize();
+		}
+		return machine;
+	}
+
+	/**
+	 * Gibt ein System zurück, es wird zurückgesetzt und (sofern der Pool nicht voll ist)
+	 * wiederverwendet. Danach darf es nicht mehr verwendet werden. Selbst registrierte
+	 * Listener müssen vorher entfernt werden, sie bleiben beim Zurücksetzen erhalten.
+	 * @param machine ein mit acquire() ausgeliehenes System
+	 */
+	public void release(Retro24 machine) {
+		synchronized (idle) {
+			if (idle.size() >= maxIdle) {
+				return;
+			}
+		}
+		machine.reset();
+		synchronized (idle) {
+			if (idle.size() < maxIdle) {
+				idle.push(machine);
+			}
+		}
+	}
+
+	/**
+	 * @return Anzahl der freien Systeme im Pool
+	 */
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+}
@@ -0,0 +1,393 @@
+package core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Speicher des Retro24 (64 KB) mit einer Seitentabelle über die 256 Seiten zu je
+ * 256 Byte. Seiten ohne Eintrag sind reiner RAM: Lesen und Schreiben greifen ohne
+ * weitere Prüfung direkt auf das Array zu (Adressen werden auf 16 Bit gekürzt).
+ * Für Seiten mit Geräten (IO Page, Videospeicher) enthält die Tabelle je Adresse
+ * den zuständigen PageHandler, der nach dem Schreiben aufgerufen wird. Gelesen wird
+ * immer direkt aus dem Speicher, Geräte legen ihren Zustand dort ab.
+ * Die Daten liegen je Seite in einem Array: anfangs und nach share() zeigen Seiten
+ * auf ein MemoryImage, das sich beliebig viele Instanzen teilen (z.B. dasselbe
+ * Programm), erst beim ersten Schreibzugriff wird die Seite kopiert (Copy-on-Write).
+ * Der Speicherbedarf einer Instanz wächst so nur mit den beschriebenen Seiten.
+ * Bereiche, die ständig beschrieben und am Stück gelesen werden (IO Page,
+ * Videospeicher), werden mit allocate() als zusammenhängender privater Block angelegt.
+ * Für Bereiche (Videospeicher, Dumps, Speicherabbilder) gibt es Views ohne Kopie
+ * (ByteBuffer auf demselben Array) und Kopien am Stück.
+ * Geänderte Seiten werden mitgeschrieben: jeder Schreibzugriff setzt das Bit seiner
+ * Seite, nextGeneration() schließt eine Generation ab und merkt sie je beschriebener
+ * Seite. Ein Verbraucher (Bildschirm, Dumps, Snapshots) merkt sich die Generation
+ * seines letzten Abgleichs und holt mit dirtyPagesSince() nur die seitdem
+ * geänderten Seiten, statt ganze Bereiche zu kopieren und zu vergleichen.
+ * @author Eric Schneider
+ */
+public class MemoryBus {
+
+	public static final int PAGE_SIZE = 0x100;
+	public static final int PAGE_COUNT = 0x100;
+
+	// Je Seite das Array mit ihren Daten und die Adresse, die dessen Index 0 entspricht
+	private final byte[][] data = new byte[PAGE_COUNT][];
+	private final int[] base = new int[PAGE_COUNT];
+	// Seiten, die noch auf ein geteiltes Abbild zeigen bzw. in einem Block aus allocate() liegen
+	private final boolean[] shared = new boolean[PAGE_COUNT];
+	private final boolean[] allocated = new boolean[PAGE_COUNT];
+
+	// Seitentabelle: je Seite Handler je Adresse (null = reiner RAM ohne Handler)
+	private final PageHandler[][] pages = new PageHandler[PAGE_COUNT][];
+
+	// In der aktuellen Generation beschriebene Seiten (ein Bit je Seite)
+	private final long[] dirty = new long[PAGE_COUNT / Long.SIZE];
+	// Je Seite die letzte abgeschlossene Generation mit Schreibzugriff (0 = seit Erstellung)
+	private final long[] pageGenerations = new long[PAGE_COUNT];
+	private long generation = 1;
+
+	/**
+	 * @param image das Abbild, auf das zu Beginn alle Seiten zeigen
+	 */
+	public MemoryBus(MemoryImage image) {
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			data[page] = image.data;
+			shared[page] = true;
+		}
+	}
+
+	/**
+	 * @param address die Adresse (wird auf 16 Bit gekürzt)
+	 * @return das Byte an der Adresse
+	 */
+	public byte read(int address) {
+		address &= 0xFFFF;
+		int page = address >>> 8;
+		return data[page][address - base[page]];
+	}
+
+	/**
+	 * Schreibt ein Byte und ruft ggf. den Handler der Adresse auf.
+	 * @param address die Adresse (wird auf 16 Bit gekürzt)
+	 * @param value der Wert
+	 */
+	public void write(int address, byte value) {
+		address &= 0xFFFF;
+		int page = address >>> 8;
+		if (shared[page]) {
+			copyOnWrite(page, true);
+		}
+		data[page][address - base[page]] = value;
+		// Shift nutzt nur die unteren 6 Bit: Seite modulo 64
+		dirty[address >>> 14] |= 1L << (address >>> 8);
+		PageHandler[] handlers = pages[page];
+		if (handlers != null) {
+			PageHandler handler = handlers[address & 0xFF];
+			if (handler != null) {
+				handler.written(address, value);
+			}
+		}
+	}
+
+	/**
+	 * @param from erste Adresse
+	 * @param to letzte Adresse (inklusive)
+	 * @return Kopie des Speicherbereichs
+	 */
+	public byte[] read(int from, int to) {
+		byte[] result = new byte[to - from + 1];
+		for (int address = from; address <= to; ) {
+			int page = address >>> 8;
+			int length = Math.min(to + 1, (page + 1) << 8) - address;
+			System.arraycopy(data[page], address - base[page], result, address - from, length);
+			address += length;
+		}
+		return result;
+	}
+
+	/**
+	 * Liefert eine schreibgeschützte View auf einen Speicherbereich. Liegt er in einem
+	 * Block aus allocate() (z.B. Videospeicher), zeigt die View auch spätere
+	 * Schreibzugriffe. Sonst ist sie eine Momentaufnahme: ohne Kopie, solange alle
+	 * Seiten noch auf dasselbe Abbild zeigen, ansonsten als Kopie.
+	 * @param from erste Adresse
+	 * @param to letzte Adresse (inklusive)
+	 * @return die View, Position 0 entspricht from
+	 */
+	public ByteBuffer view(int from, int to) {
+		int first = from >>> 8;
+		for (int page = first + 1; page <= to >>> 8; page++) {
+			if (data[page] != data[first] || base[page] != base[first]) {
+				return ByteBuffer.wrap(read(from, to)).asReadOnlyBuffer();
+			}
+		}
+		return ByteBuffer.wrap(data[first]).slice(from - base[first], to - from + 1).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Schreibt Daten am Stück ab einer Adresse und ruft danach die Handler der
+	 * beschriebenen Adressen auf.
+	 * @param from erste Adresse
+	 * @param data die Daten (von Position bis Limit, die Position wird nicht verändert)
+	 */
+	public void write(int from, ByteBuffer data) {
+		int length = data.remaining();
+		for (int address = from; address < from + length; ) {
+			int page = address >>> 8;
+			int chunk = Math.min(from + length, (page + 1) << 8) - address;
+			if (shared[page]) {
+				// Ganz überschriebene Seiten müssen nicht kopiert werden
+				copyOnWrite(page, chunk < PAGE_SIZE);
+			}
+			data.get(data.position() + address - from, this.data[page], address - base[page], chunk);
+			address += chunk;
+		}
+		markDirty(from, from + length - 1);
+		for (int page = from >>> 8; page <= (from + length - 1) >>> 8; page++) {
+			if (pages[page] == null) {
+				continue;
+			}
+			for (int address = Math.max(from, page << 8); address <= Math.min(from + length - 1, (page << 8) | 0xFF); address++) {
+				PageHandler handler = pages[page][address & 0xFF];
+				if (handler != null) {
+					handler.written(address, read(address));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Füllt einen Speicherbereich ohne Aufruf der Handler (z.B. beim Initialisieren).
+	 * @param from erste Adresse
+	 * @param to letzte Adresse (inklusive)
+	 * @param value der Wert
+	 */
+	public void fill(int from, int to, byte value) {
+		for (int address = from; address <= to; ) {
+			int page = address >>> 8;
+			int length = Math.min(to + 1, (page + 1) << 8) - address;
+			if (shared[page]) {
+				copyOnWrite(page, length < PAGE_SIZE);
+			}
+			Arrays.fill(data[page], address - base[page], address - base[page] + length, value);
+			address += length;
+		}
+		markDirty(from, to);
+	}
+
+	/**
+	 * Legt für einen Bereich ganzer Seiten einen zusammenhängenden privaten Block an
+	 * (Inhalt bleibt erhalten), z.B. für Geräte, deren Speicher ständig beschrieben
+	 * oder als View gelesen wird.
+	 * @param from erste Adresse (Anfang einer Seite)
+	 * @param to letzte Adresse (Ende einer Seite)
+	 */
+	public void allocate(int from, int to) {
+		checkPages(from, to);
+		byte[] block = read(from, to);
+		for (int page = from >>> 8; page <= to >>> 8; page++) {
+			data[page] = block;
+			base[page] = from;
+			shared[page] = false;
+			allocated[page] = true;
+		}
+	}
+
+	/**
+	 * Lässt einen Bereich ganzer Seiten auf ein geteiltes Abbild zeigen, private Kopien
+	 * dieser Seiten werden verworfen (Blöcke aus allocate() werden überschrieben).
+	 * Die Handler der geänderten Adressen werden danach aufgerufen.
+	 * @param from erste Adresse (Anfang einer Seite)
+	 * @param to letzte Adresse (Ende einer Seite)
+	 * @param image das Abbild
+	 */
+	public void share(int from, int to, MemoryImage image) {
+		share(from, to, image, address -> {});
+	}
+
+	/**
+	 * Wie share(from, to, image), meldet zusätzlich jede Adresse, deren Inhalt sich
+	 * dabei ändert (z.B. für MemoryWriteListener), jeweils nachdem ihre Seite ersetzt
+	 * ist, gelesen wird also schon der neue Wert. Seiten, die schon auf das Abbild
+	 * zeigen, kosten nichts, Blöcke aus allocate() werden am Stück kopiert.
+	 * @param from erste Adresse (Anfang einer Seite)
+	 * @param to letzte Adresse (Ende einer Seite)
+	 * @param image das Abbild
+	 * @param changed erhält jede geänderte Adresse
+	 */
+	public void share(int from, int to, MemoryImage image, IntConsumer changed) {
+		checkPages(from, to);
+		// Geänderte Adressen einer Seite, gemeldet erst nachdem die Seite ersetzt ist
+		int[] changedAddresses = new int[PAGE_SIZE];
+		for (int page = from >>> 8; page <= to >>> 8; page++) {
+			if (shared[page] && data[page] == image.data) {
+				continue;
+			}
+			int start = page << 8;
+			byte[] old = data[page];
+			int oldStart = start - base[page];
+			int changedCount = 0;
+			// Abweichende Bytes suchen (Arrays.mismatch vergleicht vektorisiert)
+			for (int offset = 0; offset < PAGE_SIZE; offset++) {
+				int mismatch = Arrays.mismatch(old, oldStart + offset, oldStart + PAGE_SIZE, image.data, start + offset, start + PAGE_SIZE);
+				if (mismatch < 0) {
+					break;
+				}
+				offset += mismatch;
+				changedAddresses[changedCount++] = start + offset;
+			}
+			if (allocated[page]) {
+				System.arraycopy(image.data, start, data[page], start - base[page], PAGE_SIZE);
+			} else {
+				data[page] = image.data;
+				base[page] = 0;
+				shared[page] = true;
+			}
+			if (changedCount > 0) {
+				markDirty(start, start + PAGE_SIZE - 1);
+				if (pages[page] != null) {
+					for (int address = start; address < start + PAGE_SIZE; address++) {
+						PageHandler handler = pages[page][address & 0xFF];
+						if (handler != null) {
+							handler.written(address, image.data[address]);
+						}
+					}
+				}
+				for (int i = 0; i < changedCount; i++) {
+					changed.accept(changedAddresses[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param from erste Adresse
+	 * @param to letzte Adresse (inklusive)
+	 * @param image das Abbild
+	 * @return true, wenn alle Seiten des Bereichs unverändert auf das Abbild zeigen
+	 */
+	public boolean isShared(int from, int to, MemoryImage image) {
+		for (int page = from >>> 8; page <= to >>> 8; page++) {
+			if (!shared[page] || data[page] != image.data) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Anzahl der Seiten mit eigenem Speicher (beschrieben oder aus allocate())
+	 */
+	public int getPrivatePageCount() {
+		int count = 0;
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			if (!shared[page]) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return die aktuelle Generation (ihre Schreibzugriffe gelten als Änderung seit ihr)
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Schließt die aktuelle Generation ab und beginnt eine neue. Ein Verbraucher ruft
+	 * das nach dem Abgleich auf und fragt später mit der gelieferten Generation nach.
+	 * @return die neue Generation
+	 */
+	public long nextGeneration() {
+		for (int word = 0; word < dirty.length; word++) {
+			for (long bits = dirty[word]; bits != 0; bits &= bits - 1) {
+				pageGenerations[word * Long.SIZE + Long.numberOfTrailingZeros(bits)] = generation;
+			}
+			dirty[word] = 0;
+		}
+		return ++generation;
+	}
+
+	/**
+	 * @param since Generation des letzten Abgleichs (0 = alle Seiten)
+	 * @return die Seiten (Nummer = Adresse &gt;&gt;&gt; 8), die seit Beginn dieser
+	 * Generation beschrieben wurden
+	 */
+	public BitSet dirtyPagesSince(long since) {
+		BitSet result = BitSet.valueOf(dirty);
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			if (pageGenerations[page] >= since) {
+				result.set(page);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gibt einer geteilten Seite eigenen Speicher.
+	 * @param copy ob der bisherige Inhalt übernommen wird (nicht nötig, wenn die Seite
+	 * gleich ganz überschrieben wird)
+	 */
+	private void copyOnWrite(int page, boolean copy) {
+		int start = page << 8;
+		data[page] = copy ? Arrays.copyOfRange(data[page], start, start + PAGE_SIZE) : new byte[PAGE_SIZE];
+		base[page] = start;
+		shared[page] = false;
+	}
+
+	/**
+	 * @throws IllegalArgumentException wenn der Bereich nicht aus ganzen Seiten besteht
+	 */
+	private static void checkPages(int from, int to) {
+		if (from < 0 || to >= PAGE_SIZE * PAGE_COUNT || from > to || (from & 0xFF) != 0 || (to & 0xFF) != 0xFF) {
+			throw new IllegalArgumentException(String.format("Kein Bereich aus ganzen Seiten: 0x%04X-0x%04X", from, to));
+		}
+	}
+
+	/**
+	 * Markiert die Seiten eines Adressbereichs als beschrieben.
+	 */
+	private void markDirty(int from, int to) {
+		for (int page = from >>> 8; page <= to >>> 8; page++) {
+			dirty[page >>> 6] |= 1L << page;
+		}
+	}
+
+	/**
+	 * Ordnet einem Adressbereich einen Handler zu, die betroffenen Seiten verlassen
+	 * damit den schnellen Pfad.
+	 * @param from erste Adresse
+	 * @param to letzte Adresse (inklusive)
+	 * @param handler der Handler
+	 * @throws IllegalStateException wenn eine der Adressen bereits einem Handler zugeordnet ist
+	 */
+	public void map(int from, int to, PageHandler handler) {
+		if (from < 0 || to >= PAGE_SIZE * PAGE_COUNT || from > to) {
+			throw new IllegalArgumentException(String.format("Ungültiger Adressbereich: 0x%04X-0x%04X", from, to));
+		}
+		for (int address = from; address <= to; address++) {
+			PageHandler[] page = pages[address >>> 8];
+			if (page != null && page[address & 0xFF] != null) {
+				throw new IllegalStateException(String.format("Adresse 0x%04X ist bereits zugeordnet", address));
+			}
+		}
+		for (int address = from; address <= to; address++) {
+			if (pages[address >>> 8] == null) {
+				pages[address >>> 8] = new PageHandler[PAGE_SIZE];
+			}
+			pages[address >>> 8][address & 0xFF] = handler;
+		}
+	}
+
+	/**
+	 * @param page Nummer der Seite (Adresse &gt;&gt;&gt; 8)
+	 * @return true, wenn die Seite reiner RAM ohne Handler ist
+	 */
+	public boolean isPlainRam(int page) {
+		return pages[page] == null;
+	}
+}
@@ -0,0 +1,111 @@
+package core;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unveränderliches Abbild des kompletten Speichers (64 KB), das sich beliebig viele
+ * MemoryBus Instanzen teilen (Copy-on-Write je Seite, siehe MemoryBus.share()).
+ * Abbilder mit Inhalt werden über of() zusammengelegt: laden viele Systeme dasselbe
+ * Programm, liegt es nur einmal im Speicher. Ein Abbild lebt, solange ein MemoryBus
+ * noch Seiten daraus verwendet.
+ * @author Eric Schneider
+ */
+public final class MemoryImage {
+
+	// Bereits erstellte Abbilder (Basis, Startadresse und Inhalt), schwach referenziert
+	private static final Map<Key, WeakReference<MemoryImage>> IMAGES = new HashMap<>();
+
+	// Wird nach dem Erstellen nie mehr verändert
+	final byte[] data;
+
+	private MemoryImage(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Erstellt ein Abbild, dessen Speicher in einem Bereich mit einem Wert gefüllt ist
+	 * (sonst 0x00). Solche Abbilder werden nicht zusammengelegt, sie sind für Konstanten gedacht.
+	 * @param from erste Adresse
+	 * @param to letzte Adresse (inklusive)
+	 * @param value der Wert
+	 * @return das Abbild
+	 */
+	public static MemoryImage filled(int from, int to, byte value) {
+		byte[] data = new byte[MemoryBus.PAGE_SIZE * MemoryBus.PAGE_COUNT];
+		Arrays.fill(data, from, to + 1, value);
+		return new MemoryImage(data);
+	}
+
+	/**
+	 * Erstellt ein Abbild des aktuellen Speichers, z.B. als Vorlage für MemoryBus.share().
+	 * Momentaufnahmen werden nicht zusammengelegt.
+	 * @param bus der Speicher
+	 * @return das Abbild
+	 */
+	public static MemoryImage snapshot(MemoryBus bus) {
+		return new MemoryImage(bus.read(0, MemoryBus.PAGE_SIZE * MemoryBus.PAGE_COUNT - 1));
+	}
+
+	/**
+	 * Liefert das Abbild einer Basis mit einem ab einer Adresse eingespielten Inhalt
+	 * (z.B. Programm). Gibt es dasselbe Abbild schon, wird es wiederverwendet.
+	 * @param base das Abbild, auf dem der Inhalt liegt
+	 * @param start Adresse, ab der der Inhalt liegt
+	 * @param content der Inhalt (wird kopiert)
+	 * @return das (geteilte) Abbild
+	 * @throws IllegalArgumentException wenn der Inhalt über das Speicherende hinausgeht
+	 */
+	public static synchronized MemoryImage of(MemoryImage base, int start, byte[] content) {
+		if (start < 0 || start + content.length > base.data.length) {
+			throw new IllegalArgumentException(String.format("Inhalt passt nicht ab 0x%04X: %d Byte", start, content.length));
+		}
+		Key key = new Key(base, start, content);
+		WeakReference<MemoryImage> reference = IMAGES.get(key);
+		MemoryImage image = reference == null ? null : reference.get();
+		if (image != null) {
+			return image;
+		}
+		// Nicht mehr verwendete Abbilder austragen
+		IMAGES.values().removeIf(existing -> existing.get() == null);
+
+		byte[] data = base.data.clone();
+		System.arraycopy(content, 0, data, start, content.length);
+		image = new MemoryImage(data);
+		IMAGES.put(new Key(base, start, content.clone()), new WeakReference<>(image));
+		return image;
+	}
+
+	/**
+	 * Schlüssel eines Abbilds: Basis (Identität), Startadresse und Inhalt
+	 */
+	private static final class Key {
+		private final MemoryImage base;
+		private final int start;
+		private final byte[] content;
+		private final int hash;
+
+		Key(MemoryImage base, int start, byte[] content) {
+			this.base = base;
+			this.start = start;
+			this.content = content;
+			this.hash = (System.identityHashCode(base) * 31 + start) * 31 + Arrays.hashCode(content);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return base == key.base && start == key.start && Arrays.equals(content, key.content);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
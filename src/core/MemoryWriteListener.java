@@ -0,0 +1,9 @@
+package core;
+
+/** 
+ * Funktionales Interface für Komponenten, die über Schreibzugriffe auf den
+ * Speicher des Retro24 informiert werden wollen (z.B. Caches für Programmcode).
+ */
+public interface MemoryWriteListener {
+	void memoryWritten(int address);
+}
@@ -0,0 +1,11 @@
+package core;
+
+/**
+ * Funktionales Interface für Geräte, die über den MemoryBus auf Schreibzugriffe an
+ * ihren Adressen reagieren (z.B. Update Flag, Joystick Port). Der Wert steht beim
+ * Aufruf bereits im Speicher.
+ * @author Eric Schneider
+ */
+public interface PageHandler {
+	void written(int address, byte value);
+}
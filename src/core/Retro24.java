@@ -4,9 +4,21 @@ import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 
 import core.CPU.CPU;
+import core.CPU.ControlFlowGraph;
+import core.CPU.EngineType;
+import core.CPU.ExecutionEngine;
+import core.CPU.IdleLoopDetector;
+import core.CPU.Instruction;
+import core.RunResult.StopReason;
 import core.IO.IOChip;
 import core.graphics.GraphicChip;
 
@@ -19,28 +31,73 @@ public class Retro24 {
 	public static final int MEMORY_START = 0x0000;
 	public static final int MEMORY_END = 0xFFFF;
 	public static final int PROGRAMM_MEMORYSTART = 0x0100;
+	public static final int PROGRAMM_MEMORYEND = 0xDFFF;
 	public static final int TICK_ADDRESS = 0x0010;
 	public static final int TOCK_ADDRESS = 0x0011;
 	public static final String SUPPORTED_FILE_EXTENSION = ".bin";
 
-	private byte[] memory;
+	// Speicher nach initialize(): IO Page und Videospeicher 0x00, Programmspeicher 0xFF
+	// (von allen Instanzen geteilt, siehe MemoryBus)
+	private static final MemoryImage BLANK_IMAGE = MemoryImage.filled(PROGRAMM_MEMORYSTART, PROGRAMM_MEMORYEND, (byte) 0xFF);
+
+	/**
+	 * Vorlage für reset(): der Speicher direkt nach initialize() (inkl. Startbildschirm),
+	 * wird beim ersten reset() einmalig erstellt
+	 */
+	private static final class Template {
+		static final MemoryImage IMAGE = create();
+
+		private static MemoryImage create() {
+			Retro24 fresh = new Retro24();
+			fresh.initialize();
+			return MemoryImage.snapshot(fresh.bus);
+		}
+	}
+
+	private MemoryBus bus;
 	private CPU cpu;
 	private GraphicChip graphicChip;
 	private IOChip ioChip;
+	private final EngineType engineType;
+	private ExecutionEngine executionEngine;
+	// Letzte Adresse des zuletzt geladenen Programms (-1 = kein Programm geladen) und
+	// dessen Kontrollfluss (null = noch nicht angefordert, siehe getControlFlowGraph())
+	private int programEnd = -1;
+	private ControlFlowGraph controlFlowGraph;
+	// Listener für Schreibzugriffe (Array statt Liste, da bei jedem Schreibzugriff iteriert wird)
+	private MemoryWriteListener[] writeListeners = new MemoryWriteListener[0];
+
+	// Überspringt Warteschleifen in run() / runCycles() (null = aus)
+	private IdleLoopDetector idleLoopDetector;
+	// Erkennt Programme, die hängen (null = aus)
+	private HangDetector hangDetector;
+	
+	/**
+	 * Erstellt ein Retro24 System mit dem Referenz-Interpreter
+	 */
+	public Retro24() {
+		this(EngineType.REFERENCE);
+	}
+	
+	/**
+	 * Erstellt ein Retro24 System mit dem übergebenen Interpreter
+	 * @param engineType der zu verwendende ExecutionEngine
+	 */
+	public Retro24(EngineType engineType) {
+		this.engineType = engineType;
+	}
 
 	/**
 	 * Initialisert das System und alle Komponenten
 	 */
 	public void initialize() {
-		memory = new byte[0x10000];
-		// IO-Page initialisieren:
-		for (int i = 0x0000; i <= 0x00FF; i++) {
-			memory[i] = 0x00;
-		}
-		// Programmspeicher initialisieren:
-		for (int i = 0x0100; i <= 0xDFFF; i++) {
-			memory[i] = (byte)0xFF;
-		}
+		writeListeners = new MemoryWriteListener[0];
+		programEnd = -1;
+		controlFlowGraph = null;
+		// Programmspeicher (0xFF) zeigt auf das geteilte Abbild, Seiten werden erst beim Schreiben kopiert
+		bus = new MemoryBus(BLANK_IMAGE);
+		// IO-Page (0x00) wird ständig beschrieben (tick / tock): eigener Block
+		bus.allocate(0x0000, 0x00FF);
 
 
 		cpu = new CPU(this);
@@ -50,36 +107,58 @@ public class Retro24 {
 		graphicChip.init();
 		
 		ioChip = new IOChip(this);
+		
+		executionEngine = engineType.create(this);
+		if (hangDetector != null) {
+			hangDetector.attach();
+		}
+	}
+
+	/**
+	 * Setzt ein initialisiertes System auf den Stand direkt nach initialize() zurück,
+	 * ohne Speicher, CPU, Chips und ExecutionEngine neu zu erstellen: der Speicher
+	 * wird aus einer vorberechneten Vorlage übernommen (geteilte Seiten, IO Page und
+	 * Videospeicher am Stück kopiert), Listener erfahren nur die geänderten Adressen.
+	 * Einstellungen (Warteschleifen, Hänger) und von außen registrierte Listener
+	 * bleiben erhalten.
+	 * @throws IllegalStateException wenn initialize() noch nicht aufgerufen wurde
+	 */
+	public void reset() {
+		if (bus == null) {
+			throw new IllegalStateException("System ist nicht initialisiert");
+		}
+		IntConsumer changed = this::notifyWriteListeners;
+		// Programmspeicher auf das leere Abbild, damit loadProgramm() das Programm wieder teilt
+		bus.share(MEMORY_START, PROGRAMM_MEMORYSTART - 1, Template.IMAGE, changed);
+		bus.share(PROGRAMM_MEMORYSTART, PROGRAMM_MEMORYEND, BLANK_IMAGE, changed);
+		bus.share(PROGRAMM_MEMORYEND + 1, MEMORY_END, Template.IMAGE, changed);
+		cpu.initCPU();
+		programEnd = -1;
+		controlFlowGraph = null;
+		if (hangDetector != null) {
+			hangDetector.reset();
+		}
 	}
 
     /**
      * Liest ein Byte aus dem Speicher an der gegebenen Adresse.
      * @overload Fuer addressen in short Form
-     * @param address Die Adresse, von der gelesen werden soll.
+     * @param address Die Adresse, von der gelesen werden soll (unsigned).
      * @return Das Byte an der angegebenen Speicheradresse.
-     * @throws IllegalArgumentException Wenn die Adresse außerhalb des Speicherbereichs liegt.
      */
     public byte readMemory(short address) {
-    	int uAddress = address & 0xFFFF;
-        if (uAddress < 0 || uAddress >= memory.length) {
-            throw new IllegalArgumentException("Adresse außerhalb des Speicherbereichs: " + uAddress);
-        }
-        return memory[uAddress];
+        return bus.read(address & 0xFFFF);
     }
     
     /**
-     * Liest ein Byte aus dem Speicher an der gegebenen Adresse.
+     * Liest ein Byte aus dem Speicher an der gegebenen Adresse (über den MemoryBus,
+     * ohne Bereichsprüfung).
      * @overload Fuer addressen in int Form
-     * @param address Die Adresse, von der gelesen werden soll.
+     * @param address Die Adresse, von der gelesen werden soll (wird auf 16 Bit gekürzt).
      * @return Das Byte an der angegebenen Speicheradresse.
-     * @throws IllegalArgumentException Wenn die Adresse außerhalb des Speicherbereichs liegt.
      */
     public byte readMemory(int address) {
-        if (address < 0 || address >= memory.length) {
-            throw new IllegalArgumentException("Adresse außerhalb des Speicherbereichs: " + address);
-        }
-        int uAddress = address & 0xFFFF; // Bitmaskierung für Konsistenz
-        return memory[uAddress];
+        return bus.read(address);
     }
     
     /**
@@ -92,18 +171,17 @@ public class Retro24 {
      */
     public byte[] readMemory(int from, int to) {
         // Prüfen, ob die Adressen im gültigen Bereich liegen
-        if (from < 0 || from >= memory.length) {
+        if (from < MEMORY_START || from > MEMORY_END) {
             throw new IllegalArgumentException("Startadresse außerhalb des Speicherbereichs: " + from);
         }
-        if (to < 0 || to >= memory.length) {
+        if (to < MEMORY_START || to > MEMORY_END) {
             throw new IllegalArgumentException("Endadresse außerhalb des Speicherbereichs: " + to);
         }
         if (from > to) {
             throw new IllegalArgumentException("Startadresse darf nicht größer als Endadresse sein: from=" + from + ", to=" + to);
         }
 
-        // Arrays.copyOfRange erfordert eine exklusive Obergrenze
-        return Arrays.copyOfRange(memory, from, to + 1);
+        return bus.read(from, to);
     }
 
     
@@ -117,10 +195,10 @@ public class Retro24 {
      */
     public void writeMemory(int from, int to, byte[] data) {
         // Prüfen, ob die Adressen im gültigen Bereich liegen
-        if (from < 0 || from >= memory.length) {
+        if (from < MEMORY_START || from > MEMORY_END) {
             throw new IllegalArgumentException("Startadresse außerhalb des Speicherbereichs: " + from);
         }
-        if (to < 0 || to >= memory.length) {
+        if (to < MEMORY_START || to > MEMORY_END) {
             throw new IllegalArgumentException("Endadresse außerhalb des Speicherbereichs: " + to);
         }
         if (from > to) {
@@ -133,39 +211,66 @@ public class Retro24 {
             throw new IllegalArgumentException("Datenlänge stimmt nicht mit Adressbereich überein: erwartet " + length + ", erhalten " + data.length);
         }
 
-        // Daten in den Speicher schreiben
-        System.arraycopy(data, 0, memory, from, length);
+        // Daten am Stück in den Speicher schreiben
+        bus.write(from, ByteBuffer.wrap(data));
+        for (int address = from; address <= to; address++) {
+        	notifyWriteListeners(address);
+        }
     }
 
 
     /**
      * Schreibt ein Byte in den Speicher an die gegebene Adresse.
      * @overload Fuer addressen in short Form
-     * @param address Die Adresse, an die geschrieben werden soll.
+     * @param address Die Adresse, an die geschrieben werden soll (unsigned).
      * @param value Das Byte, das gespeichert werden soll.
-     * @throws IllegalArgumentException Wenn die Adresse außerhalb des Speicherbereichs liegt.
      */
     public void writeMemory(short address, byte value) {
-    	int uAddress = address & 0xFFFF;
-        if (uAddress < 0 || uAddress >= memory.length) {
-            throw new IllegalArgumentException("Adresse außerhalb des Speicherbereichs: " + uAddress);
-        }
-        memory[uAddress] = value;
+        writeMemory(address & 0xFFFF, value);
     }
 
     /**
-     * Schreibt ein Byte in den Speicher an die gegebene Adresse.
+     * Schreibt ein Byte in den Speicher an die gegebene Adresse (über den MemoryBus,
+     * ohne Bereichsprüfung, Geräte werden über ihre PageHandler informiert).
      * @overload Fuer addressen in int Form
-     * @param address Die Adresse, an die geschrieben werden soll.
+     * @param address Die Adresse, an die geschrieben werden soll (wird auf 16 Bit gekürzt).
      * @param value Das Byte, das gespeichert werden soll.
-     * @throws IllegalArgumentException Wenn die Adresse außerhalb des Speicherbereichs liegt.
      */
     public void writeMemory(int address, byte value) {
     	address = address & 0xFFFF;
-        if (address < 0 || address >= memory.length) {
-            throw new IllegalArgumentException("Adresse außerhalb des Speicherbereichs: " + address);
-        }
-        memory[address] = value;
+        bus.write(address, value);
+        notifyWriteListeners(address);
+    }
+    
+    /**
+     * Informiert alle registrierten MemoryWriteListener über einen Schreibzugriff.
+     * @param address die (unsigned) Adresse an die geschrieben wurde
+     */
+    private void notifyWriteListeners(int address) {
+    	for (MemoryWriteListener listener : writeListeners) {
+    		listener.memoryWritten(address);
+    	}
+    }
+    
+    /**
+     * Registriert einen Listener, der bei jedem Schreibzugriff auf den Speicher
+     * informiert wird. Beim erneuten initialize() werden alle Listener entfernt.
+     * @param listener der Listener
+     */
+    public void addMemoryWriteListener(MemoryWriteListener listener) {
+    	MemoryWriteListener[] listeners = Arrays.copyOf(writeListeners, writeListeners.length + 1);
+    	listeners[writeListeners.length] = listener;
+    	writeListeners = listeners;
+    }
+    
+    /**
+     * Entfernt einen zuvor registrierten MemoryWriteListener.
+     * @param listener der Listener
+     */
+    public void removeMemoryWriteListener(MemoryWriteListener listener) {
+    	writeListeners = Arrays.stream(writeListeners)
+    			.filter(l -> l != listener)
+    			.toArray(MemoryWriteListener[]::new);
     }
 
     /**
@@ -196,17 +301,284 @@ public class Retro24 {
 
     /**
      * Lädt ein Programm aus einem Bytearray in den Speicher des Retro24,
-     * die erste Adresse ist hierbei 0x0100 (Programmstartadresse im Programmspeicher)
+     * die erste Adresse ist hierbei 0x0100 (Programmstartadresse im Programmspeicher).
+     * Anschließend kann der ExecutionEngine den erreichbaren Code vorab dekodieren
+     * (siehe getControlFlowGraph()).
      * @param path
      */
     public void loadProgramm(byte[] programm) {
-    	for (int i=0x0100, j=0; i<0x0100+programm.length; i++, j++) {
-        	writeMemory(i, programm[j]);
-        }
+    	int end = PROGRAMM_MEMORYSTART + programm.length - 1;
+    	if (end <= PROGRAMM_MEMORYEND && bus.isShared(PROGRAMM_MEMORYSTART, PROGRAMM_MEMORYEND, BLANK_IMAGE)) {
+    		// Unberührter Programmspeicher: alle Instanzen mit diesem Programm teilen sich ein Abbild
+    		bus.share(PROGRAMM_MEMORYSTART, PROGRAMM_MEMORYEND, MemoryImage.of(BLANK_IMAGE, PROGRAMM_MEMORYSTART, programm));
+    		for (int address = PROGRAMM_MEMORYSTART; address <= end; address++) {
+    			notifyWriteListeners(address);
+    		}
+    	} else {
+    		for (int i=0x0100, j=0; i<0x0100+programm.length; i++, j++) {
+    			writeMemory(i, programm[j]);
+    		}
+    	}
+    	programEnd = end;
+    	controlFlowGraph = null;
+    	executionEngine.programLoaded();
+    	if (hangDetector != null) {
+    		hangDetector.reset();
+    	}
     }
     
+    /**
+     * Führt die nächste Instruktion über den gewählten ExecutionEngine aus.
+     */
     public void runNextInstruction() {
-    	cpu.executeOpcode();
+    	execute(1);
+    }
+
+    /**
+     * Führt bis zu maxInstructions Instruktionen in einem Stück über den gewählten
+     * ExecutionEngine aus (Register bleiben dabei in der Engine, kein Overhead je Instruktion).
+     * @param maxInstructions maximale Anzahl auszuführender Instruktionen
+     * @return Anzahl ausgeführter Instruktionen und Grund für das Ende des Laufs
+     */
+    public RunResult run(int maxInstructions) {
+    	int executed = 0;
+    	boolean idle = false;
+    	if (idleLoopDetector != null && maxInstructions >= IdleLoopDetector.MIN_BUDGET) {
+    		executed = skipIdleLoop(maxInstructions, Long.MAX_VALUE);
+    		idle = idleLoopDetector.isIdle();
+    	}
+    	while (executed < maxInstructions && !cpu.isHalted() && !isHung()) {
+    		executed += execute(maxInstructions - executed);
+    	}
+    	return new RunResult(executed, stopReason(idle ? StopReason.IDLE : StopReason.BUDGET_EXHAUSTED));
+    }
+
+    /**
+     * Führt Instruktionen aus, bis mindestens maxCycles Zyklen (siehe Instruction.getCycles())
+     * verbraucht sind oder die CPU anhält. Weil eine Instruktion nicht geteilt wird, können
+     * es bis zu Instruction.getMaxCycles() - 1 Zyklen mehr werden (siehe CPU.getCycles()).
+     * @param maxCycles Anzahl der auszuführenden Zyklen
+     * @return Anzahl ausgeführter Instruktionen und Grund für das Ende des Laufs
+     */
+    public RunResult runCycles(long maxCycles) {
+    	long end = cpu.getCycles() + maxCycles;
+    	int executed = 0;
+    	boolean idle = false;
+    	if (idleLoopDetector != null && maxCycles >= IdleLoopDetector.MIN_BUDGET) {
+    		executed = skipIdleLoop(Integer.MAX_VALUE, maxCycles);
+    		idle = idleLoopDetector.isIdle();
+    	}
+    	long remaining;
+    	while ((remaining = end - cpu.getCycles()) > 0 && !cpu.isHalted() && !isHung()) {
+    		// So viele Instruktionen, wie auch bei den teuersten Instruktionen noch in den Rest passen
+    		long instructions = Math.max(1, remaining / Instruction.getMaxCycles());
+    		executed += execute((int) Math.min(Integer.MAX_VALUE - executed, instructions));
+    		if (executed == Integer.MAX_VALUE) {
+    			break;
+    		}
+    	}
+    	return new RunResult(executed, stopReason(idle ? StopReason.IDLE : StopReason.BUDGET_EXHAUSTED));
+    }
+
+    /**
+     * Führt Instruktionen über den ExecutionEngine aus, bei aktiver Erkennung von
+     * Hängern bis höchstens zum nächsten Prüfpunkt.
+     * @return Anzahl ausgeführter Instruktionen
+     */
+    private int execute(int maxInstructions) {
+    	if (hangDetector == null) {
+    		return executionEngine.run(maxInstructions);
+    	}
+    	int executed = executionEngine.run(Math.min(maxInstructions, hangDetector.instructionsUntilCheck()));
+    	hangDetector.executed(executed);
+    	return executed;
+    }
+
+    /**
+     * Überspringt eine Warteschleife (siehe IdleLoopDetector). Übersprungene Instruktionen
+     * liegen nicht auf den Prüfpunkten der Erkennung von Hängern, diese beginnt danach
+     * neu. Eine Schleife, die nur auf eine Eingabe wartet, wiederholt sich ohne Eingabe
+     * aber sicher: sie gilt als Hänger.
+     * @return Anzahl übersprungener Instruktionen
+     */
+    private int skipIdleLoop(int maxInstructions, long maxCycles) {
+    	if (isHung()) {
+    		return 0;
+    	}
+    	int skipped = idleLoopDetector.skip(maxInstructions, maxCycles);
+    	if (hangDetector != null && skipped > 0) {
+    		hangDetector.reset();
+    		if (idleLoopDetector.isIdle()) {
+    			hangDetector.markHung();
+    		}
+    	}
+    	return skipped;
+    }
+
+    private boolean isHung() {
+    	return hangDetector != null && hangDetector.isHung();
+    }
+
+    /**
+     * Schaltet die Erkennung von Hängern ein oder aus (siehe HangDetector). Wiederholt
+     * sich der Zustand des Systems ohne Eingabe exakt, enden run(), runCycles() und
+     * runUntil() vorzeitig mit StopReason.HUNG.
+     * @param enabled true zum Einschalten
+     */
+    public void setHangDetection(boolean enabled) {
+    	if (hangDetector != null) {
+    		if (bus != null) {
+    			hangDetector.detach();
+    		}
+    		hangDetector = null;
+    	}
+    	if (enabled) {
+    		hangDetector = new HangDetector(this);
+    		if (bus != null) {
+    			hangDetector.attach();
+    		}
+    	}
+    }
+
+    /**
+     * Schaltet das Überspringen von Warteschleifen in run() und runCycles() ein oder aus
+     * (siehe IdleLoopDetector). Der Zustand danach ist derselbe wie bei der Ausführung,
+     * endet ein Lauf in einer Schleife, die nur auf eine Eingabe wartet, ist der Grund
+     * StopReason.IDLE.
+     * @param enabled true zum Einschalten
+     */
+    public void setIdleLoopSkipping(boolean enabled) {
+    	idleLoopDetector = enabled ? new IdleLoopDetector(this) : null;
+    }
+
+    /**
+     * Führt Instruktionen aus, bis die Bedingung erfüllt ist, die CPU anhält oder
+     * budget Instruktionen ausgeführt wurden. Die Bedingung wird vor dem Lauf und
+     * nach jeder Instruktion geprüft.
+     * @param condition die Abbruchbedingung
+     * @param budget maximale Anzahl auszuführender Instruktionen
+     * @return Anzahl ausgeführter Instruktionen und Grund für das Ende des Laufs
+     */
+    public RunResult runUntil(Predicate<Retro24> condition, int budget) {
+    	return runUntil(condition, budget, 1);
+    }
+
+    /**
+     * Führt Instruktionen aus, bis die Bedingung erfüllt ist, die CPU anhält oder
+     * budget Instruktionen ausgeführt wurden. Die Bedingung wird vor dem Lauf und
+     * jeweils nach checkInterval Instruktionen geprüft: größere Intervalle sind
+     * schneller, der Lauf kann dann aber bis zu checkInterval - 1 Instruktionen
+     * nach Eintreten der Bedingung enden.
+     * @param condition die Abbruchbedingung
+     * @param budget maximale Anzahl auszuführender Instruktionen
+     * @param checkInterval Anzahl Instruktionen zwischen zwei Prüfungen (mindestens 1)
+     * @return Anzahl ausgeführter Instruktionen und Grund für das Ende des Laufs
+     */
+    public RunResult runUntil(Predicate<Retro24> condition, int budget, int checkInterval) {
+    	if (checkInterval < 1) {
+    		throw new IllegalArgumentException("Prüfintervall muss mindestens 1 sein: " + checkInterval);
+    	}
+    	int executed = 0;
+    	while (!cpu.isHalted() && !isHung()) {
+    		if (condition.test(this)) {
+    			return new RunResult(executed, StopReason.CONDITION_MET);
+    		}
+    		if (executed >= budget) {
+    			break;
+    		}
+    		executed += execute(Math.min(checkInterval, budget - executed));
+    	}
+    	return new RunResult(executed, stopReason(StopReason.BUDGET_EXHAUSTED));
+    }
+
+    /**
+     * @return HALTED bzw. FAULTED, falls die CPU angehalten ist, HUNG, falls das
+     * Programm hängt, sonst running
+     */
+    private StopReason stopReason(StopReason running) {
+    	if (cpu.isFaulted()) {
+    		return StopReason.FAULTED;
+    	}
+    	if (cpu.isHalted()) {
+    		return StopReason.HALTED;
+    	}
+    	return isHung() ? StopReason.HUNG : running;
+    }
+
+    /**
+     * Liefert eine schreibgeschützte View auf einen Speicherbereich (z.B. für
+     * Videospeicher, Dumps oder Vergleiche), siehe MemoryBus.view(): nur für Bereiche
+     * in einem eigenen Block (IO Page, Videospeicher) zeigt sie auch spätere
+     * Schreibzugriffe. Sonst ist sie eine Momentaufnahme, ohne Kopie solange die
+     * Seiten noch geteilt sind, ansonsten als Kopie. Sie sollte daher gleich verwendet
+     * und nicht für später aufgehoben werden.
+     * @param from Die Adresse, ab der die View beginnt (Position 0).
+     * @param to Die letzte Adresse der View (inklusive).
+     * @return die View
+     * @throws IllegalArgumentException Wenn die Adressen außerhalb des Speicherbereichs liegen.
+     */
+    public ByteBuffer getMemoryView(int from, int to) {
+    	if (from < MEMORY_START || to > MEMORY_END || from > to) {
+    		throw new IllegalArgumentException(String.format("Ungültiger Speicherbereich: 0x%04X-0x%04X", from, to));
+    	}
+    	return bus.view(from, to);
+    }
+
+    /**
+     * Speichert das komplette Speicherabbild (64 KB) in einer Datei.
+     * @param path die Datei (wird überschrieben)
+     * @throws IOException bei Fehlern beim Schreiben
+     */
+    public void saveMemoryImage(Path path) throws IOException {
+    	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+    			StandardOpenOption.TRUNCATE_EXISTING)) {
+    		ByteBuffer image = getMemoryView(MEMORY_START, MEMORY_END);
+    		while (image.hasRemaining()) {
+    			channel.write(image);
+    		}
+    	}
+    }
+
+    /**
+     * Lädt ein mit saveMemoryImage() gespeichertes Speicherabbild. Die Datei wird in
+     * den Speicher gemappt und am Stück kopiert, danach werden Geräte und Listener
+     * (z.B. Caches für Programmcode) wie bei Schreibzugriffen informiert.
+     * Die Register der CPU bleiben unverändert.
+     * @param path die Datei
+     * @throws IOException bei Fehlern beim Lesen oder falscher Dateigröße
+     */
+    public void loadMemoryImage(Path path) throws IOException {
+    	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+    		if (channel.size() != MEMORY_END + 1) {
+    			throw new IOException("Kein Speicherabbild (erwartet " + (MEMORY_END + 1) + " Byte): " + path);
+    		}
+    		bus.write(MEMORY_START, channel.map(FileChannel.MapMode.READ_ONLY, 0, MEMORY_END + 1));
+    	}
+    	for (int address = MEMORY_START; address <= MEMORY_END; address++) {
+    		notifyWriteListeners(address);
+    	}
+    }
+
+    /**
+     * @return der Speicher mit der Seitentabelle, über die Geräte ihre Adressen belegen
+     */
+    public MemoryBus getMemoryBus() {
+    	return bus;
+    }
+
+    /**
+     * Liefert den Kontrollfluss des zuletzt geladenen Programms. Er wird erst beim ersten
+     * Aufruf nach dem Laden aus dem Speicher rekonstruiert, Engines ohne Verwendung
+     * (z.B. SWITCH) zahlen dafür nichts. ExecutionEngines, die ihn verwenden, fordern
+     * ihn in programLoaded() an, er entspricht dann dem Programm beim Laden.
+     * @return Kontrollfluss (Blöcke, Sprungziele, Datenbereiche) des zuletzt geladenen
+     * Programms oder null, falls kein Programm geladen wurde
+     */
+    public ControlFlowGraph getControlFlowGraph() {
+    	if (controlFlowGraph == null && programEnd >= 0) {
+    		controlFlowGraph = ControlFlowGraph.analyze(this, PROGRAMM_MEMORYSTART, programEnd);
+    	}
+    	return controlFlowGraph;
     }
 
     /**
@@ -226,4 +598,15 @@ public class Retro24 {
     public IOChip getIOChip() {
     	return ioChip;
     }
+    
+    /**
+     * @return der ExecutionEngine (Interpreter) der Retro24 Instanz
+     */
+    public ExecutionEngine getExecutionEngine() {
+    	return executionEngine;
+    }
+    
+    public EngineType getEngineType() {
+    	return engineType;
+    }
 }
@@ -0,0 +1,67 @@
+package core;
+
+/**
+ * Ergebnis eines Laufs über Retro24.run() bzw. Retro24.runUntil():
+ * Anzahl ausgeführter Instruktionen und der Grund, warum der Lauf endete.
+ * @author Eric Schneider
+ */
+public final class RunResult {
+
+	/**
+	 * Grund für das Ende eines Laufs
+	 */
+	public enum StopReason {
+		// CPU hat HLT ausgeführt (oder war bereits angehalten)
+		HALTED,
+		// CPU ist wegen eines Fehlers angehalten (siehe CPU.getFaultCode())
+		FAULTED,
+		// Die Bedingung von runUntil() ist eingetreten
+		CONDITION_MET,
+		// Die maximale Anzahl an Instruktionen wurde ausgeführt
+		BUDGET_EXHAUSTED,
+		// Das Budget wurde ausgeführt, die CPU wartet in einer Schleife auf eine Eingabe
+		// (siehe Retro24.setIdleLoopSkipping())
+		IDLE,
+		// Der Zustand des Systems hat sich exakt wiederholt, das Programm endet ohne
+		// Eingabe nie (siehe Retro24.setHangDetection())
+		HUNG
+	}
+
+	private final int executed;
+	private final StopReason stopReason;
+
+	public RunResult(int executed, StopReason stopReason) {
+		this.executed = executed;
+		this.stopReason = stopReason;
+	}
+
+	/**
+	 * @return Anzahl der ausgeführten Instruktionen
+	 */
+	public int getExecuted() {
+		return executed;
+	}
+
+	public StopReason getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * @return true, wenn die CPU am Ende des Laufs angehalten ist (HLT oder Fehler)
+	 */
+	public boolean isHalted() {
+		return stopReason == StopReason.HALTED || stopReason == StopReason.FAULTED;
+	}
+
+	/**
+	 * @return true, wenn die CPU wegen eines Fehlers angehalten ist
+	 */
+	public boolean isFaulted() {
+		return stopReason == StopReason.FAULTED;
+	}
+
+	@Override
+	public String toString() {
+		return "RunResult[executed=" + executed + ", stopReason=" + stopReason + "]";
+	}
+}
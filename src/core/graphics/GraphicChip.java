@@ -2,6 +2,7 @@ package core.graphics;
 
 import static common.util.NumberUtil.*;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import core.Retro24;
@@ -26,8 +27,15 @@ public class GraphicChip {
 	
 	private final Retro24 retro24;
 	
+	// Stand des Update Flags, wird bei jedem Schreibzugriff über den MemoryBus
+	// aktualisiert (die View liest es aus einem anderen Thread)
+	private volatile boolean updateFlag;
+	
 	public GraphicChip(Retro24 retro24) {
 		this.retro24 = retro24;
+		// Videospeicher als eigener Block: wird ständig beschrieben und als View gezeichnet
+		retro24.getMemoryBus().allocate(VIDMEM_START, VIDMEM_END);
+		retro24.getMemoryBus().map(UPDATE_FLAG_ADDRESS, UPDATE_FLAG_ADDRESS, (address, value) -> updateFlag = value == 0x01);
 	}
 	
 	/**
@@ -80,6 +88,16 @@ public class GraphicChip {
 	public byte[] getVideoMemory() {
     	return retro24.readMemory(VIDMEM_START, VIDMEM_END);
     }
+
+	/**
+	 * Gibt eine View auf den Videospeicher zurück (ohne Kopie, z.B. zum Zeichnen).
+	 * Der Videospeicher ist ein eigener Block (siehe Konstruktor), die View zeigt
+	 * daher auch spätere Schreibzugriffe.
+	 * @return schreibgeschützte View, Position 0 entspricht VIDMEM_START
+	 */
+	public ByteBuffer getVideoMemoryView() {
+		return retro24.getMemoryView(VIDMEM_START, VIDMEM_END);
+	}
 	
 	/**
 	 * Schreibt einen Wert in den Videospeicher.
@@ -107,11 +125,12 @@ public class GraphicChip {
 	}
 	
 	/**
-	 * Liest das Video Update Flag von der entsprechenden Speicheraddresse des Hauptspeichers des Retro24.
+	 * Liefert das Video Update Flag (Speicheradresse UPDATE_FLAG_ADDRESS), ohne den
+	 * Speicher abzufragen.
 	 * @return ob Update Flag gesetzt (true) oder nicht (false).
 	 */
 	public boolean getUpdateFlag() {
-		return retro24.readMemory(UPDATE_FLAG_ADDRESS) == 0x01;
+		return updateFlag;
 	}
 	
 	/**
@@ -7,13 +7,16 @@ import gui.controller.validator.ControlPanelValidator;
 import gui.view.ControlPanelView;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ListView;
+import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
 import javafx.scene.image.ImageView;
 import javafx.scene.text.Text;
@@ -29,6 +32,9 @@ public class ControlPanelController {
 	// Konstanten
 	public static final int MAXMEMDUMP = 0x1FF;
 	public static final String PROGRAMM_PATH_INPUT_DEFAULT = "Programmpfad";
+	// Frequenzregler: Zehnerpotenzen von 1 Hz bis 100 MHz (darüber Turbo)
+	public static final int MINFREQUENCYEXPONENT = 0;
+	public static final int MAXFREQUENCYEXPONENT = 8;
 	
 	// FXML Attribute (SceneBuilder):
 	@FXML
@@ -61,6 +67,12 @@ public class ControlPanelController {
 	private Text bisMemoryDumpText;
 	@FXML
 	private Text einrastenText;
+	@FXML
+	private Slider frequencySlider;
+	@FXML
+	private CheckBox turboCheckBox;
+	@FXML
+	private Text frequencyText;
 	
 	// Referenz auf View:
 	private ControlPanelView controlPanelView;
@@ -82,6 +94,10 @@ public class ControlPanelController {
 	// da deren Werte teilweise live während des Laufens des Systems abgefragt werden.
 	private final BooleanProperty inputInactiveBP = new SimpleBooleanProperty(false);
 	
+	// CPU-Frequenz in Hz (ClockScheduler.TURBO = ungebremst), kann auch während
+	// des Laufens geändert werden und gilt dann sofort:
+	private final IntegerProperty cpuFrequencyIP = new SimpleIntegerProperty(ScreenViewController.CPUFREQUENCY);
+	
 	// String Properties:
 	// Properties vonMemoryDumpInput und bisMemoryDumpInput
 	private final StringProperty memoryDumpInputFromSP = new SimpleStringProperty();
@@ -145,6 +161,9 @@ public class ControlPanelController {
 	public void initDefaultValues() {
 		vonMemoryDumpInput.setText(String.format("0x%04X",Retro24.PROGRAMM_MEMORYSTART));
 		bisMemoryDumpInput.setText(String.format("0x%04X",Retro24.PROGRAMM_MEMORYSTART + 0xFF));
+		frequencySlider.setMin(MINFREQUENCYEXPONENT);
+		frequencySlider.setMax(MAXFREQUENCYEXPONENT);
+		frequencySlider.setValue(Math.log10(ScreenViewController.CPUFREQUENCY));
 	}
 
 	/**
@@ -265,6 +284,10 @@ public class ControlPanelController {
  		return inputInactiveBP;
  	}
  	
+ 	public IntegerProperty cpuFrequencyIP() {
+ 		return cpuFrequencyIP;
+ 	}
+ 	
  	public StringProperty memoryDumpInputFromSP() {
  		return memoryDumpInputFromSP;
  	}
@@ -312,6 +335,18 @@ public class ControlPanelController {
 	public Text getEinrastenText() {
 		return einrastenText;
 	}
+
+	public Slider getFrequencySlider() {
+		return frequencySlider;
+	}
+
+	public CheckBox getTurboCheckBox() {
+		return turboCheckBox;
+	}
+
+	public Text getFrequencyText() {
+		return frequencyText;
+	}
 	
 	public Button getStartButton() {
 		return startButton;
@@ -1,12 +1,19 @@
 package gui.controller;
 
+import java.util.BitSet;
+import java.util.concurrent.locks.LockSupport;
+
 import common.config.InstructionInfoConfig;
 import common.config.MemoryDumpConfig;
 import common.util.debug.log.InstructionDumper;
 import common.util.debug.log.InstructionLogger;
 import common.util.debug.log.MemoryDumpLogger;
 import common.util.debug.log.MemoryDumper;
+import core.ClockScheduler;
+import core.MemoryBus;
 import core.Retro24;
+import core.RunResult.StopReason;
+import core.CPU.CPU;
 import core.IO.IOChip;
 import core.graphics.GraphicChip;
 import gui.util.debug.log.ObservableLogger;
@@ -30,14 +37,21 @@ public class ScreenViewController {
 	// TODO Hinweis: Klasse ist noch nicht an die gleiche Designphilosophie wie der ControlPanelController gesetzt
 	// Bei Bedarf oder Langeweile wird das geändert. :D
 	/**
-	 * Die CPU-Frequenz in Hz
+	 * Die voreingestellte CPU-Frequenz in Hz, zur Laufzeit über setFrequency() änderbar
 	 */
 	public static final int CPUFREQUENCY = 1000;
+	// So lange wird in einer Warteschleife höchstens geschlafen, falls keine Eingabe kommt
+	// (unter MAX_LAG_NANOS, damit der Taktgeber die Wartezeit vollständig nachholt)
+	private static final long IDLE_PARK_NANOS = ClockScheduler.MAX_LAG_NANOS / 2;
 	
 	private final Retro24 retro24;
 	private final ControlPanelController controlPanelController;
 	private final ScreenView screenView;
 	private final String programPath;
+	// Taktgeber der Hauptschleife
+	private final ClockScheduler scheduler;
+	// Thread der Hauptschleife (wird bei Eingaben aus einer Warteschleife geweckt)
+	private volatile Thread systemThread;
 	
 	// Timeline die den 
 	private Timeline logTransfer;
@@ -51,6 +65,10 @@ public class ScreenViewController {
 	private ObservableLogger<MemoryDumpLogger> memoryLogger;
 	private ObservableLogger<InstructionLogger> instructionLogger;
 	
+	// Stand des Bildschirms: Speicher und Generation beim letzten Zeichnen (0 = alles zeichnen)
+	private MemoryBus drawnBus;
+	private long drawnGeneration;
+	
 	// ObservableLists, diese werden in den ListViews im Retro24 Control Panel angezeigt.
 	private ObservableList<String> memoryLogObs = FXCollections.observableArrayList();
 	private ObservableList<String> instructionLogObs = FXCollections.observableArrayList();
@@ -73,9 +91,15 @@ public class ScreenViewController {
 		this.screenView = new ScreenView();
 		this.retro24 = new Retro24();
 		retro24.initialize();
+		// Warteschleifen (z.B. auf den Joystick) überspringen, statt den Host auszulasten
+		retro24.setIdleLoopSkipping(true);
 		this.programPath = programPath;
+		this.scheduler = new ClockScheduler(controlPanelController.cpuFrequencyIP().get());
 		this.memoryLogger = new ObservableLogger<MemoryDumpLogger>(new MemoryDumpLogger(new MemoryDumper(retro24, memoryDumpConfig)));
 		this.instructionLogger = new ObservableLogger<InstructionLogger>(new InstructionLogger(new InstructionDumper(retro24, instructionInfoConfig)));
+		for (BooleanProperty joystickBP : new BooleanProperty[] {joystickUpBP, joystickDownBP, joystickLeftBP, joystickRightBP, joystickFireBP}) {
+			joystickBP.addListener((observable, oldValue, newValue) -> wakeUp());
+		}
 		updateView();
 	}
 	
@@ -104,7 +128,18 @@ public class ScreenViewController {
 	public void updateView() {
 		// Videoupdate Flag prüfen
 		if (retro24.getGraphicChip().getUpdateFlag()) {
-			screenView.updateScreen(retro24.getGraphicChip().getVideoMemory());
+			// Nur die seit dem letzten Zeichnen geänderten Seiten des Videospeichers
+			MemoryBus bus = retro24.getMemoryBus();
+			if (bus != drawnBus) {
+				drawnBus = bus;
+				drawnGeneration = 0;
+			}
+			BitSet dirtyPages = bus.dirtyPagesSince(drawnGeneration)
+					.get(GraphicChip.VIDMEM_START >>> 8, (GraphicChip.VIDMEM_END >>> 8) + 1);
+			drawnGeneration = bus.nextGeneration();
+			if (!dirtyPages.isEmpty()) {
+				screenView.updateScreen(retro24.getGraphicChip().getVideoMemoryView(), dirtyPages);
+			}
 			retro24.getGraphicChip().setUpdateFlag(false);
 		}
     }
@@ -117,6 +152,10 @@ public class ScreenViewController {
 	public void afterRun() {
 		systemRunningBP.set(false);
 		retro24.getCPU().setHalt(true);
+		// Programm wegen eines Fehlers angehalten (z.B. ungültiger Opcode):
+		if (retro24.getCPU().isFaulted()) {
+			controlPanelController.showError("CPU Fehler", retro24.getCPU().getFaultMessage());
+		}
 		Platform.runLater(() -> {
 			if (logTransfer != null) {
 				logTransfer.stop();
@@ -127,18 +166,29 @@ public class ScreenViewController {
 	}
 	
 	/**
-	 * Hauptschleife in der das System läuft
+	 * Hauptschleife in der das System läuft: je Zeitabschnitt werden die fälligen
+	 * Zyklen ausgeführt, danach wird einmal bis zum nächsten Abschnitt gewartet.
 	 * @throws InterruptedException 
 	 */
 	private void mainLoop()  {
 		try {
 			stepCPU();
+			scheduler.resynchronize();
 		    while (!retro24.getCPU().isHalted()) {
 		    	if (cpuPausedBP.get()) {
 		    		Thread.sleep(100);
+		    		// Pausenzeit nicht nachholen
+		    		scheduler.resynchronize();
 		    		continue;
 		    	}
-		        stepCPU();
+		        if (runSlice(scheduler.cyclesDue())) {
+		        	// Warteschleife: bis zur nächsten Eingabe schlafen. Der nächste Abschnitt holt
+		        	// die Wartezeit mit der alten Eingabe nach (die Schleife wird dabei übersprungen,
+		        	// tick / tock laufen in einem Schritt vor) und übernimmt danach die neue Eingabe
+		        	LockSupport.parkNanos(IDLE_PARK_NANOS);
+		        } else {
+		        	scheduler.awaitNextSlice();
+		        }
 		    }
 		} catch (InterruptedException e) {
 			e.printStackTrace();
@@ -147,33 +197,71 @@ public class ScreenViewController {
 	}
 	
 	/**
-	 * Methode lässt die CPU eine einzelne Instruktion ausführen,
-	 * hierbei wird die Taktrate berücksichtigt, der Thread wartet nach 
-	 * Ausführen der Instruktion, bis die Zeit eines Taktes erreicht ist.
+	 * Methode lässt die CPU eine einzelne Instruktion ausführen (Einzelschritt).
 	 */
 	public void stepCPU() {
 		if (retro24.getCPU().isHalted()) {
 			return;
 		}
-	    final long targetCycleDurationNanos = 1_000_000_000 / CPUFREQUENCY ; // Zeit eines Taktes in Nanosekunden
-
-		long cycleStartTime = System.nanoTime(); // Startzeit des Zyklus
-
-        retro24.runNextInstruction();
-        updateView();
-        updateLogs();
-        updateIO();
-
-        long elapsedTime = System.nanoTime() - cycleStartTime; // Verstrichene Zeit in Nanosekunden
-        long sleepTime = targetCycleDurationNanos - elapsedTime; // Verbleibende Zeit berechnen
-        if (sleepTime > 0) {
-            try {
-				Thread.sleep(sleepTime / 1_000_000, (int) (sleepTime % 1_000_000));
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		retro24.run(1);
+		updateView();
+		updateLogs();
+		updateIO();
+	}
+	
+	/**
+	 * Methode lässt die CPU Instruktionen im Umfang von cycles Zyklen ausführen und
+	 * aktualisiert danach View und IO. Ohne aktive Logs laufen die Instruktionen
+	 * am Stück, sonst einzeln, damit jede Instruktion geloggt wird.
+	 * @param cycles Anzahl der fälligen Zyklen
+	 * @return true, wenn die CPU in einer Warteschleife auf eine Eingabe wartet
+	 */
+	private boolean runSlice(long cycles) {
+		CPU cpu = retro24.getCPU();
+		if (cpu.isHalted() || cycles == 0) {
+			return false;
+		}
+		long start = cpu.getCycles();
+		boolean idle = false;
+		if (controlPanelController.memoryDumpCheckBoxBP().get() || controlPanelController.instructionInfoCheckBoxBP().get()) {
+			while (cpu.getCycles() - start < cycles && !cpu.isHalted()) {
+				retro24.run(1);
+				updateLogs();
 			}
-        }   
+		} else {
+			idle = retro24.runCycles(cycles).getStopReason() == StopReason.IDLE;
+			updateLogs();
+		}
+		// Auch die Zyklen über den Bedarf hinaus verbuchen (werden im nächsten Abschnitt abgezogen)
+		scheduler.executed(cpu.getCycles() - start);
+		updateView();
+		updateIO();
+		return idle;
+	}
+
+	/**
+	 * Weckt die Hauptschleife, falls sie in einer Warteschleife schläft.
+	 */
+	private void wakeUp() {
+		Thread thread = systemThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+	
+	/**
+	 * Setzt die CPU-Frequenz, sie gilt ab dem nächsten Zeitabschnitt.
+	 * @param frequency die Frequenz in Hz oder ClockScheduler.TURBO für ungebremst
+	 */
+	public void setFrequency(int frequency) {
+		scheduler.setFrequency(frequency);
+	}
+	
+	/**
+	 * @return die CPU-Frequenz in Hz oder ClockScheduler.TURBO
+	 */
+	public int getFrequency() {
+		return scheduler.getFrequency();
 	}
 	
 	/**
@@ -219,7 +307,7 @@ public class ScreenViewController {
 	    
 
 	    // Task in einem neuen Thread starten
-	    Thread systemThread = new Thread(systemTask);
+	    systemThread = new Thread(systemTask);
 	    systemThread.setDaemon(true); // Beende den Thread automatisch beim Schließen der App
 	    systemThread.start();
 	    logTransfer.play();
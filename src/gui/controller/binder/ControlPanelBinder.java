@@ -1,8 +1,12 @@
 package gui.controller.binder;
 
+import core.ClockScheduler;
 import gui.controller.ControlPanelController;
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
 import javafx.collections.ListChangeListener;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Slider;
 
 /**
  * Verwaltet alle Bindings des ControlPanels.
@@ -23,6 +27,7 @@ public class ControlPanelBinder {
         bindVisibilityProperties();
         bindInputProperties();
         bindDisableProperties();
+        bindFrequencyProperties();
     }
 
     /**
@@ -84,6 +89,34 @@ public class ControlPanelBinder {
         controller.getBisMemoryDumpInput().disableProperty().bind(inputInactiveBP);
     }
 
+    /**
+     * Bindet die CPU-Frequenz an Regler und Turbo CheckBox. Die Frequenz bleibt auch
+     * während des Laufens änderbar und wird sofort an den ScreenViewController übergeben.
+     */
+    private void bindFrequencyProperties() {
+        Slider slider = controller.getFrequencySlider();
+        CheckBox turbo = controller.getTurboCheckBox();
+        controller.cpuFrequencyIP().bind(Bindings.createIntegerBinding(
+            () -> turbo.isSelected() ? ClockScheduler.TURBO : (int) Math.round(Math.pow(10, slider.getValue())),
+            slider.valueProperty(), turbo.selectedProperty()));
+        controller.getFrequencyText().textProperty().bind(Bindings.createStringBinding(
+            () -> formatFrequency(controller.cpuFrequencyIP().get()), controller.cpuFrequencyIP()));
+        slider.disableProperty().bind(turbo.selectedProperty());
+
+        controller.cpuFrequencyIP().addListener((obs, oldValue, newValue) -> {
+            if (controller.getScreenViewController() != null) {
+                controller.getScreenViewController().setFrequency(newValue.intValue());
+            }
+        });
+    }
+
+    private static String formatFrequency(int frequency) {
+        if (frequency == ClockScheduler.TURBO) {
+            return "Frequenz: unbegrenzt";
+        }
+        return String.format("Frequenz: %,d Hz", frequency);
+    }
+
     /**
      * Bindet Properties zu externen Komponenten (z.B. ScreenViewController)
      */
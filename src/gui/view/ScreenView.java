@@ -1,5 +1,8 @@
 package gui.view;
 
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
 import core.graphics.GraphicChip;
 import gui.controller.ScreenViewController;
 import javafx.animation.PauseTransition;
@@ -63,36 +66,30 @@ public class ScreenView {
 
     // 0=dunkel, 1=hell ab $E000 und einmal
     // 0=monochrom, 1=farbig ab $F000
-    public void updateScreen(byte[] memory) {
+    // Neu gezeichnet werden nur Pixel, deren Seiten (relativ zu $E000) geändert wurden
+    public void updateScreen(ByteBuffer memory, BitSet dirtyPages) {
         GraphicsContext gc = canvas.getGraphicsContext2D();
         
-        int[][] pixelColors = new int[GraphicChip.PIXEL_HEIGHT][GraphicChip.PIXEL_WIDTH];
-        
         int videoMemPos = 0;
         for (int i = 0; i < GraphicChip.PIXEL_HEIGHT; i++) {
             for (int j = 0; j < GraphicChip.PIXEL_WIDTH; j++, videoMemPos++) {
                 int darkLightIndex = DARK_LIGHT_START_ADDRESS + videoMemPos;
                 int colorIndex = COLOR_START_ADDRESS + videoMemPos;
+                if (!dirtyPages.get(darkLightIndex >>> 8) && !dirtyPages.get(colorIndex >>> 8)) {
+                    continue;
+                }
                 
                 // Sicherstellen, dass Speicherzugriffe nicht außerhalb der Arraygrenzen liegen
-                if (darkLightIndex < memory.length && colorIndex < memory.length) {
-                    boolean brightness = (memory[darkLightIndex] & 0x1) == 1;
-                    boolean colorValue = (memory[colorIndex] & 0x1) == 1;
+                if (darkLightIndex < memory.limit() && colorIndex < memory.limit()) {
+                    boolean brightness = (memory.get(darkLightIndex) & 0x1) == 1;
+                    boolean colorValue = (memory.get(colorIndex) & 0x1) == 1;
                     
-                    pixelColors[i][j] = calculateColorValue(brightness, colorValue);
+                    // Jedes Pixel füllt sein Feld ganz aus, Löschen ist nicht nötig
+                    gc.setFill(getColorFromValue(calculateColorValue(brightness, colorValue)));
+                    gc.fillRect(j * 10, i * 10, 10, 10);
                 }
             }
         }
-        
-        //TODO DoubleBuffering / Offscreen Rendering? 
-        // Alles auf einmal zeichnen
-        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
-        for (int i = 0; i < GraphicChip.PIXEL_HEIGHT; i++) {
-            for (int j = 0; j < GraphicChip.PIXEL_WIDTH; j++) {
-                gc.setFill(getColorFromValue(pixelColors[i][j]));
-                gc.fillRect(j * 10, i * 10, 10, 10);
-            }
-        }
     }
      
     private int calculateColorValue(boolean brightness, boolean mode) {
@@ -1,9 +1,24 @@
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import core.MemoryBus;
 import core.Retro24;
 import core.CPU.CPU;
+import core.CPU.Instruction;
+import core.IO.IOChip;
+import core.graphics.GraphicChip;
 
 public class CPUTests {
 	private Retro24 retro24;
@@ -48,4 +63,227 @@ public class CPUTests {
 		cpu.moveIC(0xFFFF);
 		assertEquals(cpu.getIC(), 0x00FF);
 	}
+	
+	@Test
+	public void testDecodedInstructionIsPerCPU() {
+		Retro24 other = new Retro24();
+		other.initialize();
+		
+		// Diese CPU: MR0 $42, andere CPU: MAR $1234
+		retro24.writeMemory(0x0101, (byte) 0x42);
+		other.writeMemory(0x0101, (byte) 0x34);
+		other.writeMemory(0x0102, (byte) 0x12);
+		
+		cpu.executeOpcode((byte) 0x17);
+		other.getCPU().executeOpcode((byte) 0x01);
+		
+		// Die Argumente der einen CPU dürfen die der anderen nicht überschreiben
+		assertArrayEquals(new byte[] {0x42}, cpu.getDecodedInstruction().getArgs());
+		assertEquals(2, cpu.getDecodedInstruction().getLength());
+		assertArrayEquals(new byte[] {0x34, 0x12}, other.getCPU().getDecodedInstruction().getArgs());
+		assertEquals(3, other.getCPU().getDecodedInstruction().getLength());
+	}
+	
+	@Test
+	public void testDecodeCacheInvalidatedByWrite() {
+		// MR0 $42 ausführen, dann Argument und danach Opcode überschreiben
+		retro24.writeMemory(0x0100, (byte) 0x17);
+		retro24.writeMemory(0x0101, (byte) 0x42);
+		cpu.executeOpcode();
+		assertEquals(0x42, cpu.getR0());
+		
+		retro24.writeMemory(0x0101, (byte) 0x24);
+		cpu.setIC((short) 0x0100);
+		cpu.executeOpcode();
+		assertEquals(0x24, cpu.getR0());
+		
+		// MAR $1234 statt MR0
+		retro24.writeMemory(0x0100, (byte) 0x01);
+		retro24.writeMemory(0x0101, (byte) 0x34);
+		retro24.writeMemory(0x0102, (byte) 0x12);
+		cpu.setIC((short) 0x0100);
+		cpu.executeOpcode();
+		assertEquals(0x1234, cpu.getAR());
+		assertEquals(0x0103, cpu.getIC());
+	}
+	
+	@Test
+	public void testMemoryBusHandlers() {
+		MemoryBus bus = retro24.getMemoryBus();
+		assertTrue(bus.isPlainRam(0x01));
+		assertFalse(bus.isPlainRam(0x00));
+		
+		// Update Flag und Joystick Port über SR0 der CPU
+		retro24.writeMemory(0x0100, (byte) 0x12);
+		cpu.setAR((short) GraphicChip.UPDATE_FLAG_ADDRESS);
+		cpu.setR0((byte) 0x00);
+		cpu.executeOpcode();
+		assertFalse(retro24.getGraphicChip().getUpdateFlag());
+		
+		int[] inputs = new int[1];
+		retro24.getIOChip().addInputListener(() -> inputs[0]++);
+		retro24.getIOChip().writeJoystickMovement(IOChip.JOYSTICK_LEFT);
+		retro24.getIOChip().writeJoystickMovement(IOChip.JOYSTICK_LEFT);
+		assertEquals(1, inputs[0]);
+		
+		// Adressen werden auf 16 Bit gekürzt
+		retro24.writeMemory(0x10100, (byte) 0x42);
+		assertEquals(0x42, retro24.readMemory(0x0100));
+		assertThrows(IllegalStateException.class, () -> bus.map(IOChip.JOYSTICK_PORT, IOChip.JOYSTICK_PORT, (address, value) -> {}));
+	}
+	
+	@Test
+	public void testMemoryViewAndImage(@TempDir Path directory) throws Exception {
+		// Die View zeigt spätere Schreibzugriffe, ohne Kopie
+		ByteBuffer video = retro24.getGraphicChip().getVideoMemoryView();
+		retro24.writeMemory(GraphicChip.VIDMEM_START + 5, (byte) 0x01);
+		assertEquals(0x01, video.get(5));
+		assertTrue(video.isReadOnly());
+		
+		// Speicherabbild speichern und in ein anderes System laden (inkl. Update Flag)
+		retro24.writeMemory(GraphicChip.UPDATE_FLAG_ADDRESS, (byte) 0x01);
+		Path image = directory.resolve("memory.img");
+		retro24.saveMemoryImage(image);
+		Retro24 other = new Retro24();
+		other.initialize();
+		other.loadMemoryImage(image);
+		assertEquals(retro24.getMemoryView(Retro24.MEMORY_START, Retro24.MEMORY_END),
+				other.getMemoryView(Retro24.MEMORY_START, Retro24.MEMORY_END));
+		assertTrue(other.getGraphicChip().getUpdateFlag());
+	}
+	
+	@Test
+	public void testDirtyPages() {
+		MemoryBus bus = retro24.getMemoryBus();
+		// Seit Erstellung gelten alle Seiten als geändert
+		assertEquals(MemoryBus.PAGE_COUNT, bus.dirtyPagesSince(0).cardinality());
+		
+		long mark = bus.nextGeneration();
+		assertTrue(bus.dirtyPagesSince(mark).isEmpty());
+		retro24.writeMemory(0x1234, (byte) 0x01);
+		retro24.writeMemory(0x01FF, 0x0200, new byte[] {0x01, 0x02});
+		assertEquals("{1, 2, 18}", bus.dirtyPagesSince(mark).toString());
+		
+		// Ein zweiter Verbraucher beginnt später, der erste sieht weiter alle Änderungen
+		long later = bus.nextGeneration();
+		retro24.writeMemory(0xE000, (byte) 0x01);
+		assertEquals("{224}", bus.dirtyPagesSince(later).toString());
+		assertEquals("{1, 2, 18, 224}", bus.dirtyPagesSince(mark).toString());
+	}
+	
+	@Test
+	public void testSharedProgramImage() {
+		byte[] program = {0x17, 0x42, 0x2A, (byte) 0xFF};
+		Retro24 other = new Retro24();
+		other.initialize();
+		retro24.loadProgramm(program);
+		other.loadProgramm(program);
+		// Eigener Speicher nur für IO Page und Videospeicher
+		int privatePages = 1 + (GraphicChip.VIDMEM_END - GraphicChip.VIDMEM_START + 1) / MemoryBus.PAGE_SIZE;
+		assertEquals(privatePages, retro24.getMemoryBus().getPrivatePageCount());
+		
+		// Schreiben kopiert nur die betroffene Seite, die andere Instanz bleibt unverändert
+		retro24.writeMemory(0x0101, (byte) 0x24);
+		assertEquals(privatePages + 1, retro24.getMemoryBus().getPrivatePageCount());
+		assertEquals(0x24, retro24.readMemory(0x0101));
+		assertEquals(0x42, other.readMemory(0x0101));
+		assertEquals((byte) 0xFF, other.readMemory(0x0104));
+	}
+	
+	@Test
+	public void testReset() {
+		// Programm laufen lassen, das Speicher und Register verändert
+		retro24.loadProgramm(new byte[] {0x17, 0x42, 0x01, 0x00, (byte) 0xE0, 0x12, (byte) 0xFF});
+		retro24.run(10);
+		assertTrue(cpu.isHalted());
+		
+		retro24.reset();
+		Retro24 fresh = new Retro24();
+		fresh.initialize();
+		assertEquals(fresh.getMemoryView(Retro24.MEMORY_START, Retro24.MEMORY_END),
+				retro24.getMemoryView(Retro24.MEMORY_START, Retro24.MEMORY_END));
+		assertSame(cpu, retro24.getCPU());
+		assertFalse(cpu.isHalted());
+		assertEquals(0x0100, cpu.getIC());
+		assertEquals(0, cpu.getR0());
+		assertTrue(retro24.getGraphicChip().getUpdateFlag());
+		
+		// Danach wird ein Programm wieder geteilt geladen (nur IO Page und Videospeicher privat)
+		retro24.loadProgramm(new byte[] {0x17, 0x24, (byte) 0xFF});
+		assertEquals(1 + (GraphicChip.VIDMEM_END - GraphicChip.VIDMEM_START + 1) / MemoryBus.PAGE_SIZE,
+				retro24.getMemoryBus().getPrivatePageCount());
+		retro24.run(10);
+		assertEquals(0x24, cpu.getR0());
+	}
+	
+	@Test
+	public void testResetNotifiesNewValues() {
+		retro24.writeMemory(0x0101, (byte) 0x42);
+		retro24.writeMemory(0x0200, (byte) 0x55);
+		retro24.writeMemory(GraphicChip.VIDMEM_START, (byte) 0x01);
+		
+		// Listener lesen beim Zurücksetzen schon den neuen Inhalt
+		Map<Integer, Byte> seen = new HashMap<>();
+		retro24.addMemoryWriteListener(address -> seen.put(address, retro24.readMemory(address)));
+		retro24.reset();
+		assertEquals((byte) 0xFF, seen.get(0x0101));
+		assertEquals((byte) 0xFF, seen.get(0x0200));
+		assertEquals(retro24.readMemory(GraphicChip.VIDMEM_START), seen.get(GraphicChip.VIDMEM_START));
+	}
+	
+	@Test
+	public void testWordArithmetic() {
+		// A01 / S01 für alle R0 / R1 und die Randwerte von R2 gegen die Definition prüfen
+		int[] r2Values = {0x00, 0x01, 0x80, 0xFE, 0xFF};
+		for (int r0 = 0; r0 < 0x100; r0++) {
+			for (int r1 = 0; r1 < 0x100; r1++) {
+				for (int r2 : r2Values) {
+					int sum = r1 + r0;
+					int sumR1 = sum > 0xFF ? (r2 == 0xFF ? 0xFF : sum & 0xFF) : sum;
+					int sumR2 = sum > 0xFF ? Math.min(r2 + 1, 0xFF) : r2;
+					assertWordResult((byte) 0x06, r0, r1, r2, sumR1, sumR2);
+					
+					int diff = r1 - r0;
+					int diffR1 = diff < 0 ? (r2 == 0 ? 0 : -diff) : diff;
+					int diffR2 = diff < 0 ? Math.max(r2 - 1, 0) : r2;
+					assertWordResult((byte) 0x08, r0, r1, r2, diffR1, diffR2);
+				}
+			}
+		}
+		// IRW / DRW an den Überlaufgrenzen
+		assertWordResult((byte) 0x27, 0, 0xFF, 0x12, 0x00, 0x13);
+		assertWordResult((byte) 0x27, 0, 0xFF, 0xFF, 0xFF, 0xFF);
+		assertWordResult((byte) 0x28, 0, 0x00, 0x12, 0x01, 0x11);
+		assertWordResult((byte) 0x28, 0, 0x00, 0x00, 0x00, 0x00);
+	}
+	
+	@Test
+	public void testInstructionMetadata() {
+		for (int value = 0; value < Instruction.OPCODE_COUNT; value++) {
+			byte opcode = (byte) value;
+			int length = Instruction.getLength(opcode);
+			assertEquals(length + Instruction.getMemoryAccesses(opcode), Instruction.getCycles(opcode));
+			assertEquals(Instruction.accessesMemory(opcode), Instruction.readsMemory(opcode) || Instruction.writesMemory(opcode));
+			assertFalse(Instruction.readsMemory(opcode) && Instruction.writesMemory(opcode));
+			assertEquals(Instruction.isJump(opcode) || value == 0xFF, Instruction.endsBlock(opcode));
+			if (length == 0) {
+				assertFalse(Instruction.accessesMemory(opcode) || Instruction.endsBlock(opcode));
+			}
+		}
+		assertTrue(Instruction.isJump((byte) 0x11));
+		assertTrue(Instruction.isJump((byte) 0x24));
+		assertFalse(Instruction.isJump((byte) 0xFF));
+		assertTrue(Instruction.readsMemory((byte) 0x15));
+		assertEquals(1, Instruction.getMemoryAccesses((byte) 0x12));
+		assertEquals(2, Instruction.getMemoryAccesses((byte) 0x02));
+	}
+	
+	private void assertWordResult(byte opcode, int r0, int r1, int r2, int expectedR1, int expectedR2) {
+		cpu.setR0((byte) r0);
+		cpu.setR1((byte) r1);
+		cpu.setR2((byte) r2);
+		cpu.executeOpcode(opcode);
+		assertEquals(expectedR1, cpu.getR1() & 0xFF);
+		assertEquals(expectedR2, cpu.getR2() & 0xFF);
+	}
 }
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import core.ClockScheduler;
+
+/**
+ * Prüft den ClockScheduler mit einer simulierten Uhr.
+ */
+public class ClockSchedulerTests {
+
+	private long now;
+
+	@Test
+	void testNoDriftWithIrregularSlices() {
+		ClockScheduler scheduler = new ClockScheduler(1000, () -> now);
+		long executed = 0;
+		// Unregelmäßig lange Abschnitte (wie beim Schlafen mit Jitter), insgesamt 1 s
+		long[] steps = {1_300_000, 700_000, 2_100_000, 900_000};
+		for (int i = 0; now < 1_000_000_000L; i++) {
+			now = Math.min(1_000_000_000L, now + steps[i % steps.length]);
+			long due = scheduler.cyclesDue();
+			scheduler.executed(due);
+			executed += due;
+		}
+		assertEquals(1000, executed);
+		assertEquals(0, scheduler.cyclesDue());
+	}
+
+	@Test
+	void testOvershootIsCarriedOver() {
+		ClockScheduler scheduler = new ClockScheduler(1000, () -> now);
+		now += 10_000_000;
+		assertEquals(10, scheduler.cyclesDue());
+		// Letzte Instruktion kostet 2 Zyklen mehr als fällig
+		scheduler.executed(12);
+		now += 10_000_000;
+		assertEquals(8, scheduler.cyclesDue());
+	}
+
+	@Test
+	void testLagIsNotCaughtUp() {
+		ClockScheduler scheduler = new ClockScheduler(1000, () -> now);
+		now += 5_000_000_000L;
+		// 1 ms je Zyklus: der nächste fällige und MAX_LAG_NANOS Rückstand
+		assertEquals(ClockScheduler.MAX_LAG_NANOS / 1_000_000 + 1, scheduler.cyclesDue());
+
+		scheduler.resynchronize();
+		now += 3_000_000;
+		assertEquals(3, scheduler.cyclesDue());
+	}
+
+	@Test
+	void testHighFrequencyDoesNotOverflow() {
+		ClockScheduler scheduler = new ClockScheduler(2_000_000_000, () -> now);
+		for (int i = 0; i < 100; i++) {
+			now += ClockScheduler.MAX_LAG_NANOS / 2;
+			long due = scheduler.cyclesDue();
+			assertEquals(100_000_000, due);
+			scheduler.executed(due);
+		}
+	}
+
+	@Test
+	void testTurboAdaptsBatchSize() {
+		ClockScheduler scheduler = new ClockScheduler(ClockScheduler.TURBO, () -> now);
+		long first = scheduler.cyclesDue();
+		now += 1_000;
+		scheduler.executed(first);
+		long second = scheduler.cyclesDue();
+		assertTrue(second > first);
+
+		// Zu langer Abschnitt: wieder kleiner
+		now += ClockScheduler.TURBO_SLICE_NANOS * 3;
+		scheduler.executed(second);
+		assertTrue(scheduler.cyclesDue() < second);
+	}
+}
@@ -0,0 +1,736 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import core.Retro24;
+import core.RunResult;
+import core.RunResult.StopReason;
+import core.CPU.BlockEngine;
+import core.CPU.CPU;
+import core.CPU.ControlFlowGraph;
+import core.CPU.EngineType;
+import core.CPU.FaultCode;
+import core.CPU.Instruction;
+import core.CPU.LockstepEngine;
+import core.CPU.ProgramCache;
+import core.CPU.ProgramTranslator;
+import core.IO.IOChip;
+
+/**
+ * Vergleicht alle ExecutionEngines mit dem Referenz-Interpreter anhand der
+ * Beispielprogramme im Ordner Programme.
+ */
+public class EngineTests {
+	
+	private static final String PROGRAM_DIR = "Programme";
+	private static final int MAX_INSTRUCTIONS = 1_000_000;
+	
+	/**
+	 * Startet ein Programm mit dem angegebenen Engine und führt es bis HLT
+	 * (bzw. MAX_INSTRUCTIONS) in Batches der Größe batchSize aus.
+	 */
+	private Retro24 runProgram(String path, EngineType engineType, int batchSize) {
+		Retro24 retro24 = new Retro24(engineType);
+		retro24.initialize();
+		retro24.loadProgramm(path);
+		return run(retro24, batchSize);
+	}
+	
+	private Retro24 runProgram(byte[] program, EngineType engineType, int batchSize) {
+		Retro24 retro24 = new Retro24(engineType);
+		retro24.initialize();
+		retro24.loadProgramm(program);
+		return run(retro24, batchSize);
+	}
+	
+	/**
+	 * Erzeugt ein Retro24 mit BlockEngine, der jeden übersetzten Block sofort
+	 * (synchron) kompiliert.
+	 */
+	private Retro24 createCompilingRetro24() {
+		Retro24 retro24 = new Retro24(EngineType.BLOCK);
+		retro24.initialize();
+		BlockEngine engine = (BlockEngine) retro24.getExecutionEngine();
+		engine.setCompileThreshold(1);
+		engine.setSynchronousCompilation(true);
+		return retro24;
+	}
+	
+	private Retro24 run(Retro24 retro24, int batchSize) {
+		int executed = 0;
+		while (!retro24.getCPU().isHalted() && executed < MAX_INSTRUCTIONS) {
+			executed += retro24.getExecutionEngine().run(batchSize);
+		}
+		return retro24;
+	}
+	
+	private void assertSameState(Retro24 expected, Retro24 actual, String message) {
+		CPU e = expected.getCPU();
+		CPU a = actual.getCPU();
+		assertEquals(e.getR0(), a.getR0(), message + " R0");
+		assertEquals(e.getR1(), a.getR1(), message + " R1");
+		assertEquals(e.getR2(), a.getR2(), message + " R2");
+		assertEquals(e.getR3(), a.getR3(), message + " R3");
+		assertEquals(e.getIC(), a.getIC(), message + " IC");
+		assertEquals(e.getAR(), a.getAR(), message + " AR");
+		assertEquals(e.getTick(), a.getTick(), message + " tick");
+		assertEquals(e.getTock(), a.getTock(), message + " tock");
+		assertEquals(e.getCycles(), a.getCycles(), message + " cycles");
+		assertEquals(e.isHalted(), a.isHalted(), message + " halt");
+		assertEquals(e.getFaultCode(), a.getFaultCode(), message + " fault");
+		assertEquals(e.getFaultIC(), a.getFaultIC(), message + " fault IC");
+		assertEquals(e.getFaultOpcode(), a.getFaultOpcode(), message + " fault opcode");
+		assertEquals(e.getLastInstruction(), a.getLastInstruction(), message + " lastInstruction");
+		assertArrayEquals(e.getDecodedInstruction().getArgs(), a.getDecodedInstruction().getArgs(), message + " args");
+		assertTrue(Arrays.equals(expected.readMemory(Retro24.MEMORY_START, Retro24.MEMORY_END),
+				actual.readMemory(Retro24.MEMORY_START, Retro24.MEMORY_END)), message + " memory");
+	}
+	
+	@Test
+	void testEnginesMatchReference() {
+		File[] programs = new File(PROGRAM_DIR).listFiles((dir, name) -> name.endsWith(Retro24.SUPPORTED_FILE_EXTENSION));
+		assertNotNull(programs);
+		
+		for (File program : programs) {
+			Retro24 reference = runProgram(program.getPath(), EngineType.REFERENCE, 1);
+			for (EngineType engineType : EngineType.values()) {
+				for (int batchSize : new int[] {1, 7, MAX_INSTRUCTIONS}) {
+					Retro24 actual = runProgram(program.getPath(), engineType, batchSize);
+					assertSameState(reference, actual, program.getName() + " / " + engineType + " / " + batchSize);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Programm überschreibt in einer (heißen) Schleife eine eigene Instruktion:
+	 * IRW wird nach einigen Durchläufen durch NUL ersetzt.
+	 */
+	@Test
+	void testSelfModifyingCode() {
+		byte[] program = {
+			0x17, 0x30,             // 0100: MR0 $30
+			0x07,                   // 0102: loop: DR0
+			0x27,                   // 0103: IRW (wird überschrieben)
+			0x01, 0x0D, 0x01,       // 0104: MAR check
+			0x24, 0x10,             // 0107: JE0 $10
+			0x01, 0x15, 0x01,       // 0109: MAR cont
+			0x11,                   // 010C: JMP
+			0x2A,                   // 010D: check: C03
+			0x17, 0x00,             // 010E: MR0 $00
+			0x01, 0x03, 0x01,       // 0110: MAR $0103
+			0x12,                   // 0113: SR0
+			0x2B,                   // 0114: C30
+			0x01, 0x1D, 0x01,       // 0115: cont: MAR end
+			0x19,                   // 0118: JZ0
+			0x01, 0x02, 0x01,       // 0119: MAR loop
+			0x11,                   // 011C: JMP
+			(byte) 0xFF             // 011D: end: HLT
+		};
+		
+		Retro24 reference = runProgram(program, EngineType.REFERENCE, 1);
+		assertEquals((byte) 0x20, reference.getCPU().getR1());
+		for (EngineType engineType : EngineType.values()) {
+			assertSameState(reference, runProgram(program, engineType, MAX_INSTRUCTIONS), "self modifying / " + engineType);
+		}
+		
+		// Vorab übersetzt: der überschriebene Block muss zur Laufzeit verworfen werden
+		Retro24 translated = new Retro24(EngineType.BLOCK);
+		translated.initialize();
+		translated.loadProgramm(program);
+		assertTrue(ControlFlowGraph.analyze(translated, Retro24.PROGRAMM_MEMORYSTART).isSelfModifying());
+		assertTrue(ProgramTranslator.install(translated, ProgramTranslator.compile(translated)));
+		assertSameState(reference, run(translated, MAX_INSTRUCTIONS), "self modifying / translated");
+	}
+	
+	/**
+	 * Schleife mit allen Paaren, die der BlockEngine als Superinstruktion ausführt
+	 * (MAR LRW liest dabei tick / tock).
+	 */
+	@Test
+	void testSuperinstructions() {
+		byte[] program = {
+			0x17, 0x40,             // 0100: MR0 $40
+			0x2A,                   // 0102: C03
+			0x17, 0x40,             // 0103: loop: MR0 $40
+			0x25,                   // 0105: C01
+			0x05,                   // 0106: IR0
+			0x05,                   // 0107: IR0
+			0x07,                   // 0108: DR0
+			0x07,                   // 0109: DR0
+			0x06,                   // 010A: A01
+			0x07,                   // 010B: DR0
+			0x01, 0x10, 0x00,       // 010C: MAR $0010
+			0x15,                   // 010F: LRW
+			0x09,                   // 0110: X12
+			0x15,                   // 0111: LRW
+			0x03,                   // 0112: RAR
+			0x17, 0x11,             // 0113: MR0 $11
+			0x01, 0x00, 0x03,       // 0115: MAR $0300
+			0x12,                   // 0118: SR0
+			0x07,                   // 0119: DR0
+			0x01, 0x01, 0x03,       // 011A: MAR $0301
+			0x12,                   // 011D: SR0
+			0x2B,                   // 011E: C30
+			0x07,                   // 011F: DR0
+			0x2A,                   // 0120: C03
+			0x01, 0x2A, 0x01,       // 0121: MAR end
+			0x19,                   // 0124: JZ0
+			0x25,                   // 0125: C01
+			0x01, 0x03, 0x01,       // 0126: MAR loop
+			0x11,                   // 0129: JMP
+			(byte) 0xFF             // 012A: end: HLT
+		};
+		
+		Retro24 reference = runProgram(program, EngineType.REFERENCE, 1);
+		for (int batchSize : new int[] {1, 2, 3, 7, MAX_INSTRUCTIONS}) {
+			assertSameState(reference, runProgram(program, EngineType.BLOCK, batchSize), "superinstructions / " + batchSize);
+		}
+	}
+	
+	/**
+	 * Heiße Schleife (übersetzt bzw. kompiliert), die danach auf einen ungültigen Opcode läuft:
+	 * alle Engines müssen ohne Exception im selben Fehlerzustand anhalten.
+	 */
+	@Test
+	void testInvalidOpcodeFaults() {
+		byte[] program = {
+			0x17, 0x20,             // 0100: MR0 $20
+			0x07,                   // 0102: loop: DR0
+			0x01, 0x0B, 0x01,       // 0103: MAR fault
+			0x19,                   // 0106: JZ0
+			0x01, 0x02, 0x01,       // 0107: MAR loop
+			0x11,                   // 010A: JMP
+			0x30                    // 010B: fault: ungültiger Opcode
+		};
+		
+		Retro24 reference = runProgram(program, EngineType.REFERENCE, 1);
+		CPU cpu = reference.getCPU();
+		assertTrue(cpu.isHalted());
+		assertEquals(FaultCode.INVALID_OPCODE, cpu.getFaultCode());
+		assertEquals(0x010B, cpu.getFaultIC());
+		assertEquals(0x30, cpu.getFaultOpcode());
+		assertEquals(0x010B, cpu.getIC());
+		
+		for (EngineType engineType : EngineType.values()) {
+			for (int batchSize : new int[] {1, 7, MAX_INSTRUCTIONS}) {
+				assertSameState(reference, runProgram(program, engineType, batchSize), "fault / " + engineType + " / " + batchSize);
+			}
+		}
+		Retro24 compiled = createCompilingRetro24();
+		compiled.loadProgramm(program);
+		assertSameState(reference, run(compiled, MAX_INSTRUCTIONS), "fault / compiled");
+		
+		// Neu initialisiert ist der Fehlerzustand zurückgesetzt
+		cpu.initCPU();
+		assertFalse(cpu.isFaulted());
+		assertFalse(cpu.isHalted());
+	}
+	
+	/**
+	 * Mehrere Systeme im Gleichschritt: gleiche Programme mit unterschiedlichen Eingaben
+	 * (Schleifenlänge), verschiedene Programme und ein ungültiger Opcode je Lane.
+	 */
+	@Test
+	void testLockstepMatchesReference() {
+		byte[] countdown = {
+			0x01, 0x20, 0x01,       // 0100: MAR input
+			0x14,                   // 0103: LR0
+			0x07,                   // 0104: loop: DR0
+			0x27,                   // 0105: IRW
+			0x01, 0x0F, 0x01,       // 0106: MAR end
+			0x19,                   // 0109: JZ0
+			0x01, 0x04, 0x01,       // 010A: MAR loop
+			0x11,                   // 010D: JMP
+			0x00,                   // 010E: NUL
+			(byte) 0xFF             // 010F: end: HLT
+		};
+		File[] programs = new File(PROGRAM_DIR).listFiles((dir, name) -> name.endsWith(Retro24.SUPPORTED_FILE_EXTENSION));
+		assertNotNull(programs);
+		
+		for (int batchSize : new int[] {1, 7, MAX_INSTRUCTIONS}) {
+			Retro24[] machines = new Retro24[8 + programs.length];
+			Retro24[] references = new Retro24[machines.length];
+			for (int i = 0; i < machines.length; i++) {
+				machines[i] = new Retro24();
+				machines[i].initialize();
+				references[i] = new Retro24();
+				references[i].initialize();
+				for (Retro24 retro24 : new Retro24[] {machines[i], references[i]}) {
+					if (i < 7) {
+						retro24.loadProgramm(countdown);
+						retro24.writeMemory(0x0120, (byte) (i * 37));
+					} else if (i == 7) {
+						retro24.loadProgramm(new byte[] {0x17, 0x01, 0x30});
+					} else {
+						retro24.loadProgramm(programs[i - 8].getPath());
+					}
+				}
+				run(references[i], 1);
+			}
+			
+			LockstepEngine engine = new LockstepEngine(machines);
+			int executed = 0;
+			while (executed < MAX_INSTRUCTIONS && !Arrays.stream(machines).allMatch(m -> m.getCPU().isHalted())) {
+				engine.run(batchSize);
+				executed += batchSize;
+			}
+			for (int i = 0; i < machines.length; i++) {
+				assertSameState(references[i], machines[i], "lockstep / lane " + i + " / " + batchSize);
+			}
+			assertTrue(engine.getAverageGroupSize() > 1);
+			engine.close();
+		}
+	}
+	
+	/**
+	 * Ein geschlossener LockstepEngine ist von seinen Systemen abgemeldet: sie halten
+	 * ihn nicht mehr am Leben und laufen allein weiter.
+	 */
+	@Test
+	void testLockstepCloseReleasesEngine() {
+		Retro24 machine = new Retro24();
+		machine.initialize();
+		machine.loadProgramm(new byte[] {0x17, 0x01, (byte) 0xFF});
+		
+		WeakReference<LockstepEngine> reference = runAndClose(machine);
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+		}
+		assertNull(reference.get());
+		
+		run(machine, 1);
+		assertTrue(machine.getCPU().isHalted());
+		assertEquals((byte) 0x01, machine.getCPU().getR0());
+	}
+	
+	private static WeakReference<LockstepEngine> runAndClose(Retro24 machine) {
+		LockstepEngine engine = new LockstepEngine(machine);
+		engine.run(1);
+		engine.close();
+		assertThrows(IllegalStateException.class, () -> engine.run(1));
+		return new WeakReference<>(engine);
+	}
+	
+	@Test
+	void testCompiledBlocksMatchReference() {
+		File[] programs = new File(PROGRAM_DIR).listFiles((dir, name) -> name.endsWith(Retro24.SUPPORTED_FILE_EXTENSION));
+		assertNotNull(programs);
+		
+		for (File program : programs) {
+			Retro24 reference = runProgram(program.getPath(), EngineType.REFERENCE, 1);
+			for (int batchSize : new int[] {1, 7, MAX_INSTRUCTIONS}) {
+				Retro24 actual = createCompilingRetro24();
+				actual.loadProgramm(program.getPath());
+				assertSameState(reference, run(actual, batchSize), program.getName() + " / compiled / " + batchSize);
+			}
+		}
+	}
+	
+	@Test
+	void testTranslatedProgramsMatchReference() {
+		File[] programs = new File(PROGRAM_DIR).listFiles((dir, name) -> name.endsWith(Retro24.SUPPORTED_FILE_EXTENSION));
+		assertNotNull(programs);
+		
+		for (File program : programs) {
+			Retro24 translator = new Retro24();
+			translator.initialize();
+			translator.loadProgramm(program.getPath());
+			byte[] classBytes = ProgramTranslator.compile(translator);
+			assertNotNull(classBytes, program.getName());
+			
+			Retro24 reference = runProgram(program.getPath(), EngineType.REFERENCE, 1);
+			for (int batchSize : new int[] {1, 7, MAX_INSTRUCTIONS}) {
+				Retro24 actual = new Retro24(EngineType.BLOCK);
+				actual.initialize();
+				actual.loadProgramm(program.getPath());
+				assertTrue(ProgramTranslator.install(actual, classBytes), program.getName());
+				assertSameState(reference, run(actual, batchSize), program.getName() + " / translated / " + batchSize);
+			}
+		}
+	}
+	
+	/**
+	 * Retro24.run() / runUntil() liefern Anzahl und Grund des Endes, bei allen Engines gleich.
+	 */
+	@Test
+	void testRunResult() {
+		byte[] program = {
+			0x17, 0x05,             // 0100: MR0 $05
+			0x07,                   // 0102: loop: DR0
+			0x01, 0x0D, 0x01,       // 0103: MAR end
+			0x19,                   // 0106: JZ0
+			0x01, 0x02, 0x01,       // 0107: MAR loop
+			0x11,                   // 010A: JMP
+			0x00, 0x00,             // 010B: DAT
+			(byte) 0xFF             // 010D: end: HLT
+		};
+		for (EngineType engineType : EngineType.values()) {
+			Retro24 retro24 = new Retro24(engineType);
+			retro24.initialize();
+			retro24.loadProgramm(program);
+			
+			RunResult result = retro24.run(10);
+			assertEquals(10, result.getExecuted(), engineType.toString());
+			assertEquals(StopReason.BUDGET_EXHAUSTED, result.getStopReason(), engineType.toString());
+			
+			result = retro24.runUntil(r -> r.getCPU().getR0() == 1, 1000);
+			assertEquals(StopReason.CONDITION_MET, result.getStopReason(), engineType.toString());
+			assertEquals(7, result.getExecuted(), engineType.toString());
+			assertEquals(0x0103, retro24.getCPU().getIC(), engineType.toString());
+			
+			result = retro24.run(1000);
+			assertEquals(StopReason.HALTED, result.getStopReason(), engineType.toString());
+			assertEquals(25 - 17, result.getExecuted(), engineType.toString());
+			assertTrue(result.isHalted());
+			assertEquals(0, retro24.run(1000).getExecuted(), engineType.toString());
+			
+			Retro24 faulting = new Retro24(engineType);
+			faulting.initialize();
+			faulting.loadProgramm(new byte[] {0x30});
+			result = faulting.runUntil(r -> false, 1000, 100);
+			assertEquals(StopReason.FAULTED, result.getStopReason(), engineType.toString());
+			assertTrue(result.isFaulted());
+			assertEquals(0, result.getExecuted(), engineType.toString());
+		}
+	}
+	
+	/**
+	 * Zyklen je Instruktion (Länge + Speicherzugriffe) und runCycles(), das eine
+	 * Instruktion nie teilt.
+	 */
+	@Test
+	void testCycles() {
+		byte[] program = {
+			0x17, 0x05,             // 0100: MR0 $05     2 Zyklen
+			0x07,                   // 0102: loop: DR0   1
+			0x01, 0x0D, 0x01,       // 0103: MAR end     3
+			0x19,                   // 0106: JZ0         1
+			0x01, 0x02, 0x01,       // 0107: MAR loop    3
+			0x11,                   // 010A: JMP         1
+			0x00, 0x00,             // 010B: DAT
+			(byte) 0xFF             // 010D: end: HLT    1
+		};
+		assertEquals(3, Instruction.LRW.getCycles());
+		assertEquals(2, Instruction.SR0.getCycles());
+		for (EngineType engineType : EngineType.values()) {
+			Retro24 retro24 = new Retro24(engineType);
+			retro24.initialize();
+			retro24.loadProgramm(program);
+			
+			assertEquals(5, retro24.runCycles(10).getExecuted(), engineType.toString());
+			assertEquals(10, retro24.getCPU().getCycles(), engineType.toString());
+			// JMP, DR0 und MAR: 5 statt 3 Zyklen, weil MAR nicht geteilt wird
+			assertEquals(3, retro24.runCycles(3).getExecuted(), engineType.toString());
+			assertEquals(15, retro24.getCPU().getCycles(), engineType.toString());
+			
+			assertEquals(StopReason.HALTED, retro24.runCycles(1000).getStopReason(), engineType.toString());
+			assertEquals(2 + 4 * 9 + 5 + 1, retro24.getCPU().getCycles(), engineType.toString());
+		}
+	}
+	
+	/**
+	 * Warteschleifen auf den Joystick (endet erst bei einer Eingabe) und auf tick
+	 * werden übersprungen, der Zustand ist danach derselbe wie bei der Ausführung.
+	 */
+	@Test
+	void testIdleLoopSkipping() {
+		byte[] joystickLoop = {
+			0x01, 0x20, 0x00,       // 0100: loop: MAR $0020
+			0x14,                   // 0103: LR0
+			0x01, 0x00, 0x01,       // 0104: MAR loop
+			0x19,                   // 0107: JZ0
+			(byte) 0xFF             // 0108: HLT
+		};
+		byte[] tickLoop = {
+			0x01, 0x10, 0x00,       // 0100: loop: MAR $0010
+			0x14,                   // 0103: LR0
+			0x23, (byte) 0x80,      // 0104: AN0 $80
+			0x01, 0x00, 0x01,       // 0106: MAR loop
+			0x19,                   // 0109: JZ0
+			0x27,                   // 010A: IRW
+			0x01, 0x00, 0x01,       // 010B: MAR loop
+			0x11                    // 010E: JMP
+		};
+		for (EngineType engineType : EngineType.values()) {
+			Retro24 skipping = new Retro24(engineType);
+			skipping.initialize();
+			skipping.setIdleLoopSkipping(true);
+			skipping.loadProgramm(joystickLoop);
+			Retro24 reference = new Retro24(EngineType.REFERENCE);
+			reference.initialize();
+			reference.loadProgramm(joystickLoop);
+			
+			RunResult result = skipping.run(1_000_001);
+			assertEquals(StopReason.IDLE, result.getStopReason(), engineType.toString());
+			assertEquals(1_000_001, result.getExecuted(), engineType.toString());
+			reference.run(1_000_001);
+			assertSameState(reference, skipping, engineType + " joystick");
+			
+			skipping.getIOChip().writeJoystickMovement(IOChip.JOYSTICK_FIRE);
+			reference.getIOChip().writeJoystickMovement(IOChip.JOYSTICK_FIRE);
+			assertEquals(StopReason.HALTED, skipping.run(1000).getStopReason(), engineType.toString());
+			reference.run(1000);
+			assertSameState(reference, skipping, engineType + " joystick halt");
+			
+			// Wartet jeweils, bis Bit 7 von tick gesetzt ist
+			skipping = new Retro24(engineType);
+			skipping.initialize();
+			skipping.setIdleLoopSkipping(true);
+			skipping.loadProgramm(tickLoop);
+			reference = new Retro24(EngineType.REFERENCE);
+			reference.initialize();
+			reference.loadProgramm(tickLoop);
+			for (int batch = 0; batch < 100; batch++) {
+				assertEquals(StopReason.BUDGET_EXHAUSTED, skipping.runCycles(1000).getStopReason(), engineType.toString());
+				reference.runCycles(1000);
+				assertSameState(reference, skipping, engineType + " tick " + batch);
+			}
+		}
+	}
+	
+	/**
+	 * Ein Zähler, der bei $FF stehen bleibt, und eine Warteschleife auf den Joystick
+	 * hängen, ein endendes Programm nicht.
+	 */
+	@Test
+	void testHangDetection() {
+		byte[] counter = {
+			0x01, 0x30, 0x00,       // 0100: loop: MAR $0030
+			0x14,                   // 0103: LR0
+			0x05,                   // 0104: IR0
+			0x12,                   // 0105: SR0
+			0x01, 0x00, 0x01,       // 0106: MAR loop
+			0x11                    // 0109: JMP
+		};
+		byte[] joystickLoop = {
+			0x01, 0x20, 0x00,       // 0100: loop: MAR $0020
+			0x14,                   // 0103: LR0
+			0x01, 0x00, 0x01,       // 0104: MAR loop
+			0x19,                   // 0107: JZ0
+			(byte) 0xFF             // 0108: HLT
+		};
+		byte[] countdown = {
+			0x18, 0x00, 0x40,       // 0100: MRW $4000
+			0x28,                   // 0103: loop: DRW
+			0x01, 0x0F, 0x01,       // 0104: MAR end
+			0x21,                   // 0107: JEW (R1 = R2 = 0)
+			0x01, 0x03, 0x01,       // 0108: MAR loop
+			0x11,                   // 010B: JMP
+			0x00, 0x00, 0x00,       // 010C: DAT
+			(byte) 0xFF             // 010F: end: HLT
+		};
+		for (EngineType engineType : EngineType.values()) {
+			Retro24 retro24 = new Retro24(engineType);
+			retro24.setHangDetection(true);
+			retro24.initialize();
+			retro24.loadProgramm(counter);
+			RunResult result = retro24.run(10_000_000);
+			assertEquals(StopReason.HUNG, result.getStopReason(), engineType.toString());
+			assertTrue(result.getExecuted() < 100_000, engineType.toString());
+			assertEquals((byte) 0xFF, retro24.readMemory(0x0030), engineType.toString());
+			assertEquals(0, retro24.run(1000).getExecuted(), engineType.toString());
+			
+			retro24 = new Retro24(engineType);
+			retro24.initialize();
+			retro24.setHangDetection(true);
+			retro24.setIdleLoopSkipping(true);
+			retro24.loadProgramm(joystickLoop);
+			assertEquals(StopReason.HUNG, retro24.run(1_000_000).getStopReason(), engineType.toString());
+			// Eingabe: läuft weiter bis HLT
+			retro24.getIOChip().writeJoystickMovement(IOChip.JOYSTICK_UP);
+			assertEquals(StopReason.HALTED, retro24.run(1000).getStopReason(), engineType.toString());
+			
+			retro24 = new Retro24(engineType);
+			retro24.initialize();
+			retro24.setHangDetection(true);
+			retro24.loadProgramm(countdown);
+			assertEquals(StopReason.HALTED, retro24.run(10_000_000).getStopReason(), engineType.toString());
+		}
+	}
+	
+	/**
+	 * Beim Laden wird der Kontrollfluss rekonstruiert, die übersprungenen Bytes
+	 * zwischen JMP und Sprungziel sind Daten.
+	 */
+	@Test
+	void testControlFlowGraphAtLoad() {
+		byte[] program = {
+			0x01, 0x06, 0x01,       // 0100: MAR $0106
+			0x11,                   // 0103: JMP
+			0x30, 0x31,             // 0104: DAT $30 $31
+			0x17, 0x05,             // 0106: MR0 $05
+			(byte) 0xFF             // 0108: HLT
+		};
+		Retro24 reference = runProgram(program, EngineType.REFERENCE, 1);
+		ControlFlowGraph graph = reference.getControlFlowGraph();
+		assertNotNull(graph);
+		assertEquals(Set.of(0x0100, 0x0106), graph.getBlockStarts());
+		assertEquals(Map.of(0x0104, 0x0105), graph.getDataRegions());
+		assertEquals(0x0108, graph.getProgramEnd());
+		assertTrue(graph.isCode(0x0103));
+		assertFalse(graph.isCode(0x0105));
+		assertEquals(0x0100, graph.getBlockStart(0x0102));
+		assertEquals(0x0106, graph.getBlockStart(0x0108));
+		assertEquals(-1, graph.getBlockStart(0x0104));
+		
+		// SWITCH verwendet den Graphen nicht: er entsteht erst bei der Anfrage
+		Retro24 lazy = new Retro24(EngineType.SWITCH);
+		lazy.initialize();
+		lazy.loadProgramm(program);
+		assertEquals(graph.getBlockStarts(), lazy.getControlFlowGraph().getBlockStarts());
+		assertEquals(graph.getDataRegions(), lazy.getControlFlowGraph().getDataRegions());
+		lazy.reset();
+		assertNull(lazy.getControlFlowGraph());
+		
+		for (EngineType engineType : EngineType.values()) {
+			assertSameState(reference, runProgram(program, engineType, MAX_INSTRUCTIONS), "predecoded / " + engineType);
+		}
+	}
+	
+	@Test
+	void testTranslatedProgramRejectsOtherProgram() {
+		Retro24 translator = new Retro24();
+		translator.initialize();
+		translator.loadProgramm(new byte[] {0x17, 0x01, (byte) 0xFF});
+		byte[] classBytes = ProgramTranslator.compile(translator);
+		assertNotNull(classBytes);
+		
+		Retro24 other = new Retro24(EngineType.BLOCK);
+		other.initialize();
+		other.loadProgramm(new byte[] {0x17, 0x02, (byte) 0xFF});
+		assertFalse(ProgramTranslator.install(other, classBytes));
+	}
+	
+	@Test
+	void testProgramCacheRestoresBlocks(@TempDir Path cacheDir) throws InterruptedException {
+		File[] programs = new File(PROGRAM_DIR).listFiles((dir, name) -> name.endsWith(Retro24.SUPPORTED_FILE_EXTENSION));
+		assertNotNull(programs);
+		
+		int restoredPrograms = 0;
+		for (File program : programs) {
+			Retro24 reference = runProgram(program.getPath(), EngineType.REFERENCE, 1);
+			
+			// Erster Lauf füllt den Cache (falls Blöcke heiß wurden), zweiter Lauf übernimmt sie beim Laden
+			for (int pass = 0; pass < 2; pass++) {
+				ProgramCache cache = new ProgramCache(cacheDir);
+				Retro24 actual = new Retro24(EngineType.BLOCK);
+				actual.initialize();
+				((BlockEngine) actual.getExecutionEngine()).setProgramCache(cache);
+				actual.loadProgramm(program.getPath());
+				Path profile = cacheDir.resolve(ProgramTranslator.className(ProgramTranslator.programHash(actual)) + ".profile");
+				if (pass == 1 && Files.exists(profile)) {
+					assertTrue(cache.getRestoredBlockCount() > 0, program.getName());
+					restoredPrograms++;
+				}
+				assertSameState(reference, run(actual, 7), program.getName() + " / cached / " + pass);
+				// Der Cache wird im Hintergrund geschrieben
+				cache.awaitStore();
+			}
+		}
+		assertTrue(restoredPrograms > 0);
+	}
+	
+	@Test
+	void testProgramCacheRejectsModifiedClass(@TempDir Path cacheDir) throws Exception {
+		String program = PROGRAM_DIR + "/Meilenstein2-Anspruchsvoll.bin";
+		Retro24 reference = runProgram(program, EngineType.REFERENCE, 1);
+		
+		Path classFile = null;
+		for (int pass = 0; pass < 3; pass++) {
+			if (pass == 2) {
+				// Klassendatei nach dem Schreiben verändert: darf nicht geladen werden
+				byte[] bytes = Files.readAllBytes(classFile);
+				bytes[bytes.length - 1] ^= 0x01;
+				Files.write(classFile, bytes);
+			}
+			ProgramCache cache = new ProgramCache(cacheDir);
+			Retro24 actual = new Retro24(EngineType.BLOCK);
+			actual.initialize();
+			((BlockEngine) actual.getExecutionEngine()).setProgramCache(cache);
+			actual.loadProgramm(program);
+			classFile = cacheDir.resolve(ProgramTranslator.className(ProgramTranslator.programHash(actual)) + ".class");
+			assertEquals(pass == 1, cache.isClassVerified(), "Lauf " + pass);
+			assertSameState(reference, run(actual, 7), "Lauf " + pass);
+			cache.awaitStore();
+		}
+	}
+	
+	/**
+	 * Viele gleichzeitig gehaltene Systeme (Session Farm) dürfen je System nicht mehr
+	 * Heap belegen als der frühere 64 KB Speicher allein: Caches der Engines werden
+	 * erst je Seite angelegt, das Programm teilen sich alle Systeme.
+	 */
+	@Test
+	void testMachineFootprint() {
+		String program = PROGRAM_DIR + "/Meilenstein2-Anspruchsvoll.bin";
+		for (EngineType engineType : EngineType.values()) {
+			Retro24[] machines = new Retro24[200];
+			long before = usedHeap();
+			for (int i = 0; i < machines.length; i++) {
+				machines[i] = new Retro24(engineType);
+				machines[i].initialize();
+				machines[i].loadProgramm(program);
+			}
+			long perMachine = (usedHeap() - before) / machines.length;
+			assertTrue(perMachine < 64 * 1024, engineType + ": " + perMachine + " Byte je System");
+			assertEquals(machines.length, Arrays.stream(machines).filter(m -> !m.getCPU().isHalted()).count());
+		}
+	}
+	
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	/**
+	 * Ein Prozess je Lauf (wie cli.Retro24Runner) wartet nicht selbst auf das Schreiben:
+	 * der Cache muss trotzdem nach dem Ende der JVM vollständig vorliegen.
+	 */
+	@Test
+	void testProgramCacheWrittenBeforeExit(@TempDir Path cacheDir) throws Exception {
+		String program = PROGRAM_DIR + "/Meilenstein2-Anspruchsvoll.bin";
+		Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+		Process process = new ProcessBuilder(java.toString(), "-cp", System.getProperty("java.class.path"),
+				"-D" + ProgramCache.CACHE_DIR_PROPERTY + "=" + cacheDir, BatchRun.class.getName(), program)
+				.inheritIO()
+				.start();
+		assertEquals(0, process.waitFor());
+		
+		Retro24 next = new Retro24(EngineType.BLOCK);
+		next.initialize();
+		ProgramCache cache = new ProgramCache(cacheDir);
+		((BlockEngine) next.getExecutionEngine()).setProgramCache(cache);
+		next.loadProgramm(program);
+		assertTrue(cache.getRestoredBlockCount() > 0);
+		assertTrue(cache.isClassVerified());
+	}
+	
+	/**
+	 * Führt ein Programm mit dem BlockEngine bis HLT aus und beendet die JVM sofort
+	 * (Cache aus der System Property, ohne awaitStore()).
+	 */
+	static final class BatchRun {
+		public static void main(String[] args) {
+			Retro24 retro24 = new Retro24(EngineType.BLOCK);
+			retro24.initialize();
+			retro24.loadProgramm(args[0]);
+			while (!retro24.getCPU().isHalted()) {
+				retro24.run(MAX_INSTRUCTIONS);
+			}
+			System.exit(retro24.getCPU().isFaulted() ? 1 : 0);
+		}
+	}
+}
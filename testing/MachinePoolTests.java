@@ -0,0 +1,49 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import core.MachinePool;
+import core.Retro24;
+import core.CPU.EngineType;
+
+/**
+ * Prüft, dass der MachinePool Systeme zurückgesetzt wiederverwendet.
+ */
+public class MachinePoolTests {
+
+	@Test
+	void testReleasedMachineIsResetAndReused() {
+		MachinePool pool = new MachinePool(EngineType.REFERENCE, 1);
+		Retro24 first = pool.acquire();
+		try {
+			first.loadProgramm(new byte[] {0x17, 0x42, (byte) 0xFF});
+			first.run(10);
+			assertTrue(first.getCPU().isHalted());
+		} finally {
+			pool.release(first);
+		}
+		assertEquals(1, pool.getIdleCount());
+
+		Retro24 second = pool.acquire();
+		try {
+			assertSame(first, second);
+			assertEquals(0, pool.getIdleCount());
+			assertFalse(second.getCPU().isHalted());
+			assertEquals(0x0100, second.getCPU().getIC());
+			assertEquals((byte) 0xFF, second.readMemory(0x0101));
+		} finally {
+			pool.release(second);
+		}
+	}
+
+	@Test
+	void testPoolKeepsAtMostMaxIdle() {
+		MachinePool pool = new MachinePool(EngineType.REFERENCE, 1);
+		Retro24 first = pool.acquire();
+		Retro24 second = pool.acquire();
+		assertNotSame(first, second);
+		pool.release(first);
+		pool.release(second);
+		assertEquals(1, pool.getIdleCount());
+	}
+}
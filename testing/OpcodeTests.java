@@ -57,7 +57,7 @@ public class OpcodeTests {
 	// OK
 	void after() {
 	    assertTrue(cpu.getLastInstruction().getOpcode() == runnedOpcode);
-	    assertTrue(Arrays.equals(cpu.getLastInstruction().getArgs(), usedArgs));
+	    assertTrue(Arrays.equals(cpu.getDecodedInstruction().getArgs(), usedArgs));
 	    assertTrue(cpu.getLastInstruction().getAssemblerCode().equals(runnedInstructionAssem));
 	    assertTrue(cpu.getIC() == trimToShort(addU(oldIC, operationLen)));
 	}
@@ -164,4 +164,43 @@ public class OpcodeTests {
 	    assertTrue(newR2 == oldR2);
 	    assertTrue(newR3 == oldR3);
 	}
+	
+	// SRW ($13, 1-Byte-OP): Speichert R1 an die in AR angegebene Adresse, ferner R2 an die Adresse dahinter.
+	@Test
+	void testSrw() {
+	    runnedOpcode = 0x13;
+	    operationLen = 1;
+	    runnedInstructionAssem = "SRW";
+	    usedArgs = new byte[0];
+
+	    short testAR = 0x1234;
+	    cpu.setAR(testAR);
+	    cpu.setR1((byte) 0xBE);
+	    cpu.setR2((byte) 0x05);
+
+	    cpu.executeOpcode(runnedOpcode);
+
+	    assertEquals((byte) 0xBE, retro24.readMemory(testAR));
+	    assertEquals((byte) 0x05, retro24.readMemory(addU(testAR, 1)));
+	}
+	
+	// TAW ($16, 1-Byte-OP): AR wird nach R1/R2 kopiert.
+	@Test
+	void testTaw() {
+	    runnedOpcode = 0x16;
+	    operationLen = 1;
+	    runnedInstructionAssem = "TAW";
+	    usedArgs = new byte[0];
+
+	    cpu.setAR((short) 0x1234);
+
+	    cpu.executeOpcode(runnedOpcode);
+	    
+	    updateRegisterValues();
+
+	    // lowByte nach R1, highByte nach R2
+	    assertTrue(newR1 == 0x34);
+	    assertTrue(newR2 == 0x12);
+	    assertTrue(newAR == 0x1234);
+	}
 }